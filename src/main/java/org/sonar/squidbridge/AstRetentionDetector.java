@@ -0,0 +1,139 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.google.common.collect.Sets;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Token;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.squidbridge.api.CheckMessage;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Debugging aid reporting the visitors and the source code objects still referencing an {@link AstNode} or a
+ * {@link Token} once a file has been analyzed, which keeps the syntax tree of the file reachable.
+ * Only direct references are detected: fields, and elements of arrays, collections and maps held by fields.
+ * Each offending field is reported once.
+ */
+class AstRetentionDetector {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AstRetentionDetector.class);
+
+  private final Set<String> reported = Sets.newHashSet();
+
+  static boolean isEnabled() {
+    return LOG.isDebugEnabled();
+  }
+
+  void check(List<? extends SquidAstVisitor<?>> visitors, SourceFile sourceFile) {
+    for (SquidAstVisitor<?> visitor : visitors) {
+      checkFields(visitor, SquidAstVisitor.class, sourceFile);
+    }
+    checkSourceCode(sourceFile, sourceFile);
+  }
+
+  private void checkSourceCode(SourceCode sourceCode, SourceFile sourceFile) {
+    checkFields(sourceCode, SourceCode.class, sourceFile);
+    if (sourceCode.hasCheckMessages()) {
+      for (CheckMessage message : sourceCode.getCheckMessages()) {
+        for (Object argument : message.getMessageArguments()) {
+          if (isAstReference(argument)) {
+            report("Argument of a check message of " + (message.getCheck() == null ? "[NULL]" : message.getCheck().getClass().getName()), sourceFile);
+          }
+        }
+      }
+    }
+    if (sourceCode.hasChildren()) {
+      for (SourceCode child : sourceCode.getChildren()) {
+        checkSourceCode(child, sourceFile);
+      }
+    }
+  }
+
+  /**
+   * Checks the fields declared by the class of the object and its superclasses, up to the given one excluded.
+   */
+  private void checkFields(Object object, Class<?> stopClass, SourceFile sourceFile) {
+    for (Class<?> type = object.getClass(); type != null && type != stopClass && type != Object.class; type = type.getSuperclass()) {
+      for (Field field : type.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive() && retainsAst(fieldValue(object, field))) {
+          report("Field '" + type.getName() + "." + field.getName() + "'", sourceFile);
+        }
+      }
+    }
+  }
+
+  private static Object fieldValue(Object object, Field field) {
+    try {
+      field.setAccessible(true);
+      return field.get(object);
+    } catch (IllegalAccessException | RuntimeException e) {
+      // not accessible, e.g. field of a class in a module which is not open
+      return null;
+    }
+  }
+
+  private static boolean retainsAst(Object value) {
+    if (isAstReference(value)) {
+      return true;
+    }
+    if (value instanceof Collection) {
+      for (Object element : (Collection<?>) value) {
+        if (isAstReference(element)) {
+          return true;
+        }
+      }
+    } else if (value instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        if (isAstReference(entry.getKey()) || isAstReference(entry.getValue())) {
+          return true;
+        }
+      }
+    } else if (value != null && value.getClass().isArray() && !value.getClass().getComponentType().isPrimitive()) {
+      for (int i = 0; i < Array.getLength(value); i++) {
+        if (isAstReference(Array.get(value, i))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isAstReference(Object value) {
+    return value instanceof AstNode || value instanceof Token;
+  }
+
+  private void report(String holder, SourceFile sourceFile) {
+    if (reported.add(holder)) {
+      LOG.warn(holder + " still references the syntax tree after the analysis of " + sourceFile.getKey());
+    }
+  }
+
+}
@@ -19,116 +19,234 @@
  */
 package org.sonar.squidbridge;
 
+import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
 import org.sonar.squidbridge.api.AnalysisException;
+import org.sonar.squidbridge.api.CheckMessage;
 import org.sonar.squidbridge.api.SourceCodeSearchEngine;
+import org.sonar.squidbridge.api.SourceCodeSpillStore;
 import org.sonar.squidbridge.api.SourceCodeTreeDecorator;
+import org.sonar.squidbridge.api.SourceFile;
 import org.sonar.squidbridge.api.SourceProject;
 import org.sonar.squidbridge.indexer.SquidIndex;
+import org.sonar.squidbridge.instrumentation.Counter;
+import org.sonar.squidbridge.instrumentation.Gauge;
+import org.sonar.squidbridge.instrumentation.Instrumentation;
+import org.sonar.squidbridge.instrumentation.MetricsRegistry;
+import org.sonar.squidbridge.instrumentation.Timer;
+import org.sonar.squidbridge.jfr.DecorateEvent;
+import org.sonar.squidbridge.jfr.FileVisitEvent;
+import org.sonar.squidbridge.jfr.ParseEvent;
+import org.sonar.squidbridge.jfr.ParseFailureEvent;
+import org.sonar.squidbridge.jfr.VisitorEvent;
 import org.sonar.squidbridge.measures.MetricDef;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.Grammar;
 import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.impl.Lexer;
 import com.sonar.sslr.impl.Parser;
 import com.sonar.sslr.impl.ast.AstWalker;
+import jdk.jfr.EventType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
 import java.io.InterruptedIOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 public class AstScanner<G extends Grammar> {
 
   private static final Logger LOG = LoggerFactory.getLogger(AstScanner.class);
+  private static final EventType VISITOR_EVENT = EventType.getEventType(VisitorEvent.class);
 
   private final List<SquidAstVisitor<G>> visitors;
-  private final Parser<G> parser;
+  private Parser<G> parser;
+  private final Supplier<Parser<G>> parserFactory;
+  private final Supplier<Lexer> readAheadLexerFactory;
+  private final int readAheadFiles;
+  private FileLexer fileLexer;
   private final SquidAstVisitorContextImpl<G> context;
+  private final CommentDispatcher<G> commentDispatcher;
 
-  private final SquidIndex indexer = new SquidIndex();
+  private final SquidIndex indexer;
   private final MetricDef[] metrics;
   private final MetricDef filesMetric;
+  private final List<CheckMessageSink> checkMessageSinks;
+  private final boolean retainCheckMessages;
+  private final FileScheduler fileScheduler;
+  private final long parseTimeoutMillis;
+  private final ParseTimeoutBreaker parseTimeoutBreaker;
+  private final List<File> timedOutFiles = Lists.newArrayList();
+  private ExecutorService parseExecutor;
+  private final boolean releaseAstAfterEachFile;
+  private final SourceCodeSpillStore spillStore;
+  private List<TimedVisitor> timedVisitors;
+  private List<TimedVisitor> commentVisitorTimers;
+  private final MetricsRegistry metricsRegistry;
+  private final boolean countAstNodes;
+  private final Counter filesCounter;
+  private final Counter parseErrorsCounter;
+  private final Counter astNodesCounter;
+  private final Counter tokensCounter;
+  private final Timer parseTimer;
+  private final Timer visitTimer;
+  private final Map<Object, Counter> issuesCounters = Maps.newIdentityHashMap();
+  private final CacheMetrics xpathCacheMetrics;
+  private final CacheMetrics commentRegexCacheMetrics;
+  private final CacheMetrics namingCacheMetrics;
 
   protected AstScanner(Builder<G> builder) {
     this.visitors = Lists.newArrayList(builder.visitors);
-    this.parser = builder.baseParser;
+    List<CommentVisitor> commentVisitors = Lists.newArrayList();
+    for (SquidAstVisitor<G> visitor : visitors) {
+      if (visitor instanceof CommentVisitor) {
+        commentVisitors.add((CommentVisitor) visitor);
+      }
+    }
+    if (commentVisitors.isEmpty()) {
+      this.commentDispatcher = null;
+    } else {
+      this.commentDispatcher = new CommentDispatcher<G>(commentVisitors);
+      commentDispatcher.setContext(builder.context);
+      visitors.add(0, commentDispatcher);
+      builder.context.setDispatchingComments(true);
+    }
+    this.parserFactory = builder.parserFactory;
+    this.readAheadLexerFactory = builder.readAheadLexerFactory;
+    this.readAheadFiles = builder.readAheadFiles;
+    this.parser = parserFactory != null ? parserFactory.get() : builder.baseParser;
     this.context = builder.context;
+    this.metricsRegistry = builder.metricsRegistry == null ? Instrumentation.getRegistry() : builder.metricsRegistry;
+    this.indexer = new SquidIndex(metricsRegistry);
 
     this.context.setGrammar(parser.getGrammar());
     this.context.getProject().setSourceCodeIndexer(indexer);
     this.context.setCommentAnalyser(builder.commentAnalyser);
+    this.context.setMetricsRegistry(metricsRegistry);
     this.metrics = builder.metrics;
     this.filesMetric = builder.filesMetric;
+    this.checkMessageSinks = ImmutableList.copyOf(builder.checkMessageSinks);
+    this.retainCheckMessages = builder.retainCheckMessages;
+    this.fileScheduler = builder.fileScheduler;
+    this.parseTimeoutMillis = builder.parseTimeoutMillis;
+    this.parseTimeoutBreaker = builder.parseTimeoutBreaker;
+    this.releaseAstAfterEachFile = builder.releaseAstAfterEachFile;
+    this.spillStore = builder.spillStore;
+    this.countAstNodes = builder.metricsRegistry != null || Instrumentation.isEnabled();
+    this.filesCounter = metricsRegistry.counter("squid.scanner.files");
+    this.parseErrorsCounter = metricsRegistry.counter("squid.scanner.parseErrors");
+    this.astNodesCounter = metricsRegistry.counter("squid.scanner.astNodes");
+    this.tokensCounter = metricsRegistry.counter("squid.scanner.tokens");
+    this.parseTimer = metricsRegistry.timer("squid.scanner.parse");
+    this.visitTimer = metricsRegistry.timer("squid.scanner.visit");
+    this.xpathCacheMetrics = new CacheMetrics(metricsRegistry, "squid.xpath.cache");
+    this.commentRegexCacheMetrics = new CacheMetrics(metricsRegistry, "squid.commentRegex.cache");
+    this.namingCacheMetrics = new CacheMetrics(metricsRegistry, "squid.checks.namingCache");
+    metricsRegistry.gauge("squid.checkMessage.formatCache.hitRate", new MessageFormatCacheHitRate());
     indexer.index(context.getProject());
   }
 
+  /**
+   * Reports the lookups in the caches of the context since the previous file into the counters of the registry. Gauges
+   * only read these counters, so that the registry, which may outlive the scanner, does not retain the context.
+   */
+  private void reportCacheMetrics() {
+    XPathEngine xpathEngine = context.getXPathEngine();
+    xpathCacheMetrics.report(xpathEngine.getCacheHits(), xpathEngine.getCacheMisses());
+    CommentRegexEngine commentRegexEngine = context.getCommentRegexEngine();
+    commentRegexCacheMetrics.report(commentRegexEngine.getVerdictHits(), commentRegexEngine.getFullMatches() + commentRegexEngine.getFilteredMatches());
+    long nameHits = 0;
+    long nameMisses = 0;
+    for (NameVerdictCache nameVerdictCache : context.getNameVerdictCaches()) {
+      nameHits += nameVerdictCache.getHits();
+      nameMisses += nameVerdictCache.getMisses();
+    }
+    namingCacheMetrics.report(nameHits, nameMisses);
+  }
+
   public SourceCodeSearchEngine getIndex() {
     return indexer;
   }
 
+  /**
+   * @return the files whose parse has been aborted because of the parse timeout, or skipped by the breaker
+   */
+  public List<File> getTimedOutFiles() {
+    return Collections.unmodifiableList(timedOutFiles);
+  }
+
   public void scanFile(File file) {
     scanFiles(ImmutableList.of(file));
   }
 
   public void scanFiles(Collection<File> files) {
+    scanScheduledFiles(fileScheduler.schedule(files));
+  }
+
+  /**
+   * Analyzes the files in the order decided by the {@link FileScheduler}.
+   */
+  protected void scanScheduledFiles(List<File> files) {
     for (SquidAstVisitor<? extends Grammar> visitor : visitors) {
       visitor.init();
     }
 
-    AstWalker astWalker = new AstWalker(visitors);
-
-    for (File file : files) {
-      checkCancel();
-      context.setFile(file, filesMetric);
-
-      Exception parseException = null;
-      AstNode ast = null;
-      try {
-        ast = parser.parse(file);
-      } catch (RecognitionException e) {
-        checkInterrupted(e);
-        parseException = e;
-        LOG.error("Unable to parse file: " + file.getAbsolutePath());
-        LOG.error(e.getMessage());
-      } catch (Exception e) {
-        checkInterrupted(e);
-        parseException = e;
-        LOG.error("Unable to parse file: " + file.getAbsolutePath(), e);
-      } catch (Throwable e) {
-        throw new AnalysisException("Unable to parse file: " + file.getAbsolutePath(), e);
-      }
-
-      try {
-        if (parseException == null) {
-          astWalker.walkAndVisit(ast);
+    // the walker keeps a reference to the last visited token
+    AstWalker astWalker = releaseAstAfterEachFile ? null : new AstWalker(visitors);
+    timedVisitors = null;
+    AstRetentionDetector retentionDetector = releaseAstAfterEachFile && AstRetentionDetector.isEnabled() ? new AstRetentionDetector() : null;
+
+    try {
+      if (readAheadLexerFactory != null) {
+        fileLexer = new FileLexer(readAheadLexerFactory, readAheadFiles, files);
+      }
+      for (File file : files) {
+        checkCancel();
+        long start = System.nanoTime();
+        if (VISITOR_EVENT.isEnabled()) {
+          analyzeFile(new AstWalker(timedVisitors()), file, retentionDetector);
         } else {
-          // process parse error
-          for (SquidAstVisitor<? extends Grammar> visitor : visitors) {
-            visitor.visitFile(ast);
-          }
-          for (SquidAstVisitor<? extends Grammar> visitor : visitors) {
-            if (visitor instanceof AstScannerExceptionHandler) {
-              if (parseException instanceof RecognitionException) {
-                ((AstScannerExceptionHandler) visitor).processRecognitionException((RecognitionException) parseException);
-              } else {
-                ((AstScannerExceptionHandler) visitor).processException(parseException);
-              }
-            }
-          }
-          for (SquidAstVisitor<? extends Grammar> visitor : visitors) {
-            visitor.leaveFile(ast);
+          if (commentDispatcher != null) {
+            commentDispatcher.setTimers(null, null);
           }
+          analyzeFile(astWalker == null ? new AstWalker(visitors) : astWalker, file, retentionDetector);
         }
-        context.popTillSourceProject();
-      } catch (Throwable e) {
-        throw new AnalysisException("Unable to analyze file: " + file.getAbsolutePath(), e);
+        fileScheduler.fileAnalyzed(file, System.nanoTime() - start);
+        reportCacheMetrics();
+      }
+      fileScheduler.scanFinished();
+    } finally {
+      if (fileLexer != null) {
+        fileLexer.close();
+        fileLexer = null;
+      }
+      if (parseExecutor != null) {
+        parseExecutor.shutdownNow();
+        parseExecutor = null;
+      }
+      if (parseTimeoutBreaker != null) {
+        parseTimeoutBreaker.save();
       }
     }
 
@@ -139,6 +257,235 @@ public class AstScanner<G extends Grammar> {
     decorateSquidTree();
   }
 
+  private void analyzeFile(AstWalker astWalker, File file, @Nullable AstRetentionDetector retentionDetector) {
+    context.setFile(file, filesMetric);
+    SourceFile sourceFile = (SourceFile) context.peekSourceCode();
+
+    Exception parseException = null;
+    AstNode ast = null;
+    ParseEvent parseEvent = new ParseEvent();
+    ParseFailureEvent parseFailureEvent = new ParseFailureEvent();
+    parseEvent.begin();
+    parseFailureEvent.begin();
+    long parseStart = System.nanoTime();
+    try {
+      ast = parse(file);
+    } catch (RecognitionException e) {
+      checkInterrupted(e);
+      parseException = e;
+      LOG.error("Unable to parse file: " + file.getAbsolutePath());
+      LOG.error(e.getMessage());
+    } catch (Exception e) {
+      checkInterrupted(e);
+      parseException = e;
+      LOG.error("Unable to parse file: " + file.getAbsolutePath(), e);
+    } catch (Throwable e) {
+      throw new AnalysisException("Unable to parse file: " + file.getAbsolutePath(), e);
+    }
+    commitParseEvent(file, ast, parseException, parseEvent, parseFailureEvent);
+    recordParse(ast, parseException, System.nanoTime() - parseStart);
+
+    FileVisitEvent visitEvent = new FileVisitEvent();
+    visitEvent.begin();
+    long visitStart = System.nanoTime();
+    try {
+      if (parseException == null) {
+        astWalker.walkAndVisit(ast);
+        commitVisitEvents(file, ast, visitEvent);
+      } else {
+        // process parse error
+        for (SquidAstVisitor<? extends Grammar> visitor : visitors) {
+          visitor.visitFile(ast);
+        }
+        for (SquidAstVisitor<? extends Grammar> visitor : visitors) {
+          if (visitor instanceof AstScannerExceptionHandler) {
+            if (parseException instanceof RecognitionException) {
+              ((AstScannerExceptionHandler) visitor).processRecognitionException((RecognitionException) parseException);
+            } else {
+              ((AstScannerExceptionHandler) visitor).processException(parseException);
+            }
+          }
+        }
+        for (SquidAstVisitor<? extends Grammar> visitor : visitors) {
+          visitor.leaveFile(ast);
+        }
+        commitVisitEvents(file, ast, visitEvent);
+      }
+      ast = null;
+      visitTimer.record(System.nanoTime() - visitStart);
+      if (retentionDetector != null) {
+        retentionDetector.check(visitors, sourceFile);
+      }
+      publishCheckMessages(sourceFile);
+      context.popTillSourceProject();
+      spill(sourceFile);
+    } catch (Throwable e) {
+      throw new AnalysisException("Unable to analyze file: " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private void recordParse(@Nullable AstNode ast, @Nullable Exception parseException, long nanos) {
+    filesCounter.increment();
+    parseTimer.record(nanos);
+    if (parseException != null) {
+      parseErrorsCounter.increment();
+    } else if (countAstNodes && ast != null) {
+      astNodesCounter.add(countNodes(ast));
+      tokensCounter.add(ast.getTokens().size());
+    }
+  }
+
+  private static long countNodes(AstNode node) {
+    long count = 1;
+    for (AstNode child : node.getChildren()) {
+      count += countNodes(child);
+    }
+    return count;
+  }
+
+  private void countIssues(Collection<CheckMessage> messages) {
+    for (CheckMessage message : messages) {
+      Object check = message.getCheck();
+      if (check != null) {
+        Counter counter = issuesCounters.get(check);
+        if (counter == null) {
+          counter = metricsRegistry.counter("squid.scanner.issues." + message.getRuleKey());
+          issuesCounters.put(check, counter);
+        }
+        counter.increment();
+      }
+    }
+  }
+
+  private List<TimedVisitor> timedVisitors() {
+    if (timedVisitors == null) {
+      timedVisitors = Lists.newArrayList();
+      for (SquidAstVisitor<G> visitor : visitors) {
+        timedVisitors.add(TimedVisitor.of(visitor));
+      }
+      if (commentDispatcher != null) {
+        commentVisitorTimers = Lists.newArrayList();
+        for (CommentVisitor commentVisitor : commentDispatcher.getCommentVisitors()) {
+          commentVisitorTimers.add(timedVisitors.get(visitors.indexOf(commentVisitor)));
+        }
+      }
+    }
+    if (commentDispatcher != null) {
+      // the dispatcher is the first visitor
+      commentDispatcher.setTimers(timedVisitors.get(0), commentVisitorTimers);
+    }
+    return timedVisitors;
+  }
+
+  private static void commitParseEvent(File file, @Nullable AstNode ast, @Nullable Exception parseException, ParseEvent parseEvent,
+    ParseFailureEvent parseFailureEvent) {
+    if (parseException == null) {
+      parseEvent.end();
+      if (parseEvent.shouldCommit()) {
+        parseEvent.setFile(file);
+        parseEvent.setLines(lines(ast));
+        parseEvent.commit();
+      }
+    } else {
+      parseFailureEvent.end();
+      if (parseFailureEvent.shouldCommit()) {
+        parseFailureEvent.setFile(file);
+        parseFailureEvent.setException(parseException);
+        parseFailureEvent.commit();
+      }
+    }
+  }
+
+  private void commitVisitEvents(File file, @Nullable AstNode ast, FileVisitEvent visitEvent) {
+    visitEvent.end();
+    if (visitEvent.shouldCommit()) {
+      visitEvent.setFile(file);
+      visitEvent.setLines(lines(ast));
+      visitEvent.setVisitors(visitors.size());
+      visitEvent.commit();
+    }
+    if (timedVisitors != null && VISITOR_EVENT.isEnabled()) {
+      for (TimedVisitor timedVisitor : timedVisitors) {
+        timedVisitor.commitEvent(file);
+      }
+    }
+  }
+
+  private static int lines(@Nullable AstNode ast) {
+    Token lastToken = ast == null ? null : ast.getLastToken();
+    return lastToken == null ? 0 : lastToken.getLine();
+  }
+
+  private AstNode parse(final File file) throws Exception {
+    // files lexed ahead are taken in order, including the ones which are then skipped
+    final List<Token> tokens = fileLexer == null ? null : fileLexer.lex(file);
+    if (parseTimeoutMillis == 0) {
+      return parse(parser, file, tokens);
+    }
+    if (parseTimeoutBreaker != null && parseTimeoutBreaker.isKnownSlow(file)) {
+      timedOutFiles.add(file);
+      throw new ParseTimeoutException(file, "Parse skipped, file is known to exceed the timeout of " + parseTimeoutMillis + " ms: "
+        + file.getAbsolutePath());
+    }
+    if (parseExecutor == null) {
+      parseExecutor = Executors.newSingleThreadExecutor(new ParserThreadFactory());
+    }
+    final Parser<G> timedParser = parser;
+    Future<AstNode> future = parseExecutor.submit(new Callable<AstNode>() {
+      @Override
+      public AstNode call() {
+        return parse(timedParser, file, tokens);
+      }
+    });
+    try {
+      return future.get(parseTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), Exception.class);
+      throw new AnalysisException(e.getCause());
+    } catch (TimeoutException e) {
+      // the parser does not check for interruption, so the thread is left to complete in the background, and the
+      // parser it still uses is replaced as lexers and parsers are not thread-safe
+      future.cancel(true);
+      parseExecutor.shutdownNow();
+      parseExecutor = null;
+      parser = parserFactory.get();
+      LOG.warn("Parse of " + file.getAbsolutePath() + " exceeded the timeout of " + parseTimeoutMillis
+        + " ms and keeps running in the background");
+      timedOutFiles.add(file);
+      if (parseTimeoutBreaker != null) {
+        parseTimeoutBreaker.recordSlow(file);
+      }
+      throw new ParseTimeoutException(file, "Parse exceeded the timeout of " + parseTimeoutMillis + " ms: " + file.getAbsolutePath());
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      throw e;
+    }
+  }
+
+  private static AstNode parse(Parser<?> parser, File file, @Nullable List<Token> tokens) {
+    return tokens == null ? parser.parse(file) : parser.parse(tokens);
+  }
+
+  private void spill(SourceFile sourceFile) {
+    if (spillStore != null && spillStore.canSpill(sourceFile)) {
+      indexer.evictDescendants(sourceFile);
+      spillStore.spill(sourceFile, metrics == null ? new MetricDef[0] : metrics);
+    }
+  }
+
+  private void publishCheckMessages(SourceFile sourceFile) {
+    if (sourceFile.hasCheckMessages()) {
+      Collection<CheckMessage> messages = Collections.unmodifiableSet(sourceFile.getCheckMessages());
+      countIssues(messages);
+      for (CheckMessageSink sink : checkMessageSinks) {
+        sink.accept(sourceFile, messages);
+      }
+      if (!retainCheckMessages) {
+        sourceFile.clearCheckMessages();
+      }
+    }
+  }
+
   /**
    * Checks if the root cause of the thread is related to an interrupt.
    * Note that when such an exception is thrown, the interrupt flag is reset.
@@ -159,9 +506,91 @@ public class AstScanner<G extends Grammar> {
   protected void decorateSquidTree() {
     if (metrics != null && metrics.length > 0) {
       SourceProject project = context.getProject();
-      SourceCodeTreeDecorator decorator = new SourceCodeTreeDecorator(project);
+      DecorateEvent event = new DecorateEvent();
+      event.begin();
+      SourceCodeTreeDecorator decorator = new SourceCodeTreeDecorator(project, metricsRegistry);
       decorator.decorateWith(metrics);
+      event.end();
+      if (event.shouldCommit()) {
+        event.setMetrics(metrics.length);
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * Hits and misses of a cache, reported as {@code <name>.hits} and {@code <name>.misses} counters along with a
+   * {@code <name>.hitRate} gauge.
+   */
+  private static final class CacheMetrics {
+
+    private final Counter hits;
+    private final Counter misses;
+    private long reportedHits;
+    private long reportedMisses;
+
+    CacheMetrics(MetricsRegistry metricsRegistry, String name) {
+      this.hits = metricsRegistry.counter(name + ".hits");
+      this.misses = metricsRegistry.counter(name + ".misses");
+      metricsRegistry.gauge(name + ".hitRate", new HitRate(hits, misses));
+    }
+
+    /**
+     * @param totalHits hits since the beginning of the analysis
+     * @param totalMisses misses since the beginning of the analysis
+     */
+    void report(long totalHits, long totalMisses) {
+      hits.add(totalHits - reportedHits);
+      misses.add(totalMisses - reportedMisses);
+      reportedHits = totalHits;
+      reportedMisses = totalMisses;
+    }
+
+  }
+
+  private static final class HitRate implements Gauge {
+
+    private final Counter hits;
+    private final Counter misses;
+
+    HitRate(Counter hits, Counter misses) {
+      this.hits = hits;
+      this.misses = misses;
+    }
+
+    @Override
+    public double getValue() {
+      return hitRate(hits.getCount(), misses.getCount());
+    }
+
+  }
+
+  /**
+   * The cache of message templates is shared by all the scanners of the JVM, and so is its hit rate.
+   */
+  private static final class MessageFormatCacheHitRate implements Gauge {
+
+    @Override
+    public double getValue() {
+      return hitRate(CheckMessage.getMessageFormatCacheHits(), CheckMessage.getMessageFormatCacheMisses());
+    }
+
+  }
+
+  private static double hitRate(long hits, long misses) {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : ((double) hits / lookups);
+  }
+
+  private static class ParserThreadFactory implements ThreadFactory {
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "squid-parser");
+      thread.setDaemon(true);
+      return thread;
     }
+
   }
 
   public static <G extends Grammar> Builder<G> builder(SquidAstVisitorContextImpl<G> context) {
@@ -171,11 +600,22 @@ public class AstScanner<G extends Grammar> {
   public static class Builder<G extends Grammar> {
 
     private Parser<G> baseParser;
+    private Supplier<Parser<G>> parserFactory;
     private final List<SquidAstVisitor<G>> visitors = Lists.newArrayList();
     private final SquidAstVisitorContextImpl<G> context;
     private CommentAnalyser commentAnalyser;
     private MetricDef[] metrics;
     private MetricDef filesMetric;
+    private final List<CheckMessageSink> checkMessageSinks = Lists.newArrayList();
+    private MetricsRegistry metricsRegistry;
+    private boolean retainCheckMessages = true;
+    private FileScheduler fileScheduler = FileSchedulers.inputOrder();
+    private long parseTimeoutMillis = 0;
+    private ParseTimeoutBreaker parseTimeoutBreaker;
+    private boolean releaseAstAfterEachFile = false;
+    private SourceCodeSpillStore spillStore;
+    private Supplier<Lexer> readAheadLexerFactory;
+    private int readAheadFiles;
 
     public Builder(SquidAstVisitorContextImpl<G> context) {
       checkNotNull(context, "context cannot be null");
@@ -188,6 +628,17 @@ public class AstScanner<G extends Grammar> {
       return this;
     }
 
+    /**
+     * Creates the parsers of the scanner instead of using the base parser, which is required when a parse timeout is
+     * set. The first parser is created when building the scanner, and a new one each time a parse is abandoned.
+     * All the parsers must share the grammar of the first one, which is the one visitors subscribe to.
+     */
+    public Builder<G> setParserFactory(Supplier<Parser<G>> parserFactory) {
+      checkNotNull(parserFactory, "parserFactory cannot be null");
+      this.parserFactory = parserFactory;
+      return this;
+    }
+
     public Builder<G> setCommentAnalyser(CommentAnalyser commentAnalyser) {
       checkNotNull(commentAnalyser, "commentAnalyser cannot be null");
       this.commentAnalyser = commentAnalyser;
@@ -215,10 +666,112 @@ public class AstScanner<G extends Grammar> {
       return this;
     }
 
+    /**
+     * Adds a sink receiving the check messages of each file once all the visitors have left it.
+     */
+    public Builder<G> withCheckMessageSink(CheckMessageSink sink) {
+      checkNotNull(sink, "sink cannot be null");
+      checkMessageSinks.add(sink);
+      return this;
+    }
+
+    /**
+     * Whether check messages are kept on their {@link SourceFile} once published to the sinks, which is the default.
+     * Not retaining them allows to release the messages of each file as soon as it has been analyzed.
+     */
+    public Builder<G> setRetainCheckMessages(boolean retainCheckMessages) {
+      this.retainCheckMessages = retainCheckMessages;
+      return this;
+    }
+
+    /**
+     * Policy deciding in which order files are analyzed, {@link FileSchedulers#inputOrder()} by default.
+     */
+    public Builder<G> setFileScheduler(FileScheduler fileScheduler) {
+      checkNotNull(fileScheduler, "fileScheduler cannot be null");
+      this.fileScheduler = fileScheduler;
+      return this;
+    }
+
+    /**
+     * Maximum time spent on the parse of each file, none by default. The parse of a file exceeding it is abandoned,
+     * and the file goes through the parse error path with a {@link ParseTimeoutException}.
+     * When a timeout is set, files are parsed on a dedicated thread. As SSLR parsers do not react to interruption,
+     * an abandoned parse keeps running in the background until it completes, while the analysis goes on with a new
+     * parser from the {@link #setParserFactory(Supplier) parser factory}, which is then required. Note that each
+     * abandoned parse keeps a core busy until it completes, which is why it should be combined with a
+     * {@link #setParseTimeoutBreaker(ParseTimeoutBreaker) breaker} on analyses running repeatedly.
+     */
+    public Builder<G> setParseTimeout(long timeout, TimeUnit unit) {
+      checkArgument(timeout >= 0, "timeout cannot be negative");
+      long millis = unit.toMillis(timeout);
+      checkArgument(timeout == 0 || millis > 0, "timeout cannot be less than 1 ms");
+      this.parseTimeoutMillis = millis;
+      return this;
+    }
+
+    /**
+     * Skips the files known to exceed the parse timeout, and records the ones exceeding it.
+     */
+    public Builder<G> setParseTimeoutBreaker(ParseTimeoutBreaker parseTimeoutBreaker) {
+      checkNotNull(parseTimeoutBreaker, "parseTimeoutBreaker cannot be null");
+      this.parseTimeoutBreaker = parseTimeoutBreaker;
+      return this;
+    }
+
+    /**
+     * Makes sure the scanner no longer references the syntax tree of a file once all visitors have left it, so that
+     * peak memory depends on the largest file rather than on the whole project. When debug logging is enabled for
+     * {@code org.sonar.squidbridge.AstRetentionDetector}, the visitors and source code objects still referencing
+     * the syntax tree are also reported.
+     */
+    public Builder<G> setReleaseAstAfterEachFile(boolean releaseAstAfterEachFile) {
+      this.releaseAstAfterEachFile = releaseAstAfterEachFile;
+      return this;
+    }
+
+    /**
+     * Reads, decodes and lexes up to the given number of files ahead of the one being analyzed, on as many background
+     * threads, so that blocking reads on slow file systems overlap with the parse and visit of the previous files.
+     * Files are then parsed from their tokens, parsing and visiting staying sequential as parsers and visitors are not
+     * thread-safe. Lexers are not thread-safe either, so each thread gets its own one from the factory: they must be
+     * configured like the lexer of the parser, charset included.
+     */
+    public Builder<G> setReadAhead(Supplier<Lexer> lexerFactory, int files) {
+      checkNotNull(lexerFactory, "lexerFactory cannot be null");
+      checkArgument(files > 0, "files must be greater than 0");
+      this.readAheadLexerFactory = lexerFactory;
+      this.readAheadFiles = files;
+      return this;
+    }
+
+    /**
+     * Spills the content of each file to disk once it has been analyzed, see {@link SourceCodeSpillStore}.
+     * Measures of files are aggregated with the metrics given to {@link #withMetrics(MetricDef...)} before spilling.
+     */
+    public Builder<G> setSpillStore(SourceCodeSpillStore spillStore) {
+      checkNotNull(spillStore, "spillStore cannot be null");
+      this.spillStore = spillStore;
+      return this;
+    }
+
+    /**
+     * Sets the registry the scanner reports its metrics into, instead of the one of {@link Instrumentation}. Its index and
+     * decorator report into it as well, and its visitors get it from {@link SquidAstVisitorContext#getMetricsRegistry()}.
+     */
+    public Builder<G> setMetricsRegistry(MetricsRegistry metricsRegistry) {
+      checkNotNull(metricsRegistry, "metricsRegistry cannot be null");
+      this.metricsRegistry = metricsRegistry;
+      return this;
+    }
+
     public AstScanner<G> build() {
-      checkState(baseParser != null, "baseParser must be set");
+      checkState(parseTimeoutBreaker == null || parseTimeoutMillis > 0, "parseTimeoutBreaker requires a parse timeout");
+      checkState(parseTimeoutMillis == 0 || parserFactory != null, "a parse timeout requires a parserFactory");
+      checkState(baseParser != null || parserFactory != null, "baseParser must be set");
       checkState(commentAnalyser != null, "commentAnalyser must be set");
       checkState(filesMetric != null, "filesMetric must be set");
+      checkState(retainCheckMessages || !checkMessageSinks.isEmpty(), "check messages must either be retained or published to a sink");
       return new AstScanner<G>(this);
     }
   }
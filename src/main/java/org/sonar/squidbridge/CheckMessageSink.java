@@ -0,0 +1,43 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import org.sonar.squidbridge.api.CheckMessage;
+import org.sonar.squidbridge.api.SourceFile;
+
+import java.util.Collection;
+
+/**
+ * Receives the check messages of each file as soon as all the visitors have left it, for instance to stream them to disk or to the
+ * host platform instead of keeping them on the {@link SourceFile} until the end of the analysis.
+ *
+ * @see AstScanner.Builder#withCheckMessageSink(CheckMessageSink)
+ */
+public interface CheckMessageSink {
+
+  /**
+   * Called once per file having at least one message.
+   *
+   * @param sourceFile the file the messages have been logged on
+   * @param messages   the messages of the file, which must not be modified
+   */
+  void accept(SourceFile sourceFile, Collection<CheckMessage> messages);
+
+}
@@ -0,0 +1,97 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.sonar.sslr.api.Token;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A comment of the file being visited, passed to all the {@link CommentVisitor}s. Its contents and content lines are computed
+ * with the {@link CommentAnalyser} of the scanner at most once, whatever the number of visitors asking for them.
+ */
+public final class Comment {
+
+  private static final Pattern LINE_SEPARATOR = Pattern.compile("(\r)?\n|\r");
+
+  private final Token token;
+  private final Token followingToken;
+  private final boolean header;
+  private final CommentAnalyser commentAnalyser;
+  private String contents;
+  private List<String> contentLines;
+
+  Comment(Token token, Token followingToken, boolean header, CommentAnalyser commentAnalyser) {
+    this.token = token;
+    this.followingToken = followingToken;
+    this.header = header;
+    this.commentAnalyser = commentAnalyser;
+  }
+
+  /**
+   * @return the token of the comment
+   */
+  public Token getToken() {
+    return token;
+  }
+
+  /**
+   * @return the token the comment is attached to as trivia, i.e. the first token following it
+   */
+  public Token getFollowingToken() {
+    return followingToken;
+  }
+
+  /**
+   * @return whether the comment precedes the first token of the file
+   */
+  public boolean isHeader() {
+    return header;
+  }
+
+  public int getLine() {
+    return token.getLine();
+  }
+
+  /**
+   * @return the contents of the comment, without the comment tags
+   * @see CommentAnalyser#getContents(String)
+   */
+  public String getContents() {
+    if (contents == null) {
+      contents = commentAnalyser.getContents(token.getOriginalValue());
+    }
+    return contents;
+  }
+
+  /**
+   * @return the lines of the contents of the comment, the first one being at {@link #getLine()}
+   */
+  public List<String> getContentLines() {
+    if (contentLines == null) {
+      contentLines = Collections.unmodifiableList(Arrays.asList(LINE_SEPARATOR.split(getContents(), -1)));
+    }
+    return contentLines;
+  }
+
+}
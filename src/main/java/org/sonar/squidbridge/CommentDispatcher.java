@@ -0,0 +1,92 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.google.common.collect.ImmutableList;
+import com.sonar.sslr.api.AstAndTokenVisitor;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+
+import javax.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Single pass over the comments of each file, dispatching them to all the {@link CommentVisitor}s of the scanner.
+ */
+class CommentDispatcher<G extends Grammar> extends SquidAstVisitor<G> implements AstAndTokenVisitor {
+
+  private final List<CommentVisitor> commentVisitors;
+  private TimedVisitor timer;
+  private List<TimedVisitor> commentVisitorTimers;
+  private boolean seenFirstToken;
+
+  CommentDispatcher(List<CommentVisitor> commentVisitors) {
+    this.commentVisitors = ImmutableList.copyOf(commentVisitors);
+  }
+
+  List<CommentVisitor> getCommentVisitors() {
+    return commentVisitors;
+  }
+
+  /**
+   * Charges the time spent by each comment visitor on the comments to its own timer rather than to the one of the
+   * dispatcher, or stops doing so when given null.
+   *
+   * @param commentVisitorTimers timers of the comment visitors, in the order of {@link #getCommentVisitors()}
+   */
+  void setTimers(@Nullable TimedVisitor timer, @Nullable List<TimedVisitor> commentVisitorTimers) {
+    this.timer = timer;
+    this.commentVisitorTimers = commentVisitorTimers;
+  }
+
+  @Override
+  public void visitFile(AstNode astNode) {
+    seenFirstToken = false;
+  }
+
+  @Override
+  public void visitToken(Token token) {
+    for (Trivia trivia : token.getTrivia()) {
+      if (trivia.isComment()) {
+        Comment comment = new Comment(trivia.getToken(), token, !seenFirstToken, getContext().getCommentAnalyser());
+        if (commentVisitorTimers == null) {
+          for (CommentVisitor commentVisitor : commentVisitors) {
+            commentVisitor.visitComment(comment);
+          }
+        } else {
+          visitTimed(comment);
+        }
+      }
+    }
+    seenFirstToken = true;
+  }
+
+  private void visitTimed(Comment comment) {
+    for (int i = 0; i < commentVisitors.size(); i++) {
+      long start = System.nanoTime();
+      commentVisitors.get(i).visitComment(comment);
+      timer.chargeTo(commentVisitorTimers.get(i), System.nanoTime() - start);
+    }
+  }
+
+}
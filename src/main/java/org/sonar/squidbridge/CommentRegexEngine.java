@@ -0,0 +1,307 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sonar.sslr.api.Token;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches the comments of the current file against the regular expressions of all the comment checks of a scanner.
+ * <ul>
+ * <li>identical regular expressions registered by several checks are compiled once, and matched once per comment,</li>
+ * <li>one {@link Matcher} is kept per regular expression and reset for each comment,</li>
+ * <li>a comment is only fully matched against a regular expression if it contains the longest literal
+ * that any match of this regular expression requires, e.g. {@code TODO} for {@code (?i).*TODO.*}.</li>
+ * </ul>
+ * Like the rest of the visitor context, an engine is meant to be used by a single scanner thread.
+ */
+public class CommentRegexEngine {
+
+  private static final String CASE_INSENSITIVE_FLAG = "(?i)";
+  private static final String CLASS_ESCAPES = "dDsSwWbBhHvVRXAGZz";
+
+  private final Map<String, Integer> indexByRegex = Maps.newHashMap();
+  private final List<Matcher> matchers = Lists.newArrayList();
+  private final List<RequiredLiteral> requiredLiterals = Lists.newArrayList();
+  private long fullMatches;
+  private long filteredMatches;
+  private long verdictHits;
+
+  private Token currentComment;
+  private String currentCommentValue;
+  private String currentCommentFolded;
+  private final BitSet computed = new BitSet();
+  private final BitSet matched = new BitSet();
+
+  /**
+   * Registers a regular expression, to be called from {@link SquidAstVisitor#init()}.
+   * The regular expression is compiled with {@link Pattern#DOTALL}.
+   *
+   * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+   */
+  public void register(String regex) {
+    if (!indexByRegex.containsKey(regex)) {
+      Pattern pattern = Pattern.compile(regex, Pattern.DOTALL);
+      indexByRegex.put(regex, matchers.size());
+      matchers.add(pattern.matcher(""));
+      requiredLiterals.add(RequiredLiteral.of(regex));
+    }
+  }
+
+  /**
+   * @return whether the whole value of the given comment token matches the registered regular expression
+   */
+  public boolean matches(String regex, Token comment) {
+    Integer index = indexByRegex.get(regex);
+    if (index == null) {
+      throw new IllegalStateException("Regular expression has not been registered: " + regex);
+    }
+    if (comment != currentComment) {
+      currentComment = comment;
+      currentCommentValue = comment.getOriginalValue();
+      currentCommentFolded = null;
+      computed.clear();
+      matched.clear();
+    }
+    if (computed.get(index)) {
+      verdictHits++;
+    } else {
+      computed.set(index);
+      if (mayMatch(requiredLiterals.get(index))) {
+        fullMatches++;
+        matched.set(index, matchers.get(index).reset(currentCommentValue).matches());
+      } else {
+        filteredMatches++;
+      }
+    }
+    return matched.get(index);
+  }
+
+  private boolean mayMatch(@Nullable RequiredLiteral literal) {
+    if (literal == null) {
+      return true;
+    } else if (!literal.caseInsensitive) {
+      return currentCommentValue.contains(literal.text);
+    } else {
+      if (currentCommentFolded == null) {
+        currentCommentFolded = asciiLowerCase(currentCommentValue);
+      }
+      return currentCommentFolded.contains(literal.text);
+    }
+  }
+
+  /**
+   * Forgets the verdicts on the current comment.
+   */
+  public void reset() {
+    currentComment = null;
+    currentCommentValue = null;
+    currentCommentFolded = null;
+    computed.clear();
+    matched.clear();
+  }
+
+  /**
+   * @return number of comments which have been fully matched against a regular expression
+   */
+  public long getFullMatches() {
+    return fullMatches;
+  }
+
+  /**
+   * @return number of comments which have been rejected without being fully matched against a regular expression
+   */
+  public long getFilteredMatches() {
+    return filteredMatches;
+  }
+
+  /**
+   * @return number of times the verdict on a comment has been reused rather than computed, e.g. for another check
+   *         using the same regular expression
+   */
+  public long getVerdictHits() {
+    return verdictHits;
+  }
+
+  private static String asciiLowerCase(String value) {
+    char[] chars = null;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= 'A' && c <= 'Z') {
+        if (chars == null) {
+          chars = value.toCharArray();
+        }
+        chars[i] = (char) (c + ('a' - 'A'));
+      }
+    }
+    return chars == null ? value : new String(chars);
+  }
+
+  /**
+   * A literal that all the strings matched by a regular expression contain.
+   */
+  static final class RequiredLiteral {
+
+    final String text;
+    final boolean caseInsensitive;
+
+    private RequiredLiteral(String text, boolean caseInsensitive) {
+      this.text = text;
+      this.caseInsensitive = caseInsensitive;
+    }
+
+    /**
+     * Conservatively extracts the longest literal required by the regular expression: only sequences of plain
+     * characters outside of groups and character classes are considered, and nothing is extracted from regular
+     * expressions using alternations, inline flags other than a leading {@code (?i)}, or escapes that are neither
+     * escaped punctuation nor predefined classes.
+     *
+     * @return the literal, or null if none could be extracted
+     */
+    @CheckForNull
+    static RequiredLiteral of(String regex) {
+      boolean caseInsensitive = regex.startsWith(CASE_INSENSITIVE_FLAG);
+      String expression = caseInsensitive ? regex.substring(CASE_INSENSITIVE_FLAG.length()) : regex;
+
+      String longest = "";
+      StringBuilder run = new StringBuilder();
+      int groupDepth = 0;
+      int i = 0;
+      while (i < expression.length()) {
+        char c = expression.charAt(i);
+        if (c == '\\') {
+          if (i + 1 >= expression.length()) {
+            return null;
+          }
+          char escaped = expression.charAt(i + 1);
+          if (!Character.isLetterOrDigit(escaped)) {
+            if (groupDepth == 0) {
+              run.append(escaped);
+            }
+          } else if (CLASS_ESCAPES.indexOf(escaped) >= 0) {
+            longest = longest(longest, run);
+          } else {
+            return null;
+          }
+          i += 2;
+        } else if (c == '[') {
+          longest = longest(longest, run);
+          i = skipCharacterClass(expression, i);
+          if (i < 0) {
+            return null;
+          }
+        } else if (c == '(') {
+          if (expression.startsWith("(?", i) && !expression.startsWith("(?:", i)) {
+            return null;
+          }
+          longest = longest(longest, run);
+          groupDepth++;
+          i++;
+        } else if (c == ')') {
+          groupDepth--;
+          i++;
+        } else if (groupDepth > 0) {
+          i++;
+        } else if (c == '|') {
+          return null;
+        } else if (c == '?' || c == '*' || c == '{') {
+          if (run.length() > 0) {
+            run.setLength(run.length() - 1);
+          }
+          longest = longest(longest, run);
+          if (c == '{') {
+            i = expression.indexOf('}', i);
+            if (i < 0) {
+              return null;
+            }
+          }
+          i++;
+        } else if (c == '+' || c == '.' || c == '^' || c == '$') {
+          longest = longest(longest, run);
+          i++;
+        } else {
+          run.append(c);
+          i++;
+        }
+      }
+      longest = longest(longest, run);
+
+      if (longest.isEmpty() || (caseInsensitive && !isAscii(longest))) {
+        return null;
+      }
+      return new RequiredLiteral(caseInsensitive ? asciiLowerCase(longest) : longest, caseInsensitive);
+    }
+
+    private static String longest(String longest, StringBuilder run) {
+      String result = run.length() > longest.length() ? run.toString() : longest;
+      run.setLength(0);
+      return result;
+    }
+
+    /**
+     * @return index following the character class starting at the given index, or -1 if it could not be found
+     */
+    private static int skipCharacterClass(String expression, int start) {
+      int depth = 0;
+      int i = start;
+      while (i < expression.length()) {
+        char c = expression.charAt(i);
+        if (c == '\\') {
+          i++;
+        } else if (c == '[') {
+          depth++;
+          if (expression.startsWith("^]", i + 1)) {
+            i += 2;
+          } else if (expression.startsWith("]", i + 1)) {
+            i++;
+          }
+        } else if (c == ']') {
+          depth--;
+          if (depth == 0) {
+            return i + 1;
+          }
+        }
+        i++;
+      }
+      return -1;
+    }
+
+    private static boolean isAscii(String value) {
+      for (int i = 0; i < value.length(); i++) {
+        if (value.charAt(i) > 0x7F) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+  }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+/**
+ * Visitor of the comments of a file. The {@link AstScanner} makes a single pass over the comments of each file and calls all
+ * its visitors implementing this interface on each comment, in the order of the file.
+ *
+ * @see Comment
+ */
+public interface CommentVisitor {
+
+  /**
+   * Called once per comment, between {@link SquidAstVisitor#visitFile(com.sonar.sslr.api.AstNode)} and
+   * {@link SquidAstVisitor#leaveFile(com.sonar.sslr.api.AstNode)}.
+   */
+  void visitComment(Comment comment);
+
+}
@@ -0,0 +1,63 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.google.common.base.Objects;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+
+/**
+ * Passes the comments attached to the visited tokens to a {@link CommentVisitor}, for the comment visitors which are
+ * also token visitors and are walked without {@link AstScanner}. When walked by {@link AstScanner}, comments are
+ * dispatched by the scanner itself, and the tokens given to this bridge are ignored.
+ */
+public final class CommentVisitorBridge {
+
+  private final CommentVisitor visitor;
+  private Token lastToken;
+
+  public CommentVisitorBridge(CommentVisitor visitor) {
+    this.visitor = visitor;
+  }
+
+  public void visitToken(Token token, SquidAstVisitorContext<?> context) {
+    if (context instanceof SquidAstVisitorContextImpl && ((SquidAstVisitorContextImpl<?>) context).isDispatchingComments()) {
+      return;
+    }
+    boolean firstToken = lastToken == null || !isAfter(token, lastToken);
+    lastToken = token;
+    for (Trivia trivia : token.getTrivia()) {
+      if (trivia.isComment()) {
+        visitor.visitComment(new Comment(trivia.getToken(), token, firstToken, context.getCommentAnalyser()));
+      }
+    }
+  }
+
+  /**
+   * Tokens of a file come in increasing positions, so a token which is not after the previous one starts a new file.
+   */
+  private static boolean isAfter(Token token, Token previous) {
+    if (!Objects.equal(token.getURI(), previous.getURI())) {
+      return false;
+    }
+    return token.getLine() > previous.getLine() || (token.getLine() == previous.getLine() && token.getColumn() > previous.getColumn());
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.impl.Lexer;
+import org.sonar.squidbridge.api.AnalysisException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads, decodes and lexes the next files of a scan in the background, while the current one is parsed and visited,
+ * so that blocking reads on slow file systems overlap with the analysis. At most {@code window} files are lexed ahead
+ * of the one being analyzed, on as many threads, each one with its own lexer since lexers are not thread-safe.
+ * Tokens keep the URI of their file, as they are lexed by {@link Lexer#lex(File)}.
+ */
+final class FileLexer implements Closeable {
+
+  private final Supplier<Lexer> lexerFactory;
+  private final ExecutorService executor;
+  private final ThreadLocal<Lexer> lexers = new ThreadLocal<Lexer>();
+  private final Deque<File> pendingFiles = new ArrayDeque<File>();
+  private final Deque<Future<List<Token>>> pendingTokens = new ArrayDeque<Future<List<Token>>>();
+  private final List<File> files;
+  private int nextFile;
+
+  FileLexer(Supplier<Lexer> lexerFactory, int window, List<File> files) {
+    this.lexerFactory = lexerFactory;
+    this.files = files;
+    this.executor = Executors.newFixedThreadPool(window, new LexerThreadFactory());
+    while (nextFile < files.size() && nextFile < window) {
+      submitNextFile();
+    }
+  }
+
+  /**
+   * @return the tokens of the given file, which must be the next one of the scan, waiting for them to be lexed if needed
+   * @throws Exception the failure of the lexer
+   */
+  List<Token> lex(File file) throws Exception {
+    if (!file.equals(pendingFiles.poll())) {
+      throw new IllegalStateException("File is not the next one of the scan: " + file.getAbsolutePath());
+    }
+    Future<List<Token>> lexedFile = pendingTokens.poll();
+    if (nextFile < files.size()) {
+      submitNextFile();
+    }
+    try {
+      return lexedFile.get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), Exception.class);
+      throw new AnalysisException(e.getCause());
+    } catch (InterruptedException e) {
+      lexedFile.cancel(true);
+      throw e;
+    }
+  }
+
+  private void submitNextFile() {
+    final File file = files.get(nextFile);
+    nextFile++;
+    pendingFiles.add(file);
+    pendingTokens.add(executor.submit(new Callable<List<Token>>() {
+      @Override
+      public List<Token> call() {
+        Lexer lexer = lexers.get();
+        if (lexer == null) {
+          lexer = lexerFactory.get();
+          lexers.set(lexer);
+        }
+        return lexer.lex(file);
+      }
+    }));
+  }
+
+  /**
+   * Cancels the files lexed ahead which have not been analyzed, e.g. when the scan is cancelled.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    pendingFiles.clear();
+    pendingTokens.clear();
+  }
+
+  private static class LexerThreadFactory implements ThreadFactory {
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "squid-lexer");
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
+}
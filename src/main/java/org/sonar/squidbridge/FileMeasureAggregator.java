@@ -0,0 +1,81 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.google.common.collect.Lists;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.measures.MetricDef;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sums the declared metrics over a file and all the source code it contains in a single walk, which is done again
+ * only once a measure of the file changed.
+ */
+final class FileMeasureAggregator {
+
+  private final List<MetricDef> metrics = Lists.newArrayList();
+  private int[] sums = new int[0];
+  private SourceFile file;
+  private int fileMeasuresVersion;
+
+  void declare(MetricDef metric) {
+    if (!metrics.contains(metric)) {
+      metrics.add(metric);
+      sums = new int[metrics.size()];
+      reset();
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if the metric has not been declared
+   */
+  int get(MetricDef metric, SourceFile currentFile) {
+    int index = metrics.indexOf(metric);
+    if (index < 0) {
+      throw new IllegalArgumentException("Metric has not been declared with aggregateFileMeasure(): " + metric.getName());
+    }
+    if (file != currentFile || fileMeasuresVersion != currentFile.getSubtreeMeasuresVersion()) {
+      Arrays.fill(sums, 0);
+      aggregate(currentFile);
+      file = currentFile;
+      fileMeasuresVersion = currentFile.getSubtreeMeasuresVersion();
+    }
+    return sums[index];
+  }
+
+  void reset() {
+    file = null;
+  }
+
+  private void aggregate(SourceCode sourceCode) {
+    for (int i = 0; i < sums.length; i++) {
+      sums[i] += sourceCode.getInt(metrics.get(i));
+    }
+    if (sourceCode.hasChildren()) {
+      for (SourceCode child : sourceCode.getChildren()) {
+        aggregate(child);
+      }
+    }
+  }
+
+}
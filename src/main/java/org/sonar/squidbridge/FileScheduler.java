@@ -0,0 +1,48 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Decides in which order {@link AstScanner} analyzes files, and gets notified of the time spent on each of them.
+ *
+ * @see FileSchedulers
+ */
+public interface FileScheduler {
+
+  /**
+   * @return the files to analyze, in the order in which they must be analyzed
+   */
+  List<File> schedule(Collection<File> files);
+
+  /**
+   * Called after the analysis of each file.
+   */
+  void fileAnalyzed(File file, long elapsedNanos);
+
+  /**
+   * Called once all the files have been analyzed.
+   */
+  void scanFinished();
+
+}
@@ -0,0 +1,214 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Factory of the {@link FileScheduler} policies.
+ */
+public final class FileSchedulers {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileSchedulers.class);
+
+  private FileSchedulers() {
+  }
+
+  /**
+   * Files are analyzed in the order given to {@link AstScanner#scanFiles(Collection)}. This is the default.
+   */
+  public static FileScheduler inputOrder() {
+    return InputOrder.INSTANCE;
+  }
+
+  /**
+   * Files are analyzed from the largest to the smallest, according to their size on disk.
+   */
+  public static FileScheduler largestFirst() {
+    return new LargestFirst();
+  }
+
+  /**
+   * Files are analyzed from the most to the least costly, according to the time spent on them during a previous
+   * analysis, which is read from the given history file if it exists. The cost of files which are not part of the
+   * history is estimated from their size. Once all files have been analyzed, the time spent on each of them is
+   * merged into the history, which is written back to the history file to be used by the next analysis. Files which
+   * have not been analyzed keep their previous cost, and files which no longer exist are dropped from the history
+   * when it is read. Scans of a single file, e.g. through {@link AstScanner#scanFile(File)}, only update the history in
+   * memory: it is written by the next scan of several files.
+   */
+  public static FileScheduler historicalCost(File historyFile) {
+    return new HistoricalCost(historyFile);
+  }
+
+  private enum InputOrder implements FileScheduler {
+    INSTANCE;
+
+    @Override
+    public List<File> schedule(Collection<File> files) {
+      return ImmutableList.copyOf(files);
+    }
+
+    @Override
+    public void fileAnalyzed(File file, long elapsedNanos) {
+      // nothing to record
+    }
+
+    @Override
+    public void scanFinished() {
+      // nothing to record
+    }
+  }
+
+  private static class LargestFirst implements FileScheduler {
+
+    @Override
+    public List<File> schedule(Collection<File> files) {
+      File[] result = files.toArray(new File[files.size()]);
+      final Map<File, Long> costs = Maps.newHashMapWithExpectedSize(result.length);
+      for (File file : result) {
+        costs.put(file, estimateCost(file));
+      }
+      // sort is stable: files of same cost keep their input order
+      Arrays.sort(result, new Comparator<File>() {
+        @Override
+        public int compare(File left, File right) {
+          return Long.compare(costs.get(right), costs.get(left));
+        }
+      });
+      return Arrays.asList(result);
+    }
+
+    protected long estimateCost(File file) {
+      return file.length();
+    }
+
+    @Override
+    public void fileAnalyzed(File file, long elapsedNanos) {
+      // nothing to record
+    }
+
+    @Override
+    public void scanFinished() {
+      // nothing to record
+    }
+
+  }
+
+  private static class HistoricalCost extends LargestFirst {
+
+    private static final char SEPARATOR = '\t';
+
+    private final File historyFile;
+    private final Map<String, Long> knownCosts;
+    private final Map<String, Long> currentCosts = Maps.newHashMap();
+    private double nanosPerByte;
+
+    HistoricalCost(File historyFile) {
+      this.historyFile = historyFile;
+      this.knownCosts = load(historyFile);
+    }
+
+    @Override
+    public List<File> schedule(Collection<File> files) {
+      currentCosts.clear();
+      long knownNanos = 0;
+      long knownBytes = 0;
+      for (File file : files) {
+        Long cost = knownCosts.get(file.getAbsolutePath());
+        if (cost != null) {
+          knownNanos += cost;
+          knownBytes += file.length();
+        }
+      }
+      // without any history, files are ordered by size
+      nanosPerByte = knownBytes == 0 ? 1 : ((double) knownNanos / knownBytes);
+      return super.schedule(files);
+    }
+
+    @Override
+    protected long estimateCost(File file) {
+      Long cost = knownCosts.get(file.getAbsolutePath());
+      return cost != null ? cost : (long) (file.length() * nanosPerByte);
+    }
+
+    @Override
+    public void fileAnalyzed(File file, long elapsedNanos) {
+      currentCosts.put(file.getAbsolutePath(), elapsedNanos);
+    }
+
+    @Override
+    public void scanFinished() {
+      knownCosts.putAll(currentCosts);
+      boolean singleFile = currentCosts.size() <= 1;
+      currentCosts.clear();
+      if (singleFile) {
+        // not worth rewriting the whole history for each file scanned on its own
+        return;
+      }
+      try (BufferedWriter writer = Files.newBufferedWriter(historyFile.toPath(), StandardCharsets.UTF_8)) {
+        for (Map.Entry<String, Long> entry : knownCosts.entrySet()) {
+          writer.append(Long.toString(entry.getValue())).append(SEPARATOR).append(entry.getKey());
+          writer.newLine();
+        }
+      } catch (IOException e) {
+        LOG.warn("Unable to write parse costs to " + historyFile.getAbsolutePath(), e);
+      }
+    }
+
+    private static Map<String, Long> load(File historyFile) {
+      // sorted, so that the history file does not change when costs do not
+      Map<String, Long> costs = Maps.newTreeMap();
+      if (!historyFile.isFile()) {
+        return costs;
+      }
+      try (BufferedReader reader = Files.newBufferedReader(historyFile.toPath(), StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          int separator = line.indexOf(SEPARATOR);
+          if (separator > 0 && new File(line.substring(separator + 1)).isFile()) {
+            costs.put(line.substring(separator + 1), Long.parseLong(line.substring(0, separator)));
+          }
+        }
+      } catch (IOException | NumberFormatException e) {
+        LOG.warn("Unable to read parse costs from " + historyFile.getAbsolutePath() + ", files will be ordered by size", e);
+        costs.clear();
+      }
+      return costs;
+    }
+
+  }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+/**
+ * Services of {@link SquidAstVisitorContextImpl} holding state about the file being analyzed, which is released
+ * as soon as the scanner leaves the file.
+ */
+final class FileServices {
+
+  private final XPathEngine xpathEngine = new XPathEngine();
+  private final CommentRegexEngine commentRegexEngine = new CommentRegexEngine();
+  private final FileMeasureAggregator measureAggregator = new FileMeasureAggregator();
+
+  XPathEngine getXPathEngine() {
+    return xpathEngine;
+  }
+
+  CommentRegexEngine getCommentRegexEngine() {
+    return commentRegexEngine;
+  }
+
+  FileMeasureAggregator getMeasureAggregator() {
+    return measureAggregator;
+  }
+
+  void reset() {
+    xpathEngine.reset();
+    commentRegexEngine.reset();
+    measureAggregator.reset();
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled naming pattern along with a bounded cache of the verdicts on the names it has been matched against.
+ * The cache is cleared when full, so that it keeps up with the names of the files being analyzed.
+ *
+ * @see SquidAstVisitorContextImpl#getNameVerdictCache(String, int)
+ */
+public final class NameVerdictCache {
+
+  private final Pattern pattern;
+  private final int maxSize;
+  private final ConcurrentMap<String, Boolean> verdicts = new ConcurrentHashMap<String, Boolean>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param maxSize maximum number of cached verdicts, 0 to disable caching
+   * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+   */
+  public NameVerdictCache(String regexp, int maxSize) {
+    this.pattern = Pattern.compile(regexp);
+    this.maxSize = maxSize;
+  }
+
+  public boolean matches(String name) {
+    Boolean verdict = verdicts.get(name);
+    if (verdict != null) {
+      hits.incrementAndGet();
+      return verdict;
+    }
+    misses.incrementAndGet();
+    boolean matches = pattern.matcher(name).matches();
+    if (maxSize > 0) {
+      if (verdicts.size() >= maxSize) {
+        verdicts.clear();
+      }
+      verdicts.put(name, matches);
+    }
+    return matches;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the fingerprints of the files whose parse exceeded the timeout, so that the next analyses skip them
+ * instead of spending the whole timeout on them again. A fingerprint is made of the length and of the SHA-256 hash
+ * of the content, so a file is retried as soon as it is modified. Hashes are only computed for files having the
+ * length of a known slow file.
+ */
+public class ParseTimeoutBreaker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ParseTimeoutBreaker.class);
+
+  private static final char SEPARATOR = '\t';
+
+  private final File storeFile;
+  private final Map<Long, Set<String>> hashesByLength = Maps.newHashMap();
+  private boolean modified;
+
+  /**
+   * @param storeFile file from which fingerprints are loaded if it exists, and to which they are saved
+   */
+  public ParseTimeoutBreaker(File storeFile) {
+    this.storeFile = storeFile;
+    load();
+  }
+
+  public boolean isKnownSlow(File file) {
+    Set<String> hashes = hashesByLength.get(file.length());
+    return hashes != null && hashes.contains(hash(file));
+  }
+
+  public void recordSlow(File file) {
+    String hash = hash(file);
+    if (hash.isEmpty()) {
+      return;
+    }
+    Set<String> hashes = hashesByLength.get(file.length());
+    if (hashes == null) {
+      hashes = Sets.newHashSet();
+      hashesByLength.put(file.length(), hashes);
+    }
+    modified |= hashes.add(hash);
+  }
+
+  /**
+   * Writes the fingerprints to the store file, if some were recorded since it has been loaded.
+   */
+  public void save() {
+    if (!modified) {
+      return;
+    }
+    try (BufferedWriter writer = Files.newBufferedWriter(storeFile.toPath(), StandardCharsets.UTF_8)) {
+      for (Map.Entry<Long, Set<String>> entry : hashesByLength.entrySet()) {
+        for (String hash : entry.getValue()) {
+          writer.append(Long.toString(entry.getKey())).append(SEPARATOR).append(hash);
+          writer.newLine();
+        }
+      }
+      modified = false;
+    } catch (IOException e) {
+      LOG.warn("Unable to save slow files to " + storeFile.getAbsolutePath(), e);
+    }
+  }
+
+  private void load() {
+    if (!storeFile.isFile()) {
+      return;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(storeFile.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int separator = line.indexOf(SEPARATOR);
+        if (separator > 0) {
+          long length = Long.parseLong(line.substring(0, separator));
+          Set<String> hashes = hashesByLength.get(length);
+          if (hashes == null) {
+            hashes = Sets.newHashSet();
+            hashesByLength.put(length, hashes);
+          }
+          hashes.add(line.substring(separator + 1));
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      LOG.warn("Unable to load slow files from " + storeFile.getAbsolutePath() + ", no file will be skipped", e);
+      hashesByLength.clear();
+    }
+  }
+
+  private static String hash(File file) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] buffer = new byte[8192];
+    try (InputStream input = new FileInputStream(file)) {
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      // an unreadable file never matches, the parser will report the failure
+      return "";
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import java.io.File;
+
+/**
+ * Reported to {@link AstScannerExceptionHandler#processException(Exception)} when the parse of a file exceeds
+ * the timeout configured with {@link AstScanner.Builder#setParseTimeout(long, java.util.concurrent.TimeUnit)},
+ * or when the file is skipped by a {@link ParseTimeoutBreaker}.
+ */
+public class ParseTimeoutException extends RuntimeException {
+
+  private final transient File file;
+
+  public ParseTimeoutException(File file, String message) {
+    super(message);
+    this.file = file;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+}
@@ -21,10 +21,11 @@ package org.sonar.squidbridge;
 
 import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.Token;
 import javax.annotation.Nullable;
 
 import java.io.File;
-import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class ProgressAstScanner<G extends Grammar> extends AstScanner<G> {
@@ -37,11 +38,11 @@ public class ProgressAstScanner<G extends Grammar> extends AstScanner<G> {
   }
 
   @Override
-  public void scanFiles(Collection<File> files) {
+  protected void scanScheduledFiles(List<File> files) {
     progressReport.start(files);
     boolean success = false;
     try {
-      super.scanFiles(files);
+      super.scanScheduledFiles(files);
       success = true;
     } finally {
       if (success) {
@@ -71,7 +72,8 @@ public class ProgressAstScanner<G extends Grammar> extends AstScanner<G> {
 
         @Override
         public void leaveFile(@Nullable AstNode astNode) {
-          progressReport.nextFile();
+          Token lastToken = astNode == null ? null : astNode.getLastToken();
+          progressReport.nextFile(lastToken == null ? 0 : lastToken.getLine());
         }
 
       });
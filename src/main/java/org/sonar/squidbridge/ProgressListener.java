@@ -0,0 +1,34 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+/**
+ * Receives the statistics of a {@link ProgressReport}, for instance to export them over JMX or HTTP.
+ *
+ * @see ProgressReport#addListener(ProgressListener)
+ */
+public interface ProgressListener {
+
+  /**
+   * Called from the thread of the report, at each period and once more when the analysis ends.
+   */
+  void progress(ProgressStatistics statistics);
+
+}
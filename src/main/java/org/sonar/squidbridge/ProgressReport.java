@@ -21,32 +21,76 @@ package org.sonar.squidbridge;
 
 import java.io.File;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.CheckForNull;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Logs the progress of an analysis at a fixed period, and publishes its {@link ProgressStatistics}.
+ * <p>
+ * A sequential scanner calls {@link #start(Collection)} then {@link #nextFile(int)} after each file, in the order of the collection.
+ * Concurrent scanners call {@link #start(int)} then {@link #fileStarted(File)} and {@link #fileFinished(File, int)} from their
+ * worker threads, files being then allowed to complete in any order. Tracking is lock-free, and the periodic logging of all the
+ * reports is driven by a single shared daemon thread.
+ */
 public class ProgressReport implements Runnable {
 
+  /**
+   * Weight of the last file in the moving average used to estimate the remaining time.
+   */
+  private static final double ETA_SMOOTHING = 0.1;
+
   private final long period;
-  private boolean cancelled = true;
+  private volatile boolean cancelled = true;
   private final Logger logger;
-  private int count;
-  private int currentFileNumber = -1;
-  private File currentFile;
-  private Iterator<File> it;
-  private final Thread thread;
+  private volatile int count;
   private final String adjective;
-  private boolean success = false;
+  private volatile boolean success = false;
+  private final List<ProgressListener> listeners = new CopyOnWriteArrayList<ProgressListener>();
+
+  private final Queue<File> pendingFiles = new ConcurrentLinkedQueue<File>();
+  private final AtomicReference<File> sequentialCurrentFile = new AtomicReference<File>();
+  private final ConcurrentMap<File, Long> inFlightFiles = new ConcurrentHashMap<File, Long>();
+
+  private volatile long startNanos;
+  private final AtomicInteger analyzedFiles = new AtomicInteger();
+  private final AtomicLong analyzedLines = new AtomicLong();
+  private final AtomicLong averageFileNanos = new AtomicLong(Double.doubleToLongBits(-1));
+  private final AtomicReference<SlowestFile> slowestFile = new AtomicReference<SlowestFile>(new SlowestFile(null, 0));
+  private final LatencyHistogram fileLatencies = new LatencyHistogram();
 
+  private final AtomicBoolean finished = new AtomicBoolean();
+  private final CountDownLatch terminated = new CountDownLatch(1);
+  private volatile ScheduledFuture<?> periodicReport;
+
+  /**
+   * @param threadName no longer used, reports being run by a single shared thread
+   */
   public ProgressReport(String threadName, long period, Logger logger, String adjective) {
     this.period = period;
     this.logger = logger;
     this.cancelled = false;
     this.adjective = adjective;
-    thread = new Thread(this);
-    thread.setName(threadName);
-    thread.setDaemon(true);
   }
 
   public ProgressReport(String threadName, long period, String adjective) {
@@ -57,54 +101,188 @@ public class ProgressReport implements Runnable {
     this(threadName, period, "analyzed");
   }
 
+  /**
+   * Logs the progress and publishes the statistics, called at each period.
+   */
   @Override
   public void run() {
-    while (!Thread.interrupted()) {
-      try {
-        Thread.sleep(period);
-        synchronized (this) {
-          log(currentFileNumber + "/" + count + " files " + adjective + ", current file: " + currentFile.getAbsolutePath());
-        }
-      } catch (InterruptedException e) {
-        break;
-      }
+    File currentFile = getCurrentFile();
+    log(analyzedFiles.get() + "/" + count + " files " + adjective + (currentFile == null ? "" : ", current file: " + currentFile.getAbsolutePath()));
+    publish();
+  }
+
+  /**
+   * Adds a listener notified with the statistics of the analysis at each period, and once more when it ends.
+   */
+  public void addListener(ProgressListener listener) {
+    listeners.add(listener);
+  }
+
+  private void publish() {
+    ProgressStatistics statistics = getStatistics();
+    if (logger.isDebugEnabled()) {
+      logger.debug(statistics.toString());
     }
-    synchronized (this) {
-      if (success) {
-        log(count + "/" + count + " source files have been " + adjective);
+    for (ProgressListener listener : listeners) {
+      try {
+        listener.progress(statistics);
+      } catch (RuntimeException e) {
+        logger.warn("Unable to publish progress statistics", e);
       }
     }
   }
 
-  public synchronized void start(Collection<File> files) {
-    count = files.size();
-    it = files.iterator();
+  /**
+   * @return throughput, estimated remaining time and latency figures of the analysis so far, percentiles being
+   *         approximated within 1/8th of their value
+   */
+  public ProgressStatistics getStatistics() {
+    int analyzed = analyzedFiles.get();
+    double average = Double.longBitsToDouble(averageFileNanos.get());
+    long estimatedRemainingNanos = average < 0 ? 0 : (long) (average * Math.max(count - analyzed, 0));
+    SlowestFile slowest = slowestFile.get();
+    return new ProgressStatistics(count, analyzed, analyzedLines.get(), startNanos == 0 ? 0 : System.nanoTime() - startNanos, estimatedRemainingNanos,
+      slowest.file, slowest.nanos, fileLatencies.percentile(50), fileLatencies.percentile(95), fileLatencies.percentile(99));
+  }
 
-    nextFile();
+  /**
+   * Starts a sequential analysis of the given files, see {@link #nextFile(int)}.
+   */
+  public void start(Collection<File> files) {
+    pendingFiles.addAll(files);
+    start(files.size());
+    File first = pendingFiles.poll();
+    if (first != null) {
+      sequentialCurrentFile.set(first);
+      fileStarted(first);
+    }
+  }
 
+  /**
+   * Starts an analysis of the given number of files, see {@link #fileStarted(File)} and {@link #fileFinished(File, int)}.
+   */
+  public void start(int totalFiles) {
+    count = totalFiles;
+    startNanos = System.nanoTime();
     log(count + " source files to be " + adjective);
-    thread.start();
+    periodicReport = Scheduler.EXECUTOR.scheduleAtFixedRate(this, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  public void nextFile() {
+    nextFile(0);
   }
 
-  public synchronized void nextFile() {
-    if (it.hasNext()) {
-      currentFileNumber++;
-      currentFile = it.next();
+  /**
+   * Records the end of the analysis of the current file, and moves to the next one of the collection given to
+   * {@link #start(Collection)}.
+   *
+   * @param lines number of lines of the file which has just been analyzed
+   */
+  public void nextFile(int lines) {
+    File next = pendingFiles.poll();
+    File analyzed = sequentialCurrentFile.getAndSet(next);
+    if (analyzed != null) {
+      fileFinished(analyzed, lines);
     }
+    if (next != null) {
+      fileStarted(next);
+    }
+  }
+
+  /**
+   * Records the start of the analysis of a file, may be called concurrently.
+   */
+  public void fileStarted(File file) {
+    inFlightFiles.put(file, System.nanoTime());
+  }
+
+  /**
+   * Records the end of the analysis of a file, may be called concurrently.
+   *
+   * @param lines number of lines of the file
+   */
+  public void fileFinished(File file, int lines) {
+    Long fileStartNanos = inFlightFiles.remove(file);
+    long nanos = fileStartNanos == null ? 0 : System.nanoTime() - fileStartNanos;
+    analyzedFiles.incrementAndGet();
+    analyzedLines.addAndGet(lines);
+    fileLatencies.record(nanos);
+    updateAverage(nanos);
+    updateSlowest(file, nanos);
+  }
+
+  private void updateAverage(long nanos) {
+    long previousBits;
+    long nextBits;
+    do {
+      previousBits = averageFileNanos.get();
+      double previous = Double.longBitsToDouble(previousBits);
+      nextBits = Double.doubleToLongBits(previous < 0 ? nanos : ETA_SMOOTHING * nanos + (1 - ETA_SMOOTHING) * previous);
+    } while (!averageFileNanos.compareAndSet(previousBits, nextBits));
+  }
+
+  private void updateSlowest(File file, long nanos) {
+    SlowestFile previous = slowestFile.get();
+    SlowestFile candidate = new SlowestFile(file, nanos);
+    while ((previous.file == null || nanos > previous.nanos) && !slowestFile.compareAndSet(previous, candidate)) {
+      previous = slowestFile.get();
+    }
+  }
+
+  /**
+   * @return the file being analyzed for the longest time, or null if none is
+   */
+  @CheckForNull
+  private File getCurrentFile() {
+    File oldest = null;
+    long oldestStartNanos = Long.MAX_VALUE;
+    for (Map.Entry<File, Long> inFlight : inFlightFiles.entrySet()) {
+      if (inFlight.getValue() - oldestStartNanos < 0 || oldest == null) {
+        oldest = inFlight.getKey();
+        oldestStartNanos = inFlight.getValue();
+      }
+    }
+    return oldest;
   }
 
-  public synchronized void stop() {
+  public void stop() {
     success = true;
-    thread.interrupt();
+    finish();
   }
 
-  public synchronized void cancel() {
+  public void cancel() {
     cancelled = true;
-    thread.interrupt();
+    finish();
   }
 
+  private void finish() {
+    if (!finished.compareAndSet(false, true)) {
+      return;
+    }
+    if (periodicReport != null) {
+      periodicReport.cancel(false);
+    }
+    // runs after any periodic report in progress, the executor having a single thread
+    Scheduler.EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (success) {
+            log(count + "/" + count + " source files have been " + adjective);
+          }
+          publish();
+        } finally {
+          terminated.countDown();
+        }
+      }
+    });
+  }
+
+  /**
+   * Waits for the final report once the analysis has been stopped or cancelled.
+   */
   public void join() throws InterruptedException {
-    thread.join();
+    terminated.await();
   }
 
   private void log(String message) {
@@ -117,4 +295,99 @@ public class ProgressReport implements Runnable {
   public boolean isCancelled() {
     return cancelled;
   }
+
+  private static final class SlowestFile {
+
+    private final File file;
+    private final long nanos;
+
+    private SlowestFile(@CheckForNull File file, long nanos) {
+      this.file = file;
+      this.nanos = nanos;
+    }
+
+  }
+
+  /**
+   * Lock-free histogram of durations in microseconds, with 8 buckets per power of two.
+   */
+  private static final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+
+    void record(long nanos) {
+      counts.incrementAndGet(index(TimeUnit.NANOSECONDS.toMicros(nanos)));
+      total.incrementAndGet();
+    }
+
+    private static int index(long micros) {
+      if (micros < SUB_BUCKETS) {
+        return (int) Math.max(micros, 0);
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(micros);
+      int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value of the bucket
+     */
+    private static long value(int index) {
+      if (index < SUB_BUCKETS) {
+        return index;
+      }
+      int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+      long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+      return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @return nearest-rank percentile, in nanoseconds
+     */
+    long percentile(int percentile) {
+      long count = total.get();
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max((long) Math.ceil(percentile / 100.0 * count), 1);
+      long seen = 0;
+      int index = 0;
+      while (index < counts.length() - 1) {
+        seen += counts.get(index);
+        if (seen >= rank) {
+          break;
+        }
+        index++;
+      }
+      return TimeUnit.MICROSECONDS.toNanos(value(index));
+    }
+
+  }
+
+  private static final class Scheduler {
+
+    private static final ScheduledExecutorService EXECUTOR = createExecutor();
+
+    private Scheduler() {
+    }
+
+    private static ScheduledExecutorService createExecutor() {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "squid-progress-report");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      executor.setRemoveOnCancelPolicy(true);
+      return executor;
+    }
+
+  }
+
 }
@@ -0,0 +1,130 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import javax.annotation.CheckForNull;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the progress of an analysis, see {@link ProgressReport#getStatistics()}.
+ */
+public final class ProgressStatistics {
+
+  private final int totalFiles;
+  private final int analyzedFiles;
+  private final long analyzedLines;
+  private final long elapsedNanos;
+  private final long estimatedRemainingNanos;
+  private final File slowestFile;
+  private final long slowestFileNanos;
+  private final long p50Nanos;
+  private final long p95Nanos;
+  private final long p99Nanos;
+
+  ProgressStatistics(int totalFiles, int analyzedFiles, long analyzedLines, long elapsedNanos, long estimatedRemainingNanos,
+    @CheckForNull File slowestFile, long slowestFileNanos, long p50Nanos, long p95Nanos, long p99Nanos) {
+    this.totalFiles = totalFiles;
+    this.analyzedFiles = analyzedFiles;
+    this.analyzedLines = analyzedLines;
+    this.elapsedNanos = elapsedNanos;
+    this.estimatedRemainingNanos = estimatedRemainingNanos;
+    this.slowestFile = slowestFile;
+    this.slowestFileNanos = slowestFileNanos;
+    this.p50Nanos = p50Nanos;
+    this.p95Nanos = p95Nanos;
+    this.p99Nanos = p99Nanos;
+  }
+
+  public int getTotalFiles() {
+    return totalFiles;
+  }
+
+  public int getAnalyzedFiles() {
+    return analyzedFiles;
+  }
+
+  /**
+   * @return number of lines of the analyzed files, up to their last token
+   */
+  public long getAnalyzedLines() {
+    return analyzedLines;
+  }
+
+  public long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+  }
+
+  public double getFilesPerSecond() {
+    return perSecond(analyzedFiles);
+  }
+
+  public double getLinesPerSecond() {
+    return perSecond(analyzedLines);
+  }
+
+  private double perSecond(long value) {
+    return elapsedNanos == 0 ? 0 : value * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  /**
+   * @return estimation of the time needed to analyze the remaining files, based on an exponentially weighted moving average of
+   *         the time spent on the last files
+   */
+  public long getEstimatedRemainingMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(estimatedRemainingNanos);
+  }
+
+  /**
+   * @return the file which took the longest to analyze so far, or null if no file has been analyzed yet
+   */
+  @CheckForNull
+  public File getSlowestFile() {
+    return slowestFile;
+  }
+
+  public long getSlowestFileMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(slowestFileNanos);
+  }
+
+  /**
+   * @return median of the time spent per file
+   */
+  public long getP50Millis() {
+    return TimeUnit.NANOSECONDS.toMillis(p50Nanos);
+  }
+
+  public long getP95Millis() {
+    return TimeUnit.NANOSECONDS.toMillis(p95Nanos);
+  }
+
+  public long getP99Millis() {
+    return TimeUnit.NANOSECONDS.toMillis(p99Nanos);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d/%d files, %.1f files/s, %.1f lines/s, ETA %d ms, per file p50 %d ms, p95 %d ms, p99 %d ms, slowest %d ms%s",
+      analyzedFiles, totalFiles, getFilesPerSecond(), getLinesPerSecond(), getEstimatedRemainingMillis(),
+      getP50Millis(), getP95Millis(), getP99Millis(), getSlowestFileMillis(), slowestFile == null ? "" : " (" + slowestFile.getPath() + ")");
+  }
+
+}
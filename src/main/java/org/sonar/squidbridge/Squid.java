@@ -27,10 +27,14 @@ import org.sonar.squidbridge.api.CodeVisitor;
 import org.sonar.squidbridge.api.Query;
 import org.sonar.squidbridge.api.SourceCode;
 import org.sonar.squidbridge.api.SourceCodeEdge;
+import org.sonar.squidbridge.api.SourceCodeEdgeUsage;
 import org.sonar.squidbridge.api.SourceCodeSearchEngine;
 import org.sonar.squidbridge.api.SourceCodeTreeDecorator;
 import org.sonar.squidbridge.api.SourceProject;
 import org.sonar.squidbridge.api.SquidConfiguration;
+import org.sonar.squidbridge.graph.CouplingCalculator;
+import org.sonar.squidbridge.graph.DependencyCycleDetector;
+import org.sonar.squidbridge.graph.DependencyCycles;
 import org.sonar.squidbridge.indexer.SquidIndex;
 import org.sonar.squidbridge.measures.Metric;
 import org.sonar.squidbridge.measures.MetricDef;
@@ -102,6 +106,21 @@ public class Squid implements SourceCodeSearchEngine {
     return project;
   }
 
+  /**
+   * Sets {@link Metric#CA} and {@link Metric#CE} on the packages and classes of the dependency graph.
+   */
+  public void computeCouplingMetrics() {
+    new CouplingCalculator(graph).calculate();
+  }
+
+  /**
+   * Detects the dependency cycles between nodes of the given type, for instance {@link org.sonar.squidbridge.api.SourcePackage} or
+   * {@link org.sonar.squidbridge.api.SourceFile}, following only edges of the given usages (all of them when none is given).
+   */
+  public DependencyCycles detectCycles(Class<? extends SourceCode> nodeType, SourceCodeEdgeUsage... usages) {
+    return new DependencyCycleDetector(graph).detect(nodeType, usages);
+  }
+
   public SourceProject getProject() {
     return project;
   }
@@ -22,6 +22,8 @@ package org.sonar.squidbridge;
 import org.sonar.squidbridge.api.CheckMessage;
 import org.sonar.squidbridge.api.CodeCheck;
 import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.instrumentation.Instrumentation;
+import org.sonar.squidbridge.instrumentation.MetricsRegistry;
 
 import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.Grammar;
@@ -85,4 +87,11 @@ public abstract class SquidAstVisitorContext<G extends Grammar> {
 
   public abstract void log(CheckMessage message);
 
+  /**
+   * @return the registry the visitors report their metrics into, the one of the scanner when it has its own
+   */
+  public MetricsRegistry getMetricsRegistry() {
+    return Instrumentation.getRegistry();
+  }
+
 }
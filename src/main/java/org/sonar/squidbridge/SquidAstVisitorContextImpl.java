@@ -19,6 +19,7 @@
  */
 package org.sonar.squidbridge;
 
+import com.google.common.collect.Maps;
 import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.Grammar;
 import com.sonar.sslr.api.Token;
@@ -27,19 +28,29 @@ import org.sonar.squidbridge.api.CodeCheck;
 import org.sonar.squidbridge.api.SourceCode;
 import org.sonar.squidbridge.api.SourceFile;
 import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.squidbridge.instrumentation.MetricsRegistry;
 import org.sonar.squidbridge.measures.MetricDef;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Deque;
+import java.util.Map;
 
 public class SquidAstVisitorContextImpl<G extends Grammar> extends SquidAstVisitorContext<G> {
 
   private final Deque<SourceCode> sourceCodeStack = new ArrayDeque<SourceCode>();
   private G grammar;
   private File file;
+  private SourceFile sourceFile;
   private final SourceProject project;
   private CommentAnalyser commentAnalyser;
+  private boolean dispatchingComments;
+  private MetricsRegistry metricsRegistry;
+  private final FileServices fileServices = new FileServices();
+  private final Map<String, NameVerdictCache> nameVerdictCaches = Maps.newHashMap();
 
   public SquidAstVisitorContextImpl(SourceProject project) {
     if (project == null) {
@@ -66,6 +77,32 @@ public class SquidAstVisitorContextImpl<G extends Grammar> extends SquidAstVisit
     return commentAnalyser;
   }
 
+  /**
+   * Whether comments are dispatched to the {@link CommentVisitor}s by the scanner.
+   */
+  void setDispatchingComments(boolean dispatchingComments) {
+    this.dispatchingComments = dispatchingComments;
+  }
+
+  boolean isDispatchingComments() {
+    return dispatchingComments;
+  }
+
+  /**
+   * Registry of the scanner, given to the visitors by {@link #getMetricsRegistry()}.
+   */
+  void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+    this.metricsRegistry = metricsRegistry;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public MetricsRegistry getMetricsRegistry() {
+    return metricsRegistry == null ? super.getMetricsRegistry() : metricsRegistry;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -80,7 +117,9 @@ public class SquidAstVisitorContextImpl<G extends Grammar> extends SquidAstVisit
    */
   @Override
   public void popSourceCode() {
-    sourceCodeStack.pop();
+    if (sourceCodeStack.pop() == sourceFile) {
+      sourceFile = null;
+    }
   }
 
   /**
@@ -94,15 +133,75 @@ public class SquidAstVisitorContextImpl<G extends Grammar> extends SquidAstVisit
   public void setFile(File file, MetricDef filesMetric) {
     popTillSourceProject();
     this.file = file;
-    SourceFile sourceFile = new SourceFile(file.getAbsolutePath(), file.getName());
-    addSourceCode(sourceFile);
-    peekSourceCode().setMeasure(filesMetric, 1);
+    SourceFile newSourceFile = new SourceFile(file.getAbsolutePath(), file.getName());
+    addSourceCode(newSourceFile);
+    newSourceFile.setMeasure(filesMetric, 1);
+    this.sourceFile = newSourceFile;
   }
 
   protected void popTillSourceProject() {
     while (!(peekSourceCode() instanceof SourceProject)) {
       popSourceCode();
     }
+    sourceFile = null;
+    fileServices.reset();
+  }
+
+  /**
+   * @return the engine shared by all the XPath checks of the scanner
+   */
+  public XPathEngine getXPathEngine() {
+    return fileServices.getXPathEngine();
+  }
+
+  /**
+   * @return the engine shared by all the comment regular expression checks of the scanner
+   */
+  public CommentRegexEngine getCommentRegexEngine() {
+    return fileServices.getCommentRegexEngine();
+  }
+
+  /**
+   * @return the cache shared by all the naming checks of the scanner using the same regular expression and cache size
+   * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+   */
+  public NameVerdictCache getNameVerdictCache(String regexp, int maxSize) {
+    String key = maxSize + ":" + regexp;
+    NameVerdictCache cache = nameVerdictCaches.get(key);
+    if (cache == null) {
+      cache = new NameVerdictCache(regexp, maxSize);
+      nameVerdictCaches.put(key, cache);
+    }
+    return cache;
+  }
+
+  Collection<NameVerdictCache> getNameVerdictCaches() {
+    return nameVerdictCaches.values();
+  }
+
+  /**
+   * Declares interest in the sum of the given metric over the current file and all the source code it contains,
+   * to be called from {@link SquidAstVisitor#init()}.
+   */
+  public void aggregateFileMeasure(MetricDef metric) {
+    fileServices.getMeasureAggregator().declare(metric);
+  }
+
+  /**
+   * Sums of all the declared metrics are computed in a single walk of the source code of the file, which is only
+   * done again once a measure of the file changed. It is meant to be called once the file has been visited, i.e.
+   * from {@link SquidAstVisitor#leaveFile(AstNode)}.
+   *
+   * @return the sum of the given metric over the current file and all the source code it contains
+   * @throws IllegalArgumentException if interest in the metric has not been declared
+   * @see #aggregateFileMeasure(MetricDef)
+   */
+  public int getAggregatedFileMeasure(MetricDef metric) {
+    SourceFile currentFile = currentFile();
+    if (currentFile == null) {
+      throw new IllegalStateException("No file is being visited");
+    }
+    return fileServices.getMeasureAggregator().get(metric, currentFile);
   }
 
   /**
@@ -158,7 +257,11 @@ public class SquidAstVisitorContextImpl<G extends Grammar> extends SquidAstVisit
     if (line > 0) {
       checkMessage.setLine(line);
     }
-    log(checkMessage);
+    if (sourceFile != null) {
+      sourceFile.log(checkMessage);
+    } else {
+      log(checkMessage);
+    }
   }
 
   /**
@@ -166,14 +269,22 @@ public class SquidAstVisitorContextImpl<G extends Grammar> extends SquidAstVisit
    */
   @Override
   public void log(CheckMessage message) {
-    if (peekSourceCode() instanceof SourceFile) {
-      peekSourceCode().log(message);
-    } else if (peekSourceCode().getParent(SourceFile.class) != null) {
-      peekSourceCode().getParent(SourceFile.class).log(message);
+    SourceFile currentFile = currentFile();
+    if (currentFile != null) {
+      currentFile.log(message);
     } else {
       throw new IllegalStateException("Unable to log a check message on source code '"
         + (peekSourceCode() == null ? "[NULL]" : peekSourceCode().getKey()) + "'");
     }
   }
 
+  @Nullable
+  private SourceFile currentFile() {
+    if (sourceFile != null) {
+      return sourceFile;
+    }
+    SourceCode sourceCode = peekSourceCode();
+    return sourceCode instanceof SourceFile ? (SourceFile) sourceCode : sourceCode.getParent(SourceFile.class);
+  }
+
 }
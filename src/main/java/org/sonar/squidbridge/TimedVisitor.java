@@ -0,0 +1,128 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.sonar.sslr.api.AstAndTokenVisitor;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.AstVisitor;
+import com.sonar.sslr.api.Token;
+import org.sonar.squidbridge.jfr.VisitorEvent;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Measures the time spent by a visitor on a file, for {@link VisitorEvent}.
+ */
+class TimedVisitor implements AstVisitor {
+
+  private final AstVisitor delegate;
+  private long nanos;
+  private long calls;
+
+  TimedVisitor(AstVisitor delegate) {
+    this.delegate = delegate;
+  }
+
+  static TimedVisitor of(AstVisitor delegate) {
+    return delegate instanceof AstAndTokenVisitor ? new TimedTokenVisitor((AstAndTokenVisitor) delegate) : new TimedVisitor(delegate);
+  }
+
+  @Override
+  public List<AstNodeType> getAstNodeTypesToVisit() {
+    return delegate.getAstNodeTypesToVisit();
+  }
+
+  @Override
+  public void visitFile(@Nullable AstNode ast) {
+    nanos = 0;
+    calls = 0;
+    long start = System.nanoTime();
+    delegate.visitFile(ast);
+    record(start);
+  }
+
+  @Override
+  public void leaveFile(@Nullable AstNode ast) {
+    long start = System.nanoTime();
+    delegate.leaveFile(ast);
+    record(start);
+  }
+
+  @Override
+  public void visitNode(AstNode ast) {
+    long start = System.nanoTime();
+    delegate.visitNode(ast);
+    record(start);
+  }
+
+  @Override
+  public void leaveNode(AstNode ast) {
+    long start = System.nanoTime();
+    delegate.leaveNode(ast);
+    record(start);
+  }
+
+  final void record(long start) {
+    nanos += System.nanoTime() - start;
+    calls++;
+  }
+
+  /**
+   * Moves time spent within this visitor on behalf of another one, e.g. by dispatching comments to it, to the other one.
+   */
+  void chargeTo(TimedVisitor other, long elapsedNanos) {
+    nanos -= elapsedNanos;
+    other.nanos += elapsedNanos;
+    other.calls++;
+  }
+
+  void commitEvent(File file) {
+    VisitorEvent event = new VisitorEvent();
+    if (event.shouldCommit()) {
+      event.setFile(file);
+      event.setVisitorClass(delegate.getClass());
+      event.setVisitorTime(nanos, calls);
+      event.commit();
+    }
+  }
+
+  private static final class TimedTokenVisitor extends TimedVisitor implements AstAndTokenVisitor {
+
+    private final AstAndTokenVisitor delegate;
+
+    TimedTokenVisitor(AstAndTokenVisitor delegate) {
+      super(delegate);
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void visitToken(Token token) {
+      long start = System.nanoTime();
+      delegate.visitToken(token);
+      record(start);
+    }
+
+  }
+
+}
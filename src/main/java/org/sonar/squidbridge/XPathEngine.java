@@ -0,0 +1,165 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.google.common.collect.Maps;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.xpath.api.AstNodeXPathQuery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the XPath queries of all the checks of a scanner on the syntax tree of the current file.
+ * <ul>
+ * <li>identical queries registered by several checks are compiled and evaluated once per file,</li>
+ * <li>queries selecting all the nodes of a given name ({@code //NAME}) are all answered by a single traversal of the tree,</li>
+ * <li>the time spent on each query is recorded, see {@link #getElapsedNanosByQuery()}.</li>
+ * </ul>
+ * Results are kept until the scanner moves to the next file.
+ */
+public class XPathEngine {
+
+  private static final Pattern DESCENDANTS_BY_NAME = Pattern.compile("//([A-Za-z_][A-Za-z0-9_]*+)");
+
+  private final Map<String, AstNodeXPathQuery<Object>> queries = Maps.newHashMap();
+  private final Map<String, String> nameByDescendantsQuery = Maps.newHashMap();
+  private final Map<String, Long> elapsedNanosByQuery = Maps.newHashMap();
+  private long cacheHits;
+  private long cacheMisses;
+
+  private AstNode currentFileNode;
+  private final Map<String, List<Object>> results = Maps.newHashMap();
+
+  /**
+   * Registers a query, to be called from {@link SquidAstVisitor#init()}.
+   *
+   * @throws RuntimeException if the query is invalid
+   */
+  public void register(String xpath) {
+    if (!queries.containsKey(xpath)) {
+      queries.put(xpath, AstNodeXPathQuery.create(xpath));
+      elapsedNanosByQuery.put(xpath, 0L);
+      Matcher matcher = DESCENDANTS_BY_NAME.matcher(xpath);
+      if (matcher.matches()) {
+        nameByDescendantsQuery.put(xpath, matcher.group(1));
+      }
+    }
+  }
+
+  /**
+   * @return the result of the registered query on the given file node, in the same form as {@link AstNodeXPathQuery#selectNodes(AstNode)}
+   */
+  public List<Object> selectNodes(String xpath, AstNode fileNode) {
+    AstNodeXPathQuery<Object> query = queries.get(xpath);
+    if (query == null) {
+      throw new IllegalStateException("XPath query has not been registered: " + xpath);
+    }
+    if (fileNode != currentFileNode) {
+      reset();
+      currentFileNode = fileNode;
+    }
+    List<Object> result = results.get(xpath);
+    if (result != null) {
+      cacheHits++;
+    } else {
+      cacheMisses++;
+      if (nameByDescendantsQuery.containsKey(xpath)) {
+        selectAllDescendantsByName(fileNode);
+        result = results.get(xpath);
+      } else {
+        long start = System.nanoTime();
+        result = Collections.unmodifiableList(query.selectNodes(fileNode));
+        addElapsedNanos(xpath, System.nanoTime() - start);
+        results.put(xpath, result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Answers all the {@code //NAME} queries in one traversal, in document order like the XPath engine.
+   */
+  private void selectAllDescendantsByName(AstNode fileNode) {
+    long start = System.nanoTime();
+    Map<String, List<Object>> nodesByName = Maps.newHashMap();
+    for (String name : nameByDescendantsQuery.values()) {
+      nodesByName.put(name, new ArrayList<Object>());
+    }
+    collect(fileNode, nodesByName);
+    for (Map.Entry<String, String> entry : nameByDescendantsQuery.entrySet()) {
+      results.put(entry.getKey(), Collections.unmodifiableList(nodesByName.get(entry.getValue())));
+    }
+    long elapsedPerQuery = (System.nanoTime() - start) / nameByDescendantsQuery.size();
+    for (String xpath : nameByDescendantsQuery.keySet()) {
+      addElapsedNanos(xpath, elapsedPerQuery);
+    }
+  }
+
+  private static void collect(AstNode node, Map<String, List<Object>> nodesByName) {
+    List<Object> nodes = nodesByName.get(node.getName());
+    if (nodes != null) {
+      nodes.add(node);
+    }
+    for (AstNode child : node.getChildren()) {
+      collect(child, nodesByName);
+    }
+  }
+
+  private void addElapsedNanos(String xpath, long nanos) {
+    elapsedNanosByQuery.put(xpath, elapsedNanosByQuery.get(xpath) + nanos);
+  }
+
+  /**
+   * Forgets the results on the current file.
+   */
+  public void reset() {
+    currentFileNode = null;
+    results.clear();
+  }
+
+  /**
+   * @return number of selections answered from the results already computed on the current file, either for another
+   *         check or by the shared traversal answering {@code //NAME} queries
+   */
+  public long getCacheHits() {
+    return cacheHits;
+  }
+
+  /**
+   * @return number of selections which had to be computed
+   */
+  public long getCacheMisses() {
+    return cacheMisses;
+  }
+
+  /**
+   * @return the time spent evaluating each registered query since the beginning of the analysis, time spent on
+   *         the shared traversal answering {@code //NAME} queries being evenly split between them
+   */
+  public Map<String, Long> getElapsedNanosByQuery() {
+    return Collections.unmodifiableMap(elapsedNanosByQuery);
+  }
+
+}
@@ -19,14 +19,34 @@
  */
 package org.sonar.squidbridge.api;
 
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.CheckForNull;
+
 import java.text.MessageFormat;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.sonar.api.utils.AnnotationUtils;
 import org.sonar.check.Message;
 
 public class CheckMessage implements Message {
 
+  /**
+   * Upper bound on the number of distinct templates kept in {@link #MESSAGE_FORMATS}. Templates built by concatenation
+   * rather than with arguments would otherwise make the cache grow without limit. The cache is cleared when full, so
+   * that one-off templates do not prevent the recurring ones from being cached again.
+   */
+  private static final int MAX_CACHED_MESSAGE_FORMATS = 1000;
+
+  private static final ConcurrentMap<MessageFormatKey, MessageFormat> MESSAGE_FORMATS = new ConcurrentHashMap<MessageFormatKey, MessageFormat>();
+  private static final AtomicLong MESSAGE_FORMAT_HITS = new AtomicLong();
+  private static final AtomicLong MESSAGE_FORMAT_MISSES = new AtomicLong();
+
   private Integer line;
   private Double cost;
   private SourceCode sourceCode;
@@ -34,6 +54,7 @@ public class CheckMessage implements Message {
   private final String defaultMessage;
   private final Object[] messageArguments;
   private Boolean bypassExclusion;
+  private String formattedMessage;
 
   public CheckMessage(Object check, String message, Object... messageArguments) {
     this.check = check;
@@ -95,6 +116,24 @@ public class CheckMessage implements Message {
     return check;
   }
 
+  /**
+   * @return the key of the {@link org.sonar.check.Rule} annotation of the check, or its class name when it has none, or null when
+   *         there is no check
+   */
+  @CheckForNull
+  public String getRuleKey() {
+    return check == null ? null : ruleKey(check);
+  }
+
+  static String ruleKey(Object check) {
+    org.sonar.check.Rule rule = AnnotationUtils.getAnnotation(check.getClass(), org.sonar.check.Rule.class);
+    if (rule != null && StringUtils.isNotEmpty(rule.key())) {
+      return rule.key();
+    }
+    String canonicalName = check.getClass().getCanonicalName();
+    return canonicalName == null ? check.getClass().getName() : canonicalName;
+  }
+
   public String getDefaultMessage() {
     return defaultMessage;
   }
@@ -114,12 +153,90 @@ public class CheckMessage implements Message {
       .append("line", line).toString();
   }
 
+  /**
+   * The message is formatted on first call only, the result is then kept for subsequent calls.
+   */
   public String formatDefaultMessage() {
-    if (messageArguments.length == 0) {
-      return defaultMessage;
+    String result = formattedMessage;
+    if (result == null) {
+      if (messageArguments.length == 0) {
+        result = defaultMessage;
+      } else {
+        result = format(defaultMessage, messageArguments);
+      }
+      formattedMessage = result;
+    }
+    return result;
+  }
+
+  private static String format(String pattern, Object[] arguments) {
+    Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+    MessageFormatKey key = new MessageFormatKey(locale, pattern);
+    MessageFormat messageFormat = MESSAGE_FORMATS.get(key);
+    if (messageFormat != null) {
+      MESSAGE_FORMAT_HITS.incrementAndGet();
     } else {
-      return MessageFormat.format(defaultMessage, messageArguments);
+      MESSAGE_FORMAT_MISSES.incrementAndGet();
+      messageFormat = new MessageFormat(pattern, locale);
+      if (MESSAGE_FORMATS.size() >= MAX_CACHED_MESSAGE_FORMATS) {
+        MESSAGE_FORMATS.clear();
+      }
+      MessageFormat previous = MESSAGE_FORMATS.putIfAbsent(key, messageFormat);
+      if (previous != null) {
+        messageFormat = previous;
+      }
+    }
+    // MessageFormat is not thread-safe: cached instances are only used as prototypes, which are never modified and
+    // whose copies are cheaper than parsing the template again
+    return ((MessageFormat) messageFormat.clone()).format(arguments);
+  }
+
+  /**
+   * @return number of messages formatted with a cached template. Like the cache, this is shared by all the scanners of the JVM.
+   */
+  public static long getMessageFormatCacheHits() {
+    return MESSAGE_FORMAT_HITS.get();
+  }
+
+  /**
+   * @return number of messages whose template had to be parsed. Like the cache, this is shared by all the scanners of the JVM.
+   */
+  public static long getMessageFormatCacheMisses() {
+    return MESSAGE_FORMAT_MISSES.get();
+  }
+
+  @VisibleForTesting
+  static boolean isMessageFormatCached(String pattern) {
+    return MESSAGE_FORMATS.containsKey(new MessageFormatKey(Locale.getDefault(Locale.Category.FORMAT), pattern));
+  }
+
+  private static final class MessageFormatKey {
+
+    private final Locale locale;
+    private final String pattern;
+
+    MessageFormatKey(Locale locale, String pattern) {
+      this.locale = locale;
+      this.pattern = pattern;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof MessageFormatKey)) {
+        return false;
+      }
+      MessageFormatKey other = (MessageFormatKey) obj;
+      return pattern.equals(other.pattern) && locale.equals(other.locale);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * pattern.hashCode() + locale.hashCode();
+    }
+
   }
 
 }
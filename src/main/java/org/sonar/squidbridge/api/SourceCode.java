@@ -26,7 +26,10 @@ import org.sonar.squidbridge.measures.MetricDef;
 
 import javax.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -39,9 +42,12 @@ public abstract class SourceCode implements Measurable, Comparable<SourceCode> {
   private int startAtLine = -1;
   private int endAtLine = -1;
   private SourceCode parent;
+  private SourceFile enclosingFile;
   private SortedSet<SourceCode> children;
   private SourceCodeIndexer indexer;
   private Set<CheckMessage> messages;
+  private SourceCodeSpillStore.SpilledSubtree spilledSubtree;
+  private MetricDef[] aggregatedMetrics;
 
   public SourceCode(String key) {
     this(key, null);
@@ -166,6 +172,7 @@ public abstract class SourceCode implements Measurable, Comparable<SourceCode> {
       throw new IllegalStateException("It's not allowed to set the value of a calculated metric : " + metric.getName());
     }
     measures.setValue(metric, measure);
+    measuresChanged();
   }
 
   /**
@@ -178,6 +185,7 @@ public abstract class SourceCode implements Measurable, Comparable<SourceCode> {
 
   public void removeMeasure(MetricDef metric) {
     measures.removeMeasure(metric);
+    measuresChanged();
   }
 
   public void setStartAtLine(int startAtLine) {
@@ -198,6 +206,7 @@ public abstract class SourceCode implements Measurable, Comparable<SourceCode> {
   }
 
   public SourceCode addChild(SourceCode sourceCode) {
+    ensureLoaded();
     if (children == null) {
       children = new TreeSet<SourceCode>();
     }
@@ -205,10 +214,42 @@ public abstract class SourceCode implements Measurable, Comparable<SourceCode> {
     if (!children.contains(sourceCode)) {
       children.add(sourceCode);
       index(sourceCode);
+      measuresChanged();
     }
     return this;
   }
 
+  /**
+   * Notifies the enclosing file that the measures of its subtree changed.
+   */
+  private void measuresChanged() {
+    SourceFile file = getEnclosingFile();
+    if (file != null) {
+      file.subtreeMeasuresChanged();
+    }
+  }
+
+  @Nullable
+  private SourceFile getEnclosingFile() {
+    return this instanceof SourceFile ? (SourceFile) this : enclosingFile;
+  }
+
+  /**
+   * Keeps the reference to the enclosing file of the subtree up to date, so that changes of measures do not need to
+   * look for it. Only walks the subtree when it is attached after having been built.
+   */
+  private void setEnclosingFile(@Nullable SourceFile file) {
+    if (this instanceof SourceFile || enclosingFile == file) {
+      return;
+    }
+    enclosingFile = file;
+    if (children != null) {
+      for (SourceCode child : children) {
+        child.setEnclosingFile(file);
+      }
+    }
+  }
+
   public <S extends SourceCode> S getParent(Class<S> sourceCode) {
     if (parent == null) {
       return null;
@@ -236,6 +277,7 @@ public abstract class SourceCode implements Measurable, Comparable<SourceCode> {
   }
 
   public Set<CheckMessage> getCheckMessages() {
+    ensureLoaded();
     if (messages == null) {
       messages = new HashSet<CheckMessage>();
     }
@@ -243,19 +285,31 @@ public abstract class SourceCode implements Measurable, Comparable<SourceCode> {
   }
 
   public boolean hasCheckMessages() {
+    ensureLoaded();
     return messages != null && !messages.isEmpty();
   }
 
+  /**
+   * Releases the check messages logged so far on this source code.
+   */
+  public void clearCheckMessages() {
+    ensureLoaded();
+    messages = null;
+  }
+
   public SourceCode getFirstChild() {
+    ensureLoaded();
     return !children.isEmpty() ? children.first() : null;
   }
 
   public SourceCode getLastChild() {
+    ensureLoaded();
     return !children.isEmpty() ? children.last() : null;
   }
 
   private void setParent(SourceCode parent) {
     this.parent = parent;
+    setEnclosingFile(parent.getEnclosingFile());
   }
 
   public SourceCode getParent() {
@@ -263,6 +317,7 @@ public abstract class SourceCode implements Measurable, Comparable<SourceCode> {
   }
 
   public Set<SourceCode> getChildren() {
+    ensureLoaded();
     return children;
   }
 
@@ -282,9 +337,68 @@ public abstract class SourceCode implements Measurable, Comparable<SourceCode> {
   }
 
   public boolean hasChildren() {
+    ensureLoaded();
     return children != null && !children.isEmpty();
   }
 
+  /**
+   * @return true if the children and check messages of this source code are currently stored on disk by a
+   *         {@link SourceCodeSpillStore}, in which case they are loaded back as soon as they are accessed
+   */
+  public boolean isSpilled() {
+    return spilledSubtree != null;
+  }
+
+  Measures getMeasures() {
+    return measures;
+  }
+
+  /**
+   * Records that the given metrics have been aggregated from the subtree into this source code, which stays true once
+   * the subtree is loaded back.
+   */
+  void setAggregated(MetricDef... metrics) {
+    MetricDef[] added = getMetricsToAggregate(metrics);
+    if (aggregatedMetrics == null) {
+      aggregatedMetrics = added;
+    } else {
+      List<MetricDef> aggregated = new ArrayList<MetricDef>(Arrays.asList(aggregatedMetrics));
+      aggregated.addAll(Arrays.asList(added));
+      aggregatedMetrics = aggregated.toArray(new MetricDef[aggregated.size()]);
+    }
+  }
+
+  /**
+   * @return the given metrics, less the ones already aggregated into this source code
+   */
+  MetricDef[] getMetricsToAggregate(MetricDef... metrics) {
+    if (aggregatedMetrics == null) {
+      return metrics;
+    }
+    List<MetricDef> aggregated = Arrays.asList(aggregatedMetrics);
+    List<MetricDef> toAggregate = new ArrayList<MetricDef>();
+    for (MetricDef metric : metrics) {
+      if (!aggregated.contains(metric)) {
+        toAggregate.add(metric);
+      }
+    }
+    return toAggregate.toArray(new MetricDef[toAggregate.size()]);
+  }
+
+  void spill(SourceCodeSpillStore.SpilledSubtree spilledSubtree) {
+    this.spilledSubtree = spilledSubtree;
+    this.children = null;
+    this.messages = null;
+  }
+
+  private void ensureLoaded() {
+    if (spilledSubtree != null) {
+      SourceCodeSpillStore.SpilledSubtree subtree = spilledSubtree;
+      spilledSubtree = null;
+      subtree.load(this);
+    }
+  }
+
   public boolean hasAmongParents(SourceCode expectedParent) {
     if (parent == null) {
       return false;
@@ -19,10 +19,12 @@
  */
 package org.sonar.squidbridge.api;
 
+import com.google.common.collect.ImmutableSet;
 import org.sonar.graph.Edge;
 
 import javax.annotation.Nullable;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -31,9 +33,7 @@ public class SourceCodeEdge implements Edge<SourceCode> {
   private final SourceCode from;
   private final SourceCode to;
   private final SourceCodeEdgeUsage usage;
-  private Set<SourceCodeEdge> rootEdges;
-  private Set<SourceCode> rootFromNodes;
-  private Set<SourceCode> rootToNodes;
+  private RootEdges rootEdges = RootEdges.EMPTY;
   private final int hashcode;
   private SourceCodeEdge parent;
 
@@ -63,54 +63,34 @@ public class SourceCodeEdge implements Edge<SourceCode> {
     return usage;
   }
 
-  private boolean noRoots() {
-    return rootEdges == null;
-  }
-
   public boolean hasAnEdgeFromRootNode(SourceCode rootFromNode) {
-    if (noRoots()) {
-      return false;
-    }
-    return rootFromNodes.contains(rootFromNode);
+    return rootEdges.hasFromNode(rootFromNode);
   }
 
   public boolean hasAnEdgeToRootNode(SourceCode rootToNode) {
-    if (noRoots()) {
-      return false;
-    }
-    return rootToNodes.contains(rootToNode);
+    return rootEdges.hasToNode(rootToNode);
   }
 
+  /**
+   * @return a read-only view of the root edges, use {@link #addRootEdge(SourceCodeEdge)} to add one
+   */
   public Set<SourceCodeEdge> getRootEdges() {
-    return rootEdges;
+    return rootEdges.edges();
   }
 
   public int getNumberOfRootFromNodes() {
-    if (noRoots()) {
-      return 0;
-    }
-    return rootFromNodes.size();
+    return rootEdges.numberOfFromNodes();
   }
 
   public final void addRootEdge(@Nullable SourceCodeEdge rootRelationShip) {
-    if (noRoots()) {
-      rootEdges = new HashSet<SourceCodeEdge>();
-      rootFromNodes = new HashSet<SourceCode>();
-      rootToNodes = new HashSet<SourceCode>();
-    }
     if (rootRelationShip != null) {
-      rootEdges.add(rootRelationShip);
-      rootFromNodes.add(rootRelationShip.getFrom());
-      rootToNodes.add(rootRelationShip.getTo());
+      rootEdges = rootEdges.add(rootRelationShip);
       rootRelationShip.setParent(this);
     }
   }
 
   @Override
   public int getWeight() {
-    if (noRoots()) {
-      return 0;
-    }
     return rootEdges.size();
   }
 
@@ -141,4 +121,192 @@ public class SourceCodeEdge implements Edge<SourceCode> {
   public String toString() {
     return "from : " + from + ", to : " + to;
   }
+
+  /**
+   * Root edges of an edge. Most edges have none, so they all share {@link #EMPTY}; one or two root edges are kept inline
+   * and only edges aggregating more of them pay for hashed sets.
+   */
+  private abstract static class RootEdges {
+
+    static final RootEdges EMPTY = new NoRootEdge();
+
+    /**
+     * @return the root edges including the given one, which may be this instance
+     */
+    abstract RootEdges add(SourceCodeEdge edge);
+
+    abstract Set<SourceCodeEdge> edges();
+
+    abstract int size();
+
+    abstract boolean hasFromNode(SourceCode node);
+
+    abstract boolean hasToNode(SourceCode node);
+
+    abstract int numberOfFromNodes();
+
+  }
+
+  private static final class NoRootEdge extends RootEdges {
+
+    @Override
+    RootEdges add(SourceCodeEdge edge) {
+      return new OneRootEdge(edge);
+    }
+
+    @Override
+    Set<SourceCodeEdge> edges() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    int size() {
+      return 0;
+    }
+
+    @Override
+    boolean hasFromNode(SourceCode node) {
+      return false;
+    }
+
+    @Override
+    boolean hasToNode(SourceCode node) {
+      return false;
+    }
+
+    @Override
+    int numberOfFromNodes() {
+      return 0;
+    }
+
+  }
+
+  private static final class OneRootEdge extends RootEdges {
+
+    private final SourceCodeEdge first;
+
+    OneRootEdge(SourceCodeEdge first) {
+      this.first = first;
+    }
+
+    @Override
+    RootEdges add(SourceCodeEdge edge) {
+      return first.equals(edge) ? this : new TwoRootEdges(first, edge);
+    }
+
+    @Override
+    Set<SourceCodeEdge> edges() {
+      return Collections.singleton(first);
+    }
+
+    @Override
+    int size() {
+      return 1;
+    }
+
+    @Override
+    boolean hasFromNode(SourceCode node) {
+      return first.getFrom().equals(node);
+    }
+
+    @Override
+    boolean hasToNode(SourceCode node) {
+      return first.getTo().equals(node);
+    }
+
+    @Override
+    int numberOfFromNodes() {
+      return 1;
+    }
+
+  }
+
+  private static final class TwoRootEdges extends RootEdges {
+
+    private final SourceCodeEdge first;
+    private final SourceCodeEdge second;
+
+    TwoRootEdges(SourceCodeEdge first, SourceCodeEdge second) {
+      this.first = first;
+      this.second = second;
+    }
+
+    @Override
+    RootEdges add(SourceCodeEdge edge) {
+      if (first.equals(edge) || second.equals(edge)) {
+        return this;
+      }
+      HashedRootEdges hashed = new HashedRootEdges();
+      hashed.add(first);
+      hashed.add(second);
+      return hashed.add(edge);
+    }
+
+    @Override
+    Set<SourceCodeEdge> edges() {
+      return ImmutableSet.of(first, second);
+    }
+
+    @Override
+    int size() {
+      return 2;
+    }
+
+    @Override
+    boolean hasFromNode(SourceCode node) {
+      return first.getFrom().equals(node) || second.getFrom().equals(node);
+    }
+
+    @Override
+    boolean hasToNode(SourceCode node) {
+      return first.getTo().equals(node) || second.getTo().equals(node);
+    }
+
+    @Override
+    int numberOfFromNodes() {
+      return first.getFrom().equals(second.getFrom()) ? 1 : 2;
+    }
+
+  }
+
+  private static final class HashedRootEdges extends RootEdges {
+
+    private final Set<SourceCodeEdge> rootEdges = new HashSet<SourceCodeEdge>();
+    private final Set<SourceCode> rootFromNodes = new HashSet<SourceCode>();
+    private final Set<SourceCode> rootToNodes = new HashSet<SourceCode>();
+
+    @Override
+    RootEdges add(SourceCodeEdge edge) {
+      rootEdges.add(edge);
+      rootFromNodes.add(edge.getFrom());
+      rootToNodes.add(edge.getTo());
+      return this;
+    }
+
+    @Override
+    Set<SourceCodeEdge> edges() {
+      return Collections.unmodifiableSet(rootEdges);
+    }
+
+    @Override
+    int size() {
+      return rootEdges.size();
+    }
+
+    @Override
+    boolean hasFromNode(SourceCode node) {
+      return rootFromNodes.contains(node);
+    }
+
+    @Override
+    boolean hasToNode(SourceCode node) {
+      return rootToNodes.contains(node);
+    }
+
+    @Override
+    int numberOfFromNodes() {
+      return rootFromNodes.size();
+    }
+
+  }
 }
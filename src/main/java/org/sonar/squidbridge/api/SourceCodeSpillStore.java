@@ -0,0 +1,447 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.api;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.sonar.squidbridge.measures.Measures;
+import org.sonar.squidbridge.measures.MetricDef;
+
+import javax.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Moves the content of analyzed {@link SourceFile}s to disk, in order to keep the heap used by very large projects
+ * bounded. The classes, methods and functions of a spilled file, together with their measures and the check messages
+ * of the whole subtree, are written to a compressed segment file and released. The file itself and its measures stay
+ * in memory: they are aggregated from the subtree before spilling, so that {@link SourceCodeTreeDecorator} does not
+ * need to load it back. The subtree is transparently loaded back as soon as the children or the check messages of the
+ * file are accessed.
+ * <p>
+ * Only subtrees made of {@link SourceClass}, {@link SourceMethod}, {@link SourceFunction} and {@link SourcePackage}
+ * without data measures, and whose check messages only have primitive or string arguments, can be spilled. Objects
+ * loaded back are new instances: references to the original objects kept elsewhere (for instance in a dependency
+ * graph) are not updated. Checks and metrics are kept in memory and restored by identity.
+ */
+public class SourceCodeSpillStore implements Closeable {
+
+  private static final byte SOURCE_CLASS = 1;
+  private static final byte SOURCE_METHOD = 2;
+  private static final byte SOURCE_FUNCTION = 3;
+  private static final byte SOURCE_PACKAGE = 4;
+
+  private static final byte ARG_STRING = 1;
+  private static final byte ARG_INTEGER = 2;
+  private static final byte ARG_LONG = 3;
+  private static final byte ARG_DOUBLE = 4;
+  private static final byte ARG_FLOAT = 5;
+  private static final byte ARG_SHORT = 6;
+  private static final byte ARG_BYTE = 7;
+  private static final byte ARG_BOOLEAN = 8;
+  private static final byte ARG_CHARACTER = 9;
+
+  private static final Map<Class<?>, Byte> ARGUMENT_TYPES = Maps.newHashMap();
+
+  static {
+    ARGUMENT_TYPES.put(String.class, ARG_STRING);
+    ARGUMENT_TYPES.put(Integer.class, ARG_INTEGER);
+    ARGUMENT_TYPES.put(Long.class, ARG_LONG);
+    ARGUMENT_TYPES.put(Double.class, ARG_DOUBLE);
+    ARGUMENT_TYPES.put(Float.class, ARG_FLOAT);
+    ARGUMENT_TYPES.put(Short.class, ARG_SHORT);
+    ARGUMENT_TYPES.put(Byte.class, ARG_BYTE);
+    ARGUMENT_TYPES.put(Boolean.class, ARG_BOOLEAN);
+    ARGUMENT_TYPES.put(Character.class, ARG_CHARACTER);
+  }
+
+  private final File segmentFile;
+  private final RandomAccessFile segment;
+  private final List<Object> checks = Lists.newArrayList();
+  private final Map<Object, Integer> checkIds = new IdentityHashMap<Object, Integer>();
+  private final List<MetricDef> metrics = Lists.newArrayList();
+  private final Map<MetricDef, Integer> metricIds = new IdentityHashMap<MetricDef, Integer>();
+
+  /**
+   * @param directory directory in which the segment file is created, it is deleted by {@link #close()}
+   */
+  public SourceCodeSpillStore(File directory) throws IOException {
+    this.segmentFile = File.createTempFile("squid-spill", ".bin", directory);
+    this.segmentFile.deleteOnExit();
+    this.segment = new RandomAccessFile(segmentFile, "rw");
+  }
+
+  /**
+   * @return true if the subtree of the given file can be spilled
+   */
+  public boolean canSpill(SourceFile sourceFile) {
+    if (sourceFile.isSpilled() || !(sourceFile.hasChildren() || sourceFile.hasCheckMessages())) {
+      return false;
+    }
+    if (!canSpillMessages(sourceFile)) {
+      return false;
+    }
+    if (sourceFile.hasChildren()) {
+      for (SourceCode child : sourceFile.getChildren()) {
+        if (!canSpillSubtree(child)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean canSpillSubtree(SourceCode sourceCode) {
+    if (typeOf(sourceCode) == 0 || !canSpillMessages(sourceCode)) {
+      return false;
+    }
+    Measures measures = sourceCode.getMeasures();
+    for (MetricDef metric : measures.getMetrics()) {
+      if (measures.getData(metric) != null) {
+        return false;
+      }
+    }
+    if (sourceCode.hasChildren()) {
+      for (SourceCode child : sourceCode.getChildren()) {
+        if (!canSpillSubtree(child)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean canSpillMessages(SourceCode sourceCode) {
+    if (sourceCode.hasCheckMessages()) {
+      for (CheckMessage message : sourceCode.getCheckMessages()) {
+        for (Object argument : message.getMessageArguments()) {
+          if (argument == null || !ARGUMENT_TYPES.containsKey(argument.getClass())) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Aggregates the given metrics from the subtree of the file into the file, then writes the subtree to disk and
+   * releases it. Must only be called when {@link #canSpill(SourceFile)} is true, once the file has been analyzed.
+   */
+  public void spill(SourceFile sourceFile, MetricDef... aggregatedMetrics) {
+    SourceCodeTreeDecorator.decorate(sourceFile, aggregatedMetrics);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED)));
+      writeMessages(output, sourceFile);
+      writeChildren(output, sourceFile);
+      output.close();
+
+      long offset = segment.length();
+      segment.seek(offset);
+      segment.write(bytes.toByteArray());
+      sourceFile.setAggregated(aggregatedMetrics);
+      sourceFile.spill(new SpilledSubtree(this, offset, bytes.size()));
+    } catch (IOException e) {
+      throw new AnalysisException("Unable to spill " + sourceFile.getKey() + " to " + segmentFile.getAbsolutePath(), e);
+    }
+  }
+
+  private void load(SpilledSubtree subtree, SourceCode sourceCode) {
+    try {
+      byte[] bytes = new byte[subtree.length];
+      segment.seek(subtree.offset);
+      segment.readFully(bytes);
+      DataInputStream input = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+      readMessages(input, sourceCode);
+      readChildren(input, sourceCode);
+    } catch (IOException e) {
+      throw new AnalysisException("Unable to load " + sourceCode.getKey() + " from " + segmentFile.getAbsolutePath(), e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    segment.close();
+    if (!segmentFile.delete()) {
+      segmentFile.deleteOnExit();
+    }
+  }
+
+  private void writeChildren(DataOutputStream output, SourceCode sourceCode) throws IOException {
+    if (!sourceCode.hasChildren()) {
+      output.writeInt(0);
+      return;
+    }
+    output.writeInt(sourceCode.getChildren().size());
+    for (SourceCode child : sourceCode.getChildren()) {
+      byte type = typeOf(child);
+      output.writeByte(type);
+      writeString(output, child.getKey());
+      writeString(output, child.getName());
+      output.writeInt(child.getStartAtLine());
+      output.writeInt(child.getEndAtLine());
+      if (type == SOURCE_CLASS) {
+        output.writeBoolean(((SourceClass) child).isSuppressWarnings());
+      } else if (type == SOURCE_METHOD) {
+        output.writeBoolean(((SourceMethod) child).isSuppressWarnings());
+      }
+      Measures measures = child.getMeasures();
+      output.writeInt(measures.getMetrics().size());
+      for (MetricDef metric : measures.getMetrics()) {
+        output.writeInt(id(metric, metrics, metricIds));
+        output.writeDouble(measures.getValue(metric));
+      }
+      writeMessages(output, child);
+      writeChildren(output, child);
+    }
+  }
+
+  private void readChildren(DataInputStream input, SourceCode parent) throws IOException {
+    int count = input.readInt();
+    for (int i = 0; i < count; i++) {
+      byte type = input.readByte();
+      String key = readString(input);
+      String name = readString(input);
+      int startAtLine = input.readInt();
+      int endAtLine = input.readInt();
+      SourceCode child;
+      switch (type) {
+        case SOURCE_CLASS:
+          SourceClass sourceClass = new SourceClass(key, name);
+          sourceClass.setSuppressWarnings(input.readBoolean());
+          child = sourceClass;
+          break;
+        case SOURCE_METHOD:
+          SourceMethod sourceMethod = new SourceMethod(key, name);
+          sourceMethod.setSuppressWarnings(input.readBoolean());
+          child = sourceMethod;
+          break;
+        case SOURCE_FUNCTION:
+          child = new SourceFunction(key, name);
+          break;
+        case SOURCE_PACKAGE:
+          child = new SourcePackage(key);
+          break;
+        default:
+          throw new IOException("Unknown source code type: " + type);
+      }
+      child.setStartAtLine(startAtLine);
+      child.setEndAtLine(endAtLine);
+      int measureCount = input.readInt();
+      for (int j = 0; j < measureCount; j++) {
+        child.getMeasures().setValue(metrics.get(input.readInt()), input.readDouble());
+      }
+      parent.addChild(child);
+      readMessages(input, child);
+      readChildren(input, child);
+    }
+  }
+
+  private void writeMessages(DataOutputStream output, SourceCode sourceCode) throws IOException {
+    if (!sourceCode.hasCheckMessages()) {
+      output.writeInt(0);
+      return;
+    }
+    output.writeInt(sourceCode.getCheckMessages().size());
+    for (CheckMessage message : sourceCode.getCheckMessages()) {
+      output.writeInt(message.getCheck() == null ? -1 : id(message.getCheck(), checks, checkIds));
+      writeString(output, message.getDefaultMessage());
+      output.writeInt(message.getLine() == null ? Integer.MIN_VALUE : message.getLine());
+      output.writeBoolean(message.getCost() != null);
+      if (message.getCost() != null) {
+        output.writeDouble(message.getCost());
+      }
+      output.writeBoolean(message.isBypassExclusion());
+      Object[] arguments = message.getMessageArguments();
+      output.writeInt(arguments.length);
+      for (Object argument : arguments) {
+        writeArgument(output, argument);
+      }
+    }
+  }
+
+  private void readMessages(DataInputStream input, SourceCode sourceCode) throws IOException {
+    int count = input.readInt();
+    for (int i = 0; i < count; i++) {
+      int checkId = input.readInt();
+      String defaultMessage = readString(input);
+      int line = input.readInt();
+      Double cost = input.readBoolean() ? input.readDouble() : null;
+      boolean bypassExclusion = input.readBoolean();
+      Object[] arguments = new Object[input.readInt()];
+      for (int j = 0; j < arguments.length; j++) {
+        arguments[j] = readArgument(input);
+      }
+      CheckMessage message = new CheckMessage(checkId == -1 ? null : checks.get(checkId), defaultMessage, arguments);
+      if (line != Integer.MIN_VALUE) {
+        message.setLine(line);
+      }
+      if (cost != null) {
+        message.setCost(cost);
+      }
+      if (bypassExclusion) {
+        message.setBypassExclusion(true);
+      }
+      sourceCode.log(message);
+    }
+  }
+
+  private static void writeArgument(DataOutputStream output, Object argument) throws IOException {
+    byte type = ARGUMENT_TYPES.get(argument.getClass());
+    output.writeByte(type);
+    switch (type) {
+      case ARG_STRING:
+        writeString(output, (String) argument);
+        break;
+      case ARG_INTEGER:
+        output.writeInt((Integer) argument);
+        break;
+      case ARG_LONG:
+        output.writeLong((Long) argument);
+        break;
+      case ARG_DOUBLE:
+        output.writeDouble((Double) argument);
+        break;
+      case ARG_FLOAT:
+        output.writeFloat((Float) argument);
+        break;
+      case ARG_SHORT:
+        output.writeShort((Short) argument);
+        break;
+      case ARG_BYTE:
+        output.writeByte((Byte) argument);
+        break;
+      case ARG_BOOLEAN:
+        output.writeBoolean((Boolean) argument);
+        break;
+      default:
+        output.writeChar((Character) argument);
+        break;
+    }
+  }
+
+  private static Object readArgument(DataInputStream input) throws IOException {
+    byte type = input.readByte();
+    switch (type) {
+      case ARG_STRING:
+        return readString(input);
+      case ARG_INTEGER:
+        return input.readInt();
+      case ARG_LONG:
+        return input.readLong();
+      case ARG_DOUBLE:
+        return input.readDouble();
+      case ARG_FLOAT:
+        return input.readFloat();
+      case ARG_SHORT:
+        return input.readShort();
+      case ARG_BYTE:
+        return input.readByte();
+      case ARG_BOOLEAN:
+        return input.readBoolean();
+      case ARG_CHARACTER:
+        return input.readChar();
+      default:
+        throw new IOException("Unknown argument type: " + type);
+    }
+  }
+
+  private static void writeString(DataOutputStream output, @Nullable String value) throws IOException {
+    if (value == null) {
+      output.writeInt(-1);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  @Nullable
+  private static String readString(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length == -1) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static <T> int id(T object, List<T> objects, Map<T, Integer> ids) {
+    Integer id = ids.get(object);
+    if (id == null) {
+      id = objects.size();
+      objects.add(object);
+      ids.put(object, id);
+    }
+    return id;
+  }
+
+  private static byte typeOf(SourceCode sourceCode) {
+    Class<?> type = sourceCode.getClass();
+    if (type == SourceClass.class) {
+      return SOURCE_CLASS;
+    } else if (type == SourceMethod.class) {
+      return SOURCE_METHOD;
+    } else if (type == SourceFunction.class) {
+      return SOURCE_FUNCTION;
+    } else if (type == SourcePackage.class) {
+      return SOURCE_PACKAGE;
+    }
+    return 0;
+  }
+
+  /**
+   * Location of the subtree of a spilled file in the segment.
+   */
+  static final class SpilledSubtree {
+
+    private final SourceCodeSpillStore store;
+    private final long offset;
+    private final int length;
+
+    private SpilledSubtree(SourceCodeSpillStore store, long offset, int length) {
+      this.store = store;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    void load(SourceCode sourceCode) {
+      store.load(this, sourceCode);
+    }
+
+  }
+
+}
@@ -19,24 +19,43 @@
  */
 package org.sonar.squidbridge.api;
 
+import org.sonar.squidbridge.instrumentation.Instrumentation;
+import org.sonar.squidbridge.instrumentation.MetricsRegistry;
+import org.sonar.squidbridge.instrumentation.Timer;
 import org.sonar.squidbridge.measures.MetricDef;
 
 public class SourceCodeTreeDecorator {
 
   private final SourceProject project;
+  private final Timer decorateTimer;
 
   public SourceCodeTreeDecorator(SourceProject project) {
+    this(project, Instrumentation.getRegistry());
+  }
+
+  /**
+   * @param metricsRegistry registry to report the decoration into, instead of the one of {@link Instrumentation}
+   */
+  public SourceCodeTreeDecorator(SourceProject project, MetricsRegistry metricsRegistry) {
     this.project = project;
+    this.decorateTimer = metricsRegistry.timer("squid.decorator.decorate");
   }
 
   public void decorateWith(MetricDef... metrics) {
-    decorateWith(project, metrics);
+    long start = System.nanoTime();
+    decorate(project, metrics);
+    decorateTimer.record(System.nanoTime() - start);
   }
 
-  private void decorateWith(SourceCode sourceCode, MetricDef... metrics) {
+  static void decorate(SourceCode sourceCode, MetricDef... allMetrics) {
+    // measures aggregated before spilling must not be aggregated again, even once the subtree has been loaded back
+    MetricDef[] metrics = sourceCode.getMetricsToAggregate(allMetrics);
+    if (metrics.length == 0) {
+      return;
+    }
     if (sourceCode.hasChildren()) {
       for (SourceCode child : sourceCode.getChildren()) {
-        decorateWith(child, metrics);
+        decorate(child, metrics);
       }
     }
     for (MetricDef metric : metrics) {
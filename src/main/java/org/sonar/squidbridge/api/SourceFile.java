@@ -25,6 +25,7 @@ import java.util.Set;
 public class SourceFile extends SourceCode {
 
   private final Set<Integer> noSonarTagLines = new HashSet<Integer>();
+  private int subtreeMeasuresVersion;
 
   public SourceFile(String key) {
     super(key);
@@ -52,4 +53,16 @@ public class SourceFile extends SourceCode {
     noSonarTagLines.add(line);
   }
 
+  /**
+   * @return a number which changes each time a measure is set or removed on this file or on the source code it
+   *         contains, or when source code is added to it, so that values computed from these measures can be cached
+   */
+  public int getSubtreeMeasuresVersion() {
+    return subtreeMeasuresVersion;
+  }
+
+  void subtreeMeasuresChanged() {
+    subtreeMeasuresVersion++;
+  }
+
 }
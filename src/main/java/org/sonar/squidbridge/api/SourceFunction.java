@@ -19,6 +19,7 @@
  */
 package org.sonar.squidbridge.api;
 
+import javax.annotation.Nullable;
 
 public class SourceFunction extends SourceCode {
 
@@ -26,6 +27,10 @@ public class SourceFunction extends SourceCode {
     super(key);
   }
 
+  SourceFunction(String key, @Nullable String name) {
+    super(key, name);
+  }
+
   public SourceFunction(SourceFile sourceFile, String functionSignature, int startAtLine) {
     super(sourceFile.getKey() + "#" + functionSignature, functionSignature);
     setStartAtLine(startAtLine);
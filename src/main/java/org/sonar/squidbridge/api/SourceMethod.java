@@ -21,6 +21,8 @@ package org.sonar.squidbridge.api;
 
 import org.sonar.squidbridge.measures.Metric;
 
+import javax.annotation.Nullable;
+
 public class SourceMethod extends SourceCode {
 
   /**
@@ -32,6 +34,10 @@ public class SourceMethod extends SourceCode {
     super(key);
   }
 
+  SourceMethod(String key, @Nullable String name) {
+    super(key, name);
+  }
+
   public SourceMethod(SourceClass peekParentClass, String methodSignature, int startAtLine) {
     super(peekParentClass.getKey() + "#" + methodSignature, methodSignature);
     setStartAtLine(startAtLine);
@@ -0,0 +1,559 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.api;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.sonar.squidbridge.measures.MetricDef;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a {@link SourceProject}: the tree of source code with keys, names and lines, the measures of
+ * the given metrics, the check messages and the NOSONAR lines of files.
+ * <p>
+ * Strings are deduplicated in a table at the beginning of the snapshot, and keys are stored relatively to the key
+ * of their parent. Metrics are stored by name and checks by
+ * rule key (key of the {@link org.sonar.check.Rule} annotation, or class name), and are resolved against the metrics
+ * and checks given when reading. Data measures and calculated metrics are not stored, and message arguments which are
+ * neither primitives nor strings are stored as strings. Snapshots are read through a memory mapping of the file.
+ */
+public final class SourceProjectSnapshot {
+
+  private static final int MAGIC = 0x5351534e;
+  private static final int VERSION = 1;
+
+  private static final byte OTHER = 0;
+  private static final byte SOURCE_PROJECT = 1;
+  private static final byte SOURCE_PACKAGE = 2;
+  private static final byte SOURCE_FILE = 3;
+  private static final byte SOURCE_CLASS = 4;
+  private static final byte SOURCE_METHOD = 5;
+  private static final byte SOURCE_FUNCTION = 6;
+
+  private static final byte ARG_STRING = 0;
+  private static final byte ARG_INTEGER = 1;
+  private static final byte ARG_LONG = 2;
+  private static final byte ARG_DOUBLE = 3;
+  private static final byte ARG_FLOAT = 4;
+  private static final byte ARG_SHORT = 5;
+  private static final byte ARG_BYTE = 6;
+  private static final byte ARG_BOOLEAN = 7;
+  private static final byte ARG_CHARACTER = 8;
+
+  private static final byte SUPPRESS_WARNINGS = 1;
+  private static final byte BYPASS_EXCLUSION = 1;
+  private static final byte HAS_LINE = 2;
+  private static final byte HAS_COST = 4;
+
+  private SourceProjectSnapshot() {
+  }
+
+  /**
+   * Writes the snapshot of the project, with the measures of the given metrics.
+   */
+  public static void write(SourceProject project, File file, MetricDef... metrics) throws IOException {
+    new Writer(metrics).write(project, file);
+  }
+
+  /**
+   * Reads the snapshot of a project.
+   *
+   * @param metrics metrics of the measures to restore, measures of other metrics are ignored
+   * @param checks checks referenced by the restored check messages, messages of other checks have no check
+   */
+  public static SourceProject read(File file, Collection<MetricDef> metrics, Collection<?> checks) throws IOException {
+    MappedByteBuffer buffer;
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+    }
+    try {
+      return new Reader(buffer, metrics, checks).read();
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException("Corrupted snapshot: " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private static byte typeOf(SourceCode sourceCode) {
+    Class<?> type = sourceCode.getClass();
+    if (type == SourceProject.class) {
+      return SOURCE_PROJECT;
+    } else if (type == SourcePackage.class) {
+      return SOURCE_PACKAGE;
+    } else if (type == SourceFile.class) {
+      return SOURCE_FILE;
+    } else if (type == SourceClass.class) {
+      return SOURCE_CLASS;
+    } else if (type == SourceMethod.class) {
+      return SOURCE_METHOD;
+    } else if (type == SourceFunction.class) {
+      return SOURCE_FUNCTION;
+    }
+    return OTHER;
+  }
+
+  private static final class Writer {
+
+    private final MetricDef[] metrics;
+    private final Map<String, Integer> strings = Maps.newLinkedHashMap();
+    private final Map<Object, Integer> ruleKeys = Maps.newIdentityHashMap();
+    private final List<SourceCode> nodes = Lists.newArrayList();
+    private final Map<SourceCode, Integer> nodeIndexes = Maps.newIdentityHashMap();
+
+    Writer(MetricDef[] metrics) {
+      List<MetricDef> stored = Lists.newArrayList();
+      for (MetricDef metric : metrics) {
+        if (!metric.isCalculatedMetric()) {
+          stored.add(metric);
+        }
+      }
+      this.metrics = stored.toArray(new MetricDef[stored.size()]);
+    }
+
+    void write(SourceProject project, File file) throws IOException {
+      for (MetricDef metric : metrics) {
+        string(metric.getName());
+      }
+      collect(project);
+
+      try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(strings.size());
+        for (String string : strings.keySet()) {
+          byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+          output.writeInt(bytes.length);
+          output.write(bytes);
+        }
+        output.writeInt(metrics.length);
+        for (MetricDef metric : metrics) {
+          output.writeInt(strings.get(metric.getName()));
+        }
+        output.writeInt(nodes.size());
+        for (SourceCode node : nodes) {
+          writeNode(output, node);
+        }
+      }
+    }
+
+    private void collect(SourceCode sourceCode) {
+      nodeIndexes.put(sourceCode, nodes.size());
+      nodes.add(sourceCode);
+      string(keySuffix(sourceCode));
+      string(sourceCode.getName());
+      if (typeOf(sourceCode) == OTHER) {
+        string(sourceCode.getClass().getName());
+      }
+      if (sourceCode.hasCheckMessages()) {
+        for (CheckMessage message : sourceCode.getCheckMessages()) {
+          string(message.getDefaultMessage());
+          if (message.getCheck() != null && !ruleKeys.containsKey(message.getCheck())) {
+            ruleKeys.put(message.getCheck(), string(message.getRuleKey()));
+          }
+          for (Object argument : message.getMessageArguments()) {
+            if (argumentType(argument) == ARG_STRING) {
+              string(String.valueOf(argument));
+            }
+          }
+        }
+      }
+      if (sourceCode.hasChildren()) {
+        for (SourceCode child : sourceCode.getChildren()) {
+          collect(child);
+        }
+      }
+    }
+
+    /**
+     * Keys of children usually start with the key of their parent, so only the remaining part is stored,
+     * which also makes it shared by many nodes (e.g. "#method()").
+     */
+    private static int sharedKeyPrefix(SourceCode sourceCode) {
+      if (sourceCode.getParent() == null) {
+        return 0;
+      }
+      String key = sourceCode.getKey();
+      String parentKey = sourceCode.getParent().getKey();
+      int max = Math.min(key.length(), parentKey.length());
+      int length = 0;
+      while (length < max && key.charAt(length) == parentKey.charAt(length)) {
+        length++;
+      }
+      return length;
+    }
+
+    private static String keySuffix(SourceCode sourceCode) {
+      return sourceCode.getKey().substring(sharedKeyPrefix(sourceCode));
+    }
+
+    private int string(@Nullable String string) {
+      if (string == null) {
+        return -1;
+      }
+      Integer id = strings.get(string);
+      if (id == null) {
+        id = strings.size();
+        strings.put(string, id);
+      }
+      return id;
+    }
+
+    private void writeNode(DataOutputStream output, SourceCode node) throws IOException {
+      byte type = typeOf(node);
+      output.writeByte(type);
+      if (type == OTHER) {
+        output.writeInt(strings.get(node.getClass().getName()));
+      }
+      output.writeInt(node.getParent() == null ? -1 : nodeIndexes.get(node.getParent()));
+      int sharedKeyPrefix = sharedKeyPrefix(node);
+      output.writeInt(sharedKeyPrefix);
+      output.writeInt(strings.get(node.getKey().substring(sharedKeyPrefix)));
+      output.writeInt(string(node.getName()));
+      output.writeInt(node.getStartAtLine());
+      output.writeInt(node.getEndAtLine());
+      output.writeByte(isSuppressWarnings(node) ? SUPPRESS_WARNINGS : 0);
+
+      int measureCount = 0;
+      for (MetricDef metric : metrics) {
+        if (node.getDouble(metric) != 0) {
+          measureCount++;
+        }
+      }
+      output.writeInt(measureCount);
+      for (int slot = 0; slot < metrics.length; slot++) {
+        double value = node.getDouble(metrics[slot]);
+        if (value != 0) {
+          output.writeInt(slot);
+          output.writeDouble(value);
+        }
+      }
+
+      writeMessages(output, node);
+
+      if (type == SOURCE_FILE) {
+        SourceFile sourceFile = (SourceFile) node;
+        output.writeInt(sourceFile.getNoSonarTagLines().size());
+        for (Integer line : sourceFile.getNoSonarTagLines()) {
+          output.writeInt(line);
+        }
+      }
+    }
+
+    private static boolean isSuppressWarnings(SourceCode node) {
+      return (node instanceof SourceClass && ((SourceClass) node).isSuppressWarnings())
+        || (node instanceof SourceMethod && ((SourceMethod) node).isSuppressWarnings());
+    }
+
+    private void writeMessages(DataOutputStream output, SourceCode node) throws IOException {
+      if (!node.hasCheckMessages()) {
+        output.writeInt(0);
+        return;
+      }
+      output.writeInt(node.getCheckMessages().size());
+      for (CheckMessage message : node.getCheckMessages()) {
+        output.writeInt(message.getCheck() == null ? -1 : ruleKeys.get(message.getCheck()));
+        output.writeInt(string(message.getDefaultMessage()));
+        byte flags = message.isBypassExclusion() ? BYPASS_EXCLUSION : 0;
+        if (message.getLine() != null) {
+          flags |= HAS_LINE;
+        }
+        if (message.getCost() != null) {
+          flags |= HAS_COST;
+        }
+        output.writeByte(flags);
+        if (message.getLine() != null) {
+          output.writeInt(message.getLine());
+        }
+        if (message.getCost() != null) {
+          output.writeDouble(message.getCost());
+        }
+        Object[] arguments = message.getMessageArguments();
+        output.writeInt(arguments.length);
+        for (Object argument : arguments) {
+          writeArgument(output, argument);
+        }
+      }
+    }
+
+    private void writeArgument(DataOutputStream output, @Nullable Object argument) throws IOException {
+      byte type = argumentType(argument);
+      output.writeByte(type);
+      switch (type) {
+        case ARG_INTEGER:
+          output.writeInt((Integer) argument);
+          break;
+        case ARG_LONG:
+          output.writeLong((Long) argument);
+          break;
+        case ARG_DOUBLE:
+          output.writeDouble((Double) argument);
+          break;
+        case ARG_FLOAT:
+          output.writeFloat((Float) argument);
+          break;
+        case ARG_SHORT:
+          output.writeShort((Short) argument);
+          break;
+        case ARG_BYTE:
+          output.writeByte((Byte) argument);
+          break;
+        case ARG_BOOLEAN:
+          output.writeBoolean((Boolean) argument);
+          break;
+        case ARG_CHARACTER:
+          output.writeChar((Character) argument);
+          break;
+        default:
+          output.writeInt(strings.get(String.valueOf(argument)));
+          break;
+      }
+    }
+
+    private static byte argumentType(@Nullable Object argument) {
+      if (argument instanceof Integer) {
+        return ARG_INTEGER;
+      } else if (argument instanceof Long) {
+        return ARG_LONG;
+      } else if (argument instanceof Double) {
+        return ARG_DOUBLE;
+      } else if (argument instanceof Float) {
+        return ARG_FLOAT;
+      } else if (argument instanceof Short) {
+        return ARG_SHORT;
+      } else if (argument instanceof Byte) {
+        return ARG_BYTE;
+      } else if (argument instanceof Boolean) {
+        return ARG_BOOLEAN;
+      } else if (argument instanceof Character) {
+        return ARG_CHARACTER;
+      }
+      return ARG_STRING;
+    }
+
+  }
+
+  private static final class Reader {
+
+    private final ByteBuffer buffer;
+    private final Map<String, MetricDef> metricsByName = Maps.newHashMap();
+    private final Map<String, Object> checksByRuleKey = Maps.newHashMap();
+    private String[] strings;
+    private MetricDef[] metrics;
+
+    Reader(ByteBuffer buffer, Collection<MetricDef> metrics, Collection<?> checks) {
+      this.buffer = buffer;
+      for (MetricDef metric : metrics) {
+        metricsByName.put(metric.getName(), metric);
+      }
+      for (Object check : checks) {
+        checksByRuleKey.put(CheckMessage.ruleKey(check), check);
+      }
+    }
+
+    SourceProject read() throws IOException {
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not a snapshot");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported snapshot version: " + version);
+      }
+      strings = new String[buffer.getInt()];
+      for (int i = 0; i < strings.length; i++) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      metrics = new MetricDef[buffer.getInt()];
+      for (int i = 0; i < metrics.length; i++) {
+        metrics[i] = metricsByName.get(strings[buffer.getInt()]);
+      }
+      SourceCode[] nodes = new SourceCode[buffer.getInt()];
+      for (int i = 0; i < nodes.length; i++) {
+        nodes[i] = readNode(nodes);
+      }
+      if (nodes.length == 0 || !(nodes[0] instanceof SourceProject)) {
+        throw new IOException("Snapshot does not contain a project");
+      }
+      return (SourceProject) nodes[0];
+    }
+
+    private SourceCode readNode(SourceCode[] nodes) throws IOException {
+      byte type = buffer.get();
+      String className = type == OTHER ? strings[buffer.getInt()] : null;
+      int parent = buffer.getInt();
+      int sharedKeyPrefix = buffer.getInt();
+      String keySuffix = strings[buffer.getInt()];
+      String key = sharedKeyPrefix == 0 ? keySuffix : (nodes[parent].getKey().substring(0, sharedKeyPrefix) + keySuffix);
+      String name = string(buffer.getInt());
+      int startAtLine = buffer.getInt();
+      int endAtLine = buffer.getInt();
+      boolean suppressWarnings = buffer.get() == SUPPRESS_WARNINGS;
+
+      SourceCode node = newSourceCode(type, className, key, name, suppressWarnings);
+      node.setStartAtLine(startAtLine);
+      node.setEndAtLine(endAtLine);
+      if (parent != -1) {
+        nodes[parent].addChild(node);
+      }
+
+      int measureCount = buffer.getInt();
+      for (int i = 0; i < measureCount; i++) {
+        MetricDef metric = metrics[buffer.getInt()];
+        double value = buffer.getDouble();
+        if (metric != null) {
+          node.setMeasure(metric, value);
+        }
+      }
+
+      readMessages(node);
+
+      if (type == SOURCE_FILE) {
+        SourceFile sourceFile = (SourceFile) node;
+        int lineCount = buffer.getInt();
+        for (int i = 0; i < lineCount; i++) {
+          sourceFile.addNoSonarTagLine(buffer.getInt());
+        }
+      }
+      return node;
+    }
+
+    private void readMessages(SourceCode node) {
+      int messageCount = buffer.getInt();
+      for (int i = 0; i < messageCount; i++) {
+        int ruleKey = buffer.getInt();
+        String defaultMessage = string(buffer.getInt());
+        byte flags = buffer.get();
+        Integer line = (flags & HAS_LINE) != 0 ? buffer.getInt() : null;
+        Double cost = (flags & HAS_COST) != 0 ? buffer.getDouble() : null;
+        Object[] arguments = new Object[buffer.getInt()];
+        for (int j = 0; j < arguments.length; j++) {
+          arguments[j] = readArgument();
+        }
+        CheckMessage message = new CheckMessage(ruleKey == -1 ? null : checksByRuleKey.get(strings[ruleKey]), defaultMessage, arguments);
+        if (line != null) {
+          message.setLine(line);
+        }
+        if (cost != null) {
+          message.setCost(cost);
+        }
+        if ((flags & BYPASS_EXCLUSION) != 0) {
+          message.setBypassExclusion(true);
+        }
+        node.log(message);
+      }
+    }
+
+    private Object readArgument() {
+      byte type = buffer.get();
+      switch (type) {
+        case ARG_INTEGER:
+          return buffer.getInt();
+        case ARG_LONG:
+          return buffer.getLong();
+        case ARG_DOUBLE:
+          return buffer.getDouble();
+        case ARG_FLOAT:
+          return buffer.getFloat();
+        case ARG_SHORT:
+          return buffer.getShort();
+        case ARG_BYTE:
+          return buffer.get();
+        case ARG_BOOLEAN:
+          return buffer.get() != 0;
+        case ARG_CHARACTER:
+          return buffer.getChar();
+        default:
+          return strings[buffer.getInt()];
+      }
+    }
+
+    @Nullable
+    private String string(int id) {
+      return id == -1 ? null : strings[id];
+    }
+
+    private static SourceCode newSourceCode(byte type, @Nullable String className, String key, @Nullable String name, boolean suppressWarnings)
+      throws IOException {
+      switch (type) {
+        case SOURCE_PROJECT:
+          return new SourceProject(key);
+        case SOURCE_PACKAGE:
+          return new SourcePackage(key);
+        case SOURCE_FILE:
+          return name == null ? new SourceFile(key) : new SourceFile(key, name);
+        case SOURCE_CLASS:
+          SourceClass sourceClass = new SourceClass(key, name);
+          sourceClass.setSuppressWarnings(suppressWarnings);
+          return sourceClass;
+        case SOURCE_METHOD:
+          SourceMethod sourceMethod = new SourceMethod(key, name);
+          sourceMethod.setSuppressWarnings(suppressWarnings);
+          return sourceMethod;
+        case SOURCE_FUNCTION:
+          return new SourceFunction(key, name);
+        case OTHER:
+          return newOtherSourceCode(className, key, name);
+        default:
+          throw new IOException("Unknown source code type: " + type);
+      }
+    }
+
+    /**
+     * Source code of other types is created with their (key, name) constructor if any, or else with their (key) one.
+     */
+    private static SourceCode newOtherSourceCode(String className, String key, @Nullable String name) throws IOException {
+      try {
+        // the class is not initialized before being known to be a source code, as its name comes from the snapshot
+        Class<?> rawType = Class.forName(className, false, SourceCode.class.getClassLoader());
+        if (!SourceCode.class.isAssignableFrom(rawType)) {
+          throw new IOException("Not a source code type: " + className);
+        }
+        Class<? extends SourceCode> type = rawType.asSubclass(SourceCode.class);
+        try {
+          Constructor<? extends SourceCode> constructor = type.getConstructor(String.class, String.class);
+          return constructor.newInstance(key, name);
+        } catch (NoSuchMethodException e) {
+          return type.getConstructor(String.class).newInstance(key);
+        }
+      } catch (ReflectiveOperationException e) {
+        throw new IOException("Unable to create source code of type " + className, e);
+      }
+    }
+
+  }
+
+}
@@ -23,16 +23,23 @@ import com.google.common.base.Strings;
 import com.sonar.sslr.api.AstAndTokenVisitor;
 import com.sonar.sslr.api.Grammar;
 import com.sonar.sslr.api.Token;
-import com.sonar.sslr.api.Trivia;
 import org.sonar.api.utils.SonarException;
+import org.sonar.squidbridge.Comment;
+import org.sonar.squidbridge.CommentRegexEngine;
+import org.sonar.squidbridge.CommentVisitor;
+import org.sonar.squidbridge.CommentVisitorBridge;
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
 
 import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-public abstract class AbstractCommentRegularExpressionCheck<G extends Grammar> extends SquidCheck<G> implements AstAndTokenVisitor {
+public abstract class AbstractCommentRegularExpressionCheck<G extends Grammar> extends SquidCheck<G> implements CommentVisitor, AstAndTokenVisitor {
 
+  private final CommentVisitorBridge commentVisitorBridge = new CommentVisitorBridge(this);
   private Pattern pattern = null;
+  private CommentRegexEngine engine = null;
+  private String engineRegularExpression = null;
 
   // See SONAR-3164
   public abstract String getRegularExpression();
@@ -47,7 +54,13 @@ public abstract class AbstractCommentRegularExpressionCheck<G extends Grammar> e
 
     if (!Strings.isNullOrEmpty(regularExpression)) {
       try {
-        pattern = Pattern.compile(regularExpression, Pattern.DOTALL);
+        if (getContext() instanceof SquidAstVisitorContextImpl) {
+          engine = ((SquidAstVisitorContextImpl<?>) getContext()).getCommentRegexEngine();
+          engine.register(regularExpression);
+          engineRegularExpression = regularExpression;
+        } else {
+          pattern = Pattern.compile(regularExpression, Pattern.DOTALL);
+        }
       } catch (RuntimeException e) {
         throw new SonarException("Unable to compile regular expression: " + regularExpression, e);
       }
@@ -55,14 +68,24 @@ public abstract class AbstractCommentRegularExpressionCheck<G extends Grammar> e
   }
 
   @Override
-  public void visitToken(Token token) {
-    if (pattern != null) {
-      for (Trivia trivia : token.getTrivia()) {
-        if (trivia.isComment() && pattern.matcher(trivia.getToken().getOriginalValue()).matches()) {
-          getContext().createLineViolation(this, getMessage(), trivia.getToken());
-        }
-      }
+  public void visitComment(Comment comment) {
+    if ((pattern != null || engine != null) && matches(comment.getToken())) {
+      getContext().createLineViolation(this, getMessage(), comment.getToken());
     }
   }
 
+  /**
+   * @deprecated since comments are passed to {@link #visitComment(Comment)}, which is what subclasses should override.
+   *             Only passes the comments of the token to it when not walked by {@link org.sonar.squidbridge.AstScanner}.
+   */
+  @Deprecated
+  @Override
+  public void visitToken(Token token) {
+    commentVisitorBridge.visitToken(token, getContext());
+  }
+
+  private boolean matches(Token comment) {
+    return engine != null ? engine.matches(engineRegularExpression, comment) : pattern.matcher(comment.getOriginalValue()).matches();
+  }
+
 }
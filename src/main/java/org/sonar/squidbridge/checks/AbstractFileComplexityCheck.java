@@ -19,6 +19,7 @@
  */
 package org.sonar.squidbridge.checks;
 
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
 import org.sonar.squidbridge.api.SourceFile;
 
 import org.sonar.squidbridge.measures.MetricDef;
@@ -38,12 +39,20 @@ public abstract class AbstractFileComplexityCheck<G extends Grammar> extends Squ
     if (getMaximumFileComplexity() <= 0) {
       throw new SonarException("The complexity threshold must be set to a value greater than 0, but given: " + getMaximumFileComplexity());
     }
+    if (getContext() instanceof SquidAstVisitorContextImpl) {
+      ((SquidAstVisitorContextImpl<?>) getContext()).aggregateFileMeasure(getComplexityMetric());
+    }
   }
 
   @Override
   public void leaveFile(AstNode astNode) {
-    SourceFile sourceFile = (SourceFile) getContext().peekSourceCode();
-    int fileComplexity = ChecksHelper.getRecursiveMeasureInt(sourceFile, getComplexityMetric());
+    int fileComplexity;
+    if (getContext() instanceof SquidAstVisitorContextImpl) {
+      fileComplexity = ((SquidAstVisitorContextImpl<?>) getContext()).getAggregatedFileMeasure(getComplexityMetric());
+    } else {
+      SourceFile sourceFile = (SourceFile) getContext().peekSourceCode();
+      fileComplexity = ChecksHelper.getRecursiveMeasureInt(sourceFile, getComplexityMetric());
+    }
     if (fileComplexity > getMaximumFileComplexity()) {
       getContext().createFileViolation(this, "The file is too complex ({0} while maximum allowed is set to {1}).", fileComplexity, getMaximumFileComplexity());
     }
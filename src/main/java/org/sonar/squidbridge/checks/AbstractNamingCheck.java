@@ -23,15 +23,20 @@ import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.AstNodeType;
 import com.sonar.sslr.api.Grammar;
 import org.sonar.api.utils.SonarException;
-
-import java.util.regex.Pattern;
+import org.sonar.squidbridge.NameVerdictCache;
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public abstract class AbstractNamingCheck<G extends Grammar> extends SquidCheck<G> {
 
-  private Pattern pattern;
+  /**
+   * Default number of name verdicts cached for a regular expression.
+   */
+  public static final int DEFAULT_NAME_CACHE_SIZE = 10000;
+
+  private NameVerdictCache nameVerdicts;
 
   public abstract AstNodeType[] getRules();
 
@@ -43,6 +48,14 @@ public abstract class AbstractNamingCheck<G extends Grammar> extends SquidCheck<
 
   public abstract boolean isExcluded(AstNode astNode);
 
+  /**
+   * Verdicts on names are cached and shared between the naming checks of a scanner using the same regular expression
+   * and cache size. Override to change the cache size, 0 disables caching.
+   */
+  protected int getNameCacheSize() {
+    return DEFAULT_NAME_CACHE_SIZE;
+  }
+
   @Override
   public void init() {
     AstNodeType[] rules = getRules();
@@ -55,7 +68,11 @@ public abstract class AbstractNamingCheck<G extends Grammar> extends SquidCheck<
     checkNotNull(regexp, "getRegexp() must not return null");
 
     try {
-      this.pattern = Pattern.compile(regexp);
+      if (getContext() instanceof SquidAstVisitorContextImpl) {
+        this.nameVerdicts = ((SquidAstVisitorContextImpl<?>) getContext()).getNameVerdictCache(regexp, getNameCacheSize());
+      } else {
+        this.nameVerdicts = new NameVerdictCache(regexp, getNameCacheSize());
+      }
     } catch (Exception e) {
       throw new SonarException("Unable to compile regular expression: " + regexp, e);
     }
@@ -67,10 +84,25 @@ public abstract class AbstractNamingCheck<G extends Grammar> extends SquidCheck<
       String name = getName(astNode);
       checkNotNull(name, "getName() must not return null");
 
-      if (!pattern.matcher(name).matches()) {
+      if (!nameVerdicts.matches(name)) {
         getContext().createLineViolation(this, getMessage(name), astNode);
       }
     }
   }
 
+  /**
+   * @return number of names whose verdict was found in the cache, for all the checks of the scanner sharing it
+   */
+  public long getNameCacheHits() {
+    return nameVerdicts == null ? 0 : nameVerdicts.getHits();
+  }
+
+  /**
+   * @return number of names which had to be matched against the regular expression, for all the checks of the scanner
+   *         sharing the cache
+   */
+  public long getNameCacheMisses() {
+    return nameVerdicts == null ? 0 : nameVerdicts.getMisses();
+  }
+
 }
@@ -19,31 +19,54 @@
  */
 package org.sonar.squidbridge.checks;
 
+import com.google.common.collect.ImmutableList;
 import com.sonar.sslr.api.AstAndTokenVisitor;
 import com.sonar.sslr.api.Grammar;
 import com.sonar.sslr.api.Token;
-import com.sonar.sslr.api.Trivia;
+import org.sonar.squidbridge.Comment;
+import org.sonar.squidbridge.CommentVisitor;
+import org.sonar.squidbridge.CommentVisitorBridge;
 
+import java.util.List;
 import java.util.Set;
 
-public abstract class AbstractNestedCommentsCheck<G extends Grammar> extends SquidCheck<G> implements AstAndTokenVisitor {
+public abstract class AbstractNestedCommentsCheck<G extends Grammar> extends SquidCheck<G> implements CommentVisitor, AstAndTokenVisitor {
 
+  private final CommentVisitorBridge commentVisitorBridge = new CommentVisitorBridge(this);
+  private List<String> commentStartTags;
+  private MultiStringMatcher commentStartTagsMatcher;
+
+  /**
+   * Called once, from {@link #init()}: when a comment contains several tags, the first one in iteration order is reported.
+   */
   public abstract Set<String> getCommentStartTags();
 
   @Override
-  public void visitToken(Token token) {
-    for (Trivia trivia : token.getTrivia()) {
-      if (trivia.isComment()) {
-        String contents = getContext().getCommentAnalyser().getContents(trivia.getToken().getOriginalValue());
-
-        for (String commentStartTag : getCommentStartTags()) {
-          if (contents.contains(commentStartTag)) {
-            getContext().createLineViolation(this, "This comments contains the nested comment start tag \"{0}\"", trivia.getToken(), commentStartTag);
-            break;
-          }
-        }
-      }
+  public void init() {
+    commentStartTags = ImmutableList.copyOf(getCommentStartTags());
+    commentStartTagsMatcher = MultiStringMatcher.create(commentStartTags);
+  }
+
+  @Override
+  public void visitComment(Comment comment) {
+    if (commentStartTagsMatcher == null) {
+      // subclass overriding init() without calling super.init()
+      init();
     }
+    int index = commentStartTagsMatcher.firstMatchingIndex(comment.getContents());
+    if (index >= 0) {
+      getContext().createLineViolation(this, "This comments contains the nested comment start tag \"{0}\"", comment.getToken(), commentStartTags.get(index));
+    }
+  }
+
+  /**
+   * @deprecated since comments are passed to {@link #visitComment(Comment)}, which is what subclasses should override.
+   *             Only passes the comments of the token to it when not walked by {@link org.sonar.squidbridge.AstScanner}.
+   */
+  @Deprecated
+  @Override
+  public void visitToken(Token token) {
+    commentVisitorBridge.visitToken(token, getContext());
   }
 
 }
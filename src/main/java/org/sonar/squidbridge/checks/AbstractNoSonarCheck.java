@@ -22,30 +22,39 @@ package org.sonar.squidbridge.checks;
 import com.sonar.sslr.api.AstAndTokenVisitor;
 import com.sonar.sslr.api.Grammar;
 import com.sonar.sslr.api.Token;
-import com.sonar.sslr.api.Trivia;
+import org.sonar.squidbridge.Comment;
+import org.sonar.squidbridge.CommentVisitor;
+import org.sonar.squidbridge.CommentVisitorBridge;
 import org.sonar.squidbridge.api.CheckMessage;
 
-public abstract class AbstractNoSonarCheck<G extends Grammar> extends SquidCheck<G> implements AstAndTokenVisitor {
+public abstract class AbstractNoSonarCheck<G extends Grammar> extends SquidCheck<G> implements CommentVisitor, AstAndTokenVisitor {
+
+  private final CommentVisitorBridge commentVisitorBridge = new CommentVisitorBridge(this);
 
   @Override
-  public void visitToken(Token token) {
-    for (Trivia trivia : token.getTrivia()) {
-      if (trivia.isComment()) {
-        String[] commentLines = getContext().getCommentAnalyser().getContents(trivia.getToken().getOriginalValue()).split("(\r)?\n|\r", -1);
-        int line = trivia.getToken().getLine();
-
-        for (String commentLine : commentLines) {
-          if (commentLine.contains("NOSONAR")) {
-            CheckMessage violation = new CheckMessage((Object) this, "Is NOSONAR usage acceptable or does it hide a real quality flaw?");
-            violation.setLine(line);
-            violation.setBypassExclusion(true);
-            getContext().log(violation);
-          }
-
-          line++;
-        }
+  public void visitComment(Comment comment) {
+    int line = comment.getLine();
+
+    for (String commentLine : comment.getContentLines()) {
+      if (commentLine.contains("NOSONAR")) {
+        CheckMessage violation = new CheckMessage((Object) this, "Is NOSONAR usage acceptable or does it hide a real quality flaw?");
+        violation.setLine(line);
+        violation.setBypassExclusion(true);
+        getContext().log(violation);
       }
+
+      line++;
     }
   }
 
+  /**
+   * @deprecated since comments are passed to {@link #visitComment(Comment)}, which is what subclasses should override.
+   *             Only passes the comments of the token to it when not walked by {@link org.sonar.squidbridge.AstScanner}.
+   */
+  @Deprecated
+  @Override
+  public void visitToken(Token token) {
+    commentVisitorBridge.visitToken(token, getContext());
+  }
+
 }
@@ -19,16 +19,19 @@
  */
 package org.sonar.squidbridge.checks;
 
-import com.google.common.collect.Maps;
 import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.AstNodeType;
 import com.sonar.sslr.api.Grammar;
 
-import java.util.Map;
+import java.util.Arrays;
 
 public abstract class AbstractOneStatementPerLineCheck<G extends Grammar> extends SquidCheck<G> {
 
-  private final Map<Integer, Integer> statementsPerLine = Maps.newHashMap();
+  /**
+   * Number of statements indexed by line, reused across files.
+   */
+  private int[] statementsPerLine = new int[256];
+  private int lastLine = 0;
 
   public abstract AstNodeType getStatementRule();
 
@@ -41,7 +44,8 @@ public abstract class AbstractOneStatementPerLineCheck<G extends Grammar> extend
 
   @Override
   public void visitFile(AstNode astNode) {
-    statementsPerLine.clear();
+    Arrays.fill(statementsPerLine, 0, lastLine + 1, 0);
+    lastLine = 0;
   }
 
   @Override
@@ -49,20 +53,20 @@ public abstract class AbstractOneStatementPerLineCheck<G extends Grammar> extend
     if (!isExcluded(statementNode)) {
       int line = statementNode.getTokenLine();
 
-      if (!statementsPerLine.containsKey(line)) {
-        statementsPerLine.put(line, 0);
+      if (line >= statementsPerLine.length) {
+        statementsPerLine = Arrays.copyOf(statementsPerLine, Math.max(line + 1, statementsPerLine.length * 2));
       }
-
-      statementsPerLine.put(line, statementsPerLine.get(line) + 1);
+      statementsPerLine[line]++;
+      lastLine = Math.max(lastLine, line);
     }
   }
 
   @Override
   public void leaveFile(AstNode astNode) {
-    for (Map.Entry<Integer, Integer> statementsAtLine : statementsPerLine.entrySet()) {
-      if (statementsAtLine.getValue() > 1) {
-        getContext().createLineViolation(this, "At most one statement is allowed per line, but {0} statements were found on this line.", statementsAtLine.getKey(),
-          statementsAtLine.getValue());
+    for (int line = 0; line <= lastLine; line++) {
+      if (statementsPerLine[line] > 1) {
+        getContext().createLineViolation(this, "At most one statement is allowed per line, but {0} statements were found on this line.", line,
+          statementsPerLine[line]);
       }
     }
   }
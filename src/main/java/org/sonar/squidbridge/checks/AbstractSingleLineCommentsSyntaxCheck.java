@@ -24,24 +24,36 @@ import org.apache.commons.lang3.StringUtils;
 import com.sonar.sslr.api.AstAndTokenVisitor;
 import com.sonar.sslr.api.Grammar;
 import com.sonar.sslr.api.Token;
-import com.sonar.sslr.api.Trivia;
+import org.sonar.squidbridge.Comment;
+import org.sonar.squidbridge.CommentVisitor;
+import org.sonar.squidbridge.CommentVisitorBridge;
 
-public abstract class AbstractSingleLineCommentsSyntaxCheck<G extends Grammar> extends SquidCheck<G> implements AstAndTokenVisitor {
+public abstract class AbstractSingleLineCommentsSyntaxCheck<G extends Grammar> extends SquidCheck<G> implements CommentVisitor, AstAndTokenVisitor {
+
+  private final CommentVisitorBridge commentVisitorBridge = new CommentVisitorBridge(this);
 
   public abstract String getSingleLineCommentSyntaxPrefix();
 
   @Override
-  public void visitToken(Token token) {
-    for (Trivia trivia : token.getTrivia()) {
-      if (trivia.isComment() && trivia.getToken().getLine() < token.getLine()) {
-        String comment = trivia.getToken().getOriginalValue();
-
-        if (!comment.startsWith(getSingleLineCommentSyntaxPrefix()) && !StringUtils.containsAny(comment, "\r\n")) {
-          getContext().createLineViolation(this, "This single line comment should use the single line comment syntax \"{0}\"", trivia.getToken(),
-            getSingleLineCommentSyntaxPrefix());
-        }
+  public void visitComment(Comment comment) {
+    if (comment.getLine() < comment.getFollowingToken().getLine()) {
+      String value = comment.getToken().getOriginalValue();
+
+      if (!value.startsWith(getSingleLineCommentSyntaxPrefix()) && !StringUtils.containsAny(value, "\r\n")) {
+        getContext().createLineViolation(this, "This single line comment should use the single line comment syntax \"{0}\"", comment.getToken(),
+          getSingleLineCommentSyntaxPrefix());
       }
     }
   }
 
+  /**
+   * @deprecated since comments are passed to {@link #visitComment(Comment)}, which is what subclasses should override.
+   *             Only passes the comments of the token to it when not walked by {@link org.sonar.squidbridge.AstScanner}.
+   */
+  @Deprecated
+  @Override
+  public void visitToken(Token token) {
+    commentVisitorBridge.visitToken(token, getContext());
+  }
+
 }
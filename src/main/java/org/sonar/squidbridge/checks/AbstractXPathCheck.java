@@ -24,12 +24,16 @@ import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.Grammar;
 import com.sonar.sslr.xpath.api.AstNodeXPathQuery;
 import org.sonar.api.utils.SonarException;
+import org.sonar.squidbridge.SquidAstVisitorContextImpl;
+import org.sonar.squidbridge.XPathEngine;
 
 import java.util.List;
 
 public abstract class AbstractXPathCheck<G extends Grammar> extends SquidCheck<G> {
 
   private AstNodeXPathQuery<Object> query = null;
+  private XPathEngine engine = null;
+  private String engineQuery = null;
 
   // See SONAR-3164
   public abstract String getXPathQuery();
@@ -42,7 +46,13 @@ public abstract class AbstractXPathCheck<G extends Grammar> extends SquidCheck<G
     String xpath = getXPathQuery();
     if (!Strings.isNullOrEmpty(xpath)) {
       try {
-        query = AstNodeXPathQuery.create(getXPathQuery());
+        if (getContext() instanceof SquidAstVisitorContextImpl) {
+          engine = ((SquidAstVisitorContextImpl<?>) getContext()).getXPathEngine();
+          engine.register(xpath);
+          engineQuery = xpath;
+        } else {
+          query = AstNodeXPathQuery.create(xpath);
+        }
       } catch (RuntimeException e) {
         throw new SonarException("Unable to initialize the XPath engine, perhaps because of an invalid query: " + xpath, e);
       }
@@ -51,8 +61,8 @@ public abstract class AbstractXPathCheck<G extends Grammar> extends SquidCheck<G
 
   @Override
   public void visitFile(AstNode fileNode) {
-    if (query != null && fileNode != null) {
-      List<Object> objects = query.selectNodes(fileNode);
+    if ((query != null || engine != null) && fileNode != null) {
+      List<Object> objects = engine != null ? engine.selectNodes(engineQuery, fileNode) : query.selectNodes(fileNode);
 
       for (Object object : objects) {
         if (object instanceof AstNode) {
@@ -0,0 +1,157 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.checks;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Chars;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Aho-Corasick automaton finding which of several strings occur in a text, in a single pass over the text.
+ */
+final class MultiStringMatcher {
+
+  private static final int ROOT = 0;
+  private static final int NONE = -1;
+
+  /**
+   * Characters of the transitions leaving each state, sorted.
+   */
+  private final char[][] labels;
+  private final int[][] targets;
+  private final int[] fail;
+
+  /**
+   * Lowest index of the strings ending at each state, including through its failure links.
+   */
+  private final int[] firstMatch;
+
+  private MultiStringMatcher(char[][] labels, int[][] targets, int[] fail, int[] firstMatch) {
+    this.labels = labels;
+    this.targets = targets;
+    this.fail = fail;
+    this.firstMatch = firstMatch;
+  }
+
+  static MultiStringMatcher create(List<String> strings) {
+    List<SortedMap<Character, Integer>> transitions = Lists.newArrayList();
+    List<Integer> outputs = Lists.newArrayList();
+    transitions.add(Maps.<Character, Integer>newTreeMap());
+    outputs.add(NONE);
+
+    for (int index = 0; index < strings.size(); index++) {
+      String string = strings.get(index);
+      int state = ROOT;
+      for (int i = 0; i < string.length(); i++) {
+        Integer next = transitions.get(state).get(string.charAt(i));
+        if (next == null) {
+          next = transitions.size();
+          transitions.add(Maps.<Character, Integer>newTreeMap());
+          outputs.add(NONE);
+          transitions.get(state).put(string.charAt(i), next);
+        }
+        state = next;
+      }
+      if (outputs.get(state) == NONE) {
+        outputs.set(state, index);
+      }
+    }
+
+    int size = transitions.size();
+    char[][] labels = new char[size][];
+    int[][] targets = new int[size][];
+    int[] fail = new int[size];
+    int[] firstMatch = new int[size];
+    for (int state = 0; state < size; state++) {
+      labels[state] = Chars.toArray(transitions.get(state).keySet());
+      targets[state] = new int[labels[state].length];
+      int i = 0;
+      for (int target : transitions.get(state).values()) {
+        targets[state][i++] = target;
+      }
+    }
+
+    // breadth-first, so that the failure link of a state is computed before those of its children
+    firstMatch[ROOT] = outputs.get(ROOT);
+    Deque<Integer> queue = new ArrayDeque<Integer>();
+    queue.add(ROOT);
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      for (Map.Entry<Character, Integer> transition : transitions.get(state).entrySet()) {
+        int child = transition.getValue();
+        if (state == ROOT) {
+          fail[child] = ROOT;
+        } else {
+          int fallback = fail[state];
+          while (fallback != ROOT && next(labels, targets, fallback, transition.getKey()) == NONE) {
+            fallback = fail[fallback];
+          }
+          int next = next(labels, targets, fallback, transition.getKey());
+          fail[child] = next == NONE ? ROOT : next;
+        }
+        firstMatch[child] = min(outputs.get(child), firstMatch[fail[child]]);
+        queue.add(child);
+      }
+    }
+
+    return new MultiStringMatcher(labels, targets, fail, firstMatch);
+  }
+
+  /**
+   * @return the lowest index of the strings occurring in the text, or -1 if none does
+   */
+  int firstMatchingIndex(CharSequence text) {
+    int result = firstMatch[ROOT];
+    int state = ROOT;
+    for (int i = 0; i < text.length() && result != 0; i++) {
+      char c = text.charAt(i);
+      int next = next(labels, targets, state, c);
+      while (next == NONE && state != ROOT) {
+        state = fail[state];
+        next = next(labels, targets, state, c);
+      }
+      state = next == NONE ? ROOT : next;
+      result = min(result, firstMatch[state]);
+    }
+    return result;
+  }
+
+  private static int next(char[][] labels, int[][] targets, int state, char c) {
+    int i = Arrays.binarySearch(labels[state], c);
+    return i < 0 ? NONE : targets[state][i];
+  }
+
+  private static int min(int index, int otherIndex) {
+    if (index == NONE) {
+      return otherIndex;
+    } else if (otherIndex == NONE) {
+      return index;
+    }
+    return Math.min(index, otherIndex);
+  }
+
+}
@@ -22,94 +22,312 @@ package org.sonar.squidbridge.checks;
 import org.sonar.squidbridge.api.CheckMessage;
 
 import org.sonar.squidbridge.SquidAstVisitor;
+import com.google.common.base.Charsets;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.common.collect.TreeMultiset;
 import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.Grammar;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class ViolationCounterCheck<G extends Grammar> extends SquidAstVisitor<G> {
 
   private final ViolationCounter violationCounter;
   private final String projectsDirCanonicalPath;
 
+  /**
+   * Counts violations by file, rule and line. Counters are thread-safe, so that a single one can be shared by
+   * scanners running in parallel. Alternatively, each scanner can use its own counter, to be merged at the end.
+   */
   public static class ViolationCounter {
 
-    private final Map<String, Map<String, TreeMultiset<Integer>>> violationsByFileAndRule;
+    private static final String HEADER = "# violations v1";
+    private static final char SEPARATOR = '\t';
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Lines>> violationsByFileAndRule;
 
     public ViolationCounter() {
-      this.violationsByFileAndRule = new HashMap<String, Map<String, TreeMultiset<Integer>>>();
+      this.violationsByFileAndRule = new ConcurrentHashMap<String, ConcurrentMap<String, Lines>>();
     }
 
-    private ViolationCounter(Map<String, Map<String, TreeMultiset<Integer>>> violationsByFileAndRule) {
-      this.violationsByFileAndRule = violationsByFileAndRule;
+    public void increment(String fileRelativePath, String rule, int line) {
+      getOrCreateLines(fileRelativePath, rule).add(line);
     }
 
-    public void increment(String fileRelativePath, String rule, int line) {
-      if (!violationsByFileAndRule.containsKey(fileRelativePath)) {
-        violationsByFileAndRule.put(fileRelativePath, new HashMap<String, TreeMultiset<Integer>>());
+    /**
+     * Adds the violations of the other counter to this one.
+     */
+    public void merge(ViolationCounter other) {
+      for (Map.Entry<String, ConcurrentMap<String, Lines>> file : other.violationsByFileAndRule.entrySet()) {
+        for (Map.Entry<String, Lines> rule : file.getValue().entrySet()) {
+          getOrCreateLines(file.getKey(), rule.getKey()).addAll(rule.getValue().toSortedArray());
+        }
       }
-      Map<String, TreeMultiset<Integer>> violationsByRule = violationsByFileAndRule.get(fileRelativePath);
+    }
 
-      if (!violationsByRule.containsKey(rule)) {
-        violationsByRule.put(rule, TreeMultiset.<Integer>create());
+    private Lines getOrCreateLines(String fileRelativePath, String rule) {
+      ConcurrentMap<String, Lines> violationsByRule = violationsByFileAndRule.get(fileRelativePath);
+      if (violationsByRule == null) {
+        violationsByRule = new ConcurrentHashMap<String, Lines>();
+        ConcurrentMap<String, Lines> previous = violationsByFileAndRule.putIfAbsent(fileRelativePath, violationsByRule);
+        if (previous != null) {
+          violationsByRule = previous;
+        }
       }
-      TreeMultiset<Integer> violations = violationsByRule.get(rule);
 
-      violations.add(line);
+      Lines violations = violationsByRule.get(rule);
+      if (violations == null) {
+        violations = new Lines();
+        Lines previous = violationsByRule.putIfAbsent(rule, violations);
+        if (previous != null) {
+          violations = previous;
+        }
+      }
+      return violations;
     }
 
+    /**
+     * Saves the violations in a text format, sorted by file and rule, made of one line per file and rule:
+     * the file, the rule and the comma separated lines of the violations, separated by tabulations.
+     */
     public void saveToFile(String destinationFilePath) {
-      FileOutputStream fos = null;
-      ObjectOutputStream oos = null;
+      Writer writer = null;
       try {
-        fos = new FileOutputStream(destinationFilePath);
-        oos = new ObjectOutputStream(fos);
-        oos.writeObject(this.violationsByFileAndRule);
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(destinationFilePath), Charsets.UTF_8));
+        writer.write(HEADER);
+        writer.write('\n');
+        for (String file : sortedKeys(violationsByFileAndRule)) {
+          Map<String, Lines> violationsByRule = violationsByFileAndRule.get(file);
+          for (String rule : sortedKeys(violationsByRule)) {
+            writer.write(file);
+            writer.write(SEPARATOR);
+            writer.write(rule);
+            writer.write(SEPARATOR);
+            int[] lines = violationsByRule.get(rule).toSortedArray();
+            for (int i = 0; i < lines.length; i++) {
+              if (i > 0) {
+                writer.write(',');
+              }
+              writer.write(Integer.toString(lines[i]));
+            }
+            writer.write('\n');
+          }
+        }
       } catch (Exception e) {
         throw Throwables.propagate(e);
       } finally {
-        IOUtils.closeQuietly(fos);
-        IOUtils.closeQuietly(oos);
+        IOUtils.closeQuietly(writer);
       }
     }
 
+    /**
+     * Loads violations saved by {@link #saveToFile(String)}, or by former versions which relied on Java serialization.
+     */
     public static ViolationCounter loadFromFile(File sourceFile) {
       if (!sourceFile.exists() || sourceFile.length() == 0) {
         return new ViolationCounter();
       } else {
-        FileInputStream fis = null;
-        ObjectInputStream ois = null;
+        InputStream input = null;
         try {
-          fis = new FileInputStream(sourceFile);
-          ois = new ObjectInputStream(fis);
-          return new ViolationCounter((Map<String, Map<String, TreeMultiset<Integer>>>) ois.readObject());
+          input = new BufferedInputStream(new FileInputStream(sourceFile));
+          input.mark(2);
+          boolean serialized = input.read() == 0xAC && input.read() == 0xED;
+          input.reset();
+          return serialized ? loadSerialized(input) : load(new BufferedReader(new InputStreamReader(input, Charsets.UTF_8)));
         } catch (Exception e) {
           throw Throwables.propagate(e);
         } finally {
-          IOUtils.closeQuietly(fis);
-          IOUtils.closeQuietly(ois);
+          IOUtils.closeQuietly(input);
+        }
+      }
+    }
+
+    private static ViolationCounter load(BufferedReader reader) throws IOException {
+      ViolationCounter counter = new ViolationCounter();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.charAt(0) == '#') {
+          continue;
+        }
+        int ruleStart = line.indexOf(SEPARATOR) + 1;
+        int linesStart = line.indexOf(SEPARATOR, ruleStart) + 1;
+        if (ruleStart == 0 || linesStart == 0) {
+          throw new IOException("Invalid violations line: " + line);
+        }
+        String file = line.substring(0, ruleStart - 1);
+        String rule = line.substring(ruleStart, linesStart - 1);
+        int start = linesStart;
+        while (start < line.length()) {
+          int end = line.indexOf(',', start);
+          if (end == -1) {
+            end = line.length();
+          }
+          counter.increment(file, rule, Integer.parseInt(line.substring(start, end)));
+          start = end + 1;
         }
       }
+      return counter;
     }
+
+    @SuppressWarnings("unchecked")
+    private static ViolationCounter loadSerialized(InputStream input) throws IOException, ClassNotFoundException {
+      Map<String, Map<String, TreeMultiset<Integer>>> serialized = (Map<String, Map<String, TreeMultiset<Integer>>>) new ObjectInputStream(input)
+        .readObject();
+      ViolationCounter counter = new ViolationCounter();
+      for (Map.Entry<String, Map<String, TreeMultiset<Integer>>> file : serialized.entrySet()) {
+        for (Map.Entry<String, TreeMultiset<Integer>> rule : file.getValue().entrySet()) {
+          for (Integer line : rule.getValue()) {
+            counter.increment(file.getKey(), rule.getKey(), line);
+          }
+        }
+      }
+      return counter;
+    }
+
+    private Lines getLines(String file, String rule) {
+      Map<String, Lines> violationsByRule = violationsByFileAndRule.get(file);
+      Lines lines = violationsByRule == null ? null : violationsByRule.get(rule);
+      return lines == null ? Lines.EMPTY : lines;
+    }
+
+    private Map<String, Integer> countViolationsByRule() {
+      Map<String, Integer> result = new HashMap<String, Integer>();
+      for (ConcurrentMap<String, Lines> violationsByRule : violationsByFileAndRule.values()) {
+        for (Map.Entry<String, Lines> entry : violationsByRule.entrySet()) {
+          Integer count = result.get(entry.getKey());
+          result.put(entry.getKey(), (count == null ? 0 : count) + entry.getValue().size());
+        }
+      }
+      return result;
+    }
+
+  }
+
+  /**
+   * Lines of the violations of a rule in a file.
+   */
+  private static final class Lines {
+
+    private static final Lines EMPTY = new Lines();
+
+    private int[] values = new int[4];
+    private int size;
+    private boolean sorted = true;
+
+    private synchronized void add(int line) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      if (size > 0 && values[size - 1] > line) {
+        sorted = false;
+      }
+      values[size++] = line;
+    }
+
+    private synchronized void addAll(int[] lines) {
+      for (int line : lines) {
+        add(line);
+      }
+    }
+
+    private synchronized int size() {
+      return size;
+    }
+
+    private synchronized int[] toSortedArray() {
+      if (!sorted) {
+        Arrays.sort(values, 0, size);
+        sorted = true;
+      }
+      return Arrays.copyOf(values, size);
+    }
+
+  }
+
+  /**
+   * @return the sorted lines of a minus the sorted lines of b, taking multiplicity into account
+   */
+  private static String difference(int[] a, int[] b) {
+    StringBuilder result = new StringBuilder();
+    int j = 0;
+    for (int i = 0; i < a.length; i++) {
+      while (j < b.length && b[j] < a[i]) {
+        j++;
+      }
+      if (j < b.length && b[j] == a[i]) {
+        j++;
+      } else {
+        if (result.length() > 0) {
+          result.append(',');
+        }
+        result.append(a[i]);
+      }
+    }
+    return result.toString();
+  }
+
+  private static List<String> sortedKeys(Map<String, ?> map) {
+    List<String> keys = new ArrayList<String>(map.keySet());
+    Collections.sort(keys);
+    return keys;
+  }
+
+  /**
+   * @return the sorted union of the keys of both maps
+   */
+  private static List<String> mergedKeys(Map<String, ?> first, Map<String, ?> second) {
+    List<String> firstKeys = sortedKeys(first);
+    List<String> secondKeys = sortedKeys(second);
+    List<String> result = new ArrayList<String>(firstKeys.size() + secondKeys.size());
+    int i = 0;
+    int j = 0;
+    while (i < firstKeys.size() || j < secondKeys.size()) {
+      int comparison;
+      if (i == firstKeys.size()) {
+        comparison = 1;
+      } else if (j == secondKeys.size()) {
+        comparison = -1;
+      } else {
+        comparison = firstKeys.get(i).compareTo(secondKeys.get(j));
+      }
+      if (comparison <= 0) {
+        result.add(firstKeys.get(i++));
+        if (comparison == 0) {
+          j++;
+        }
+      } else {
+        result.add(secondKeys.get(j++));
+      }
+    }
+    return result;
   }
 
   public static class ViolationDifferenceAnalyzer {
 
+    private static final Map<String, Lines> NO_VIOLATIONS = Collections.emptyMap();
+
     private final ViolationCounter expected;
     private final ViolationCounter actual;
     private boolean hasDifferences = false;
@@ -151,22 +369,9 @@ public class ViolationCounterCheck<G extends Grammar> extends SquidAstVisitor<G>
     private void printDifferencesByFile() {
       println("Differences by file:");
 
-      Set<Map.Entry<String, String>> handledFilesRules = Sets.newHashSet();
-
-      for (String file : expected.violationsByFileAndRule.keySet()) {
-        boolean shouldPrintHeader = true;
-        for (String rule : expected.violationsByFileAndRule.get(file).keySet()) {
-          handledFilesRules.add(Maps.immutableEntry(file, rule));
-          shouldPrintHeader = printDifferencesByFileAndRule(shouldPrintHeader, file, rule);
-        }
-      }
-
-      for (String file : actual.violationsByFileAndRule.keySet()) {
+      for (String file : mergedKeys(expected.violationsByFileAndRule, actual.violationsByFileAndRule)) {
         boolean shouldPrintHeader = true;
-        for (String rule : actual.violationsByFileAndRule.get(file).keySet()) {
-          if (handledFilesRules.contains(Maps.immutableEntry(file, rule))) {
-            continue;
-          }
+        for (String rule : mergedKeys(violationsByRule(expected, file), violationsByRule(actual, file))) {
           shouldPrintHeader = printDifferencesByFileAndRule(shouldPrintHeader, file, rule);
         }
       }
@@ -174,16 +379,21 @@ public class ViolationCounterCheck<G extends Grammar> extends SquidAstVisitor<G>
       println("End of differences by file.");
     }
 
+    private static Map<String, Lines> violationsByRule(ViolationCounter counter, String file) {
+      Map<String, Lines> violationsByRule = counter.violationsByFileAndRule.get(file);
+      return violationsByRule == null ? NO_VIOLATIONS : violationsByRule;
+    }
+
     private static void printDifferencesByFileHeader(String file) {
       println("  File " + file + ":");
     }
 
     private boolean printDifferencesByFileAndRule(boolean shouldPrintHeader, String file, String rule) {
 
-      TreeMultiset<Integer> linesExpected = getLines(expected, file, rule);
-      TreeMultiset<Integer> linesActual = getLines(actual, file, rule);
+      int[] linesExpected = expected.getLines(file, rule).toSortedArray();
+      int[] linesActual = actual.getLines(file, rule).toSortedArray();
 
-      if (!linesExpected.equals(linesActual)) {
+      if (!Arrays.equals(linesExpected, linesActual)) {
         hasDifferences = true;
 
         if (shouldPrintHeader) {
@@ -191,8 +401,8 @@ public class ViolationCounterCheck<G extends Grammar> extends SquidAstVisitor<G>
         }
 
         println("    " + rule + ", (difference only) expected ("
-          + StringUtils.join(setDifference(linesExpected, linesActual), ",") + "), actual ("
-          + StringUtils.join(setDifference(linesActual, linesExpected), ",") + ").");
+          + difference(linesExpected, linesActual) + "), actual ("
+          + difference(linesActual, linesExpected) + ").");
 
         return false;
       } else {
@@ -201,27 +411,14 @@ public class ViolationCounterCheck<G extends Grammar> extends SquidAstVisitor<G>
 
     }
 
-    private static TreeMultiset<Integer> getLines(ViolationCounter counter, String file, String rule) {
-      if (!counter.violationsByFileAndRule.containsKey(file)
-        || !counter.violationsByFileAndRule.get(file).containsKey(rule)) {
-        return TreeMultiset.create();
-      } else {
-        return counter.violationsByFileAndRule.get(file).get(rule);
-      }
-    }
-
-    private static TreeMultiset<Integer> setDifference(TreeMultiset<Integer> a, TreeMultiset<Integer> b) {
-      TreeMultiset<Integer> aMinusB = TreeMultiset.create(a);
-      aMinusB.removeAll(b);
-      return aMinusB;
-    }
-
     private void printDifferencesByRule() {
       println("Differences by rule:");
 
-      for (String rule : getRules()) {
-        int expectedViolations = getViolationsByRule(expected, rule);
-        int actualViolations = getViolationsByRule(actual, rule);
+      Map<String, Integer> expectedViolationsByRule = expected.countViolationsByRule();
+      Map<String, Integer> actualViolationsByRule = actual.countViolationsByRule();
+      for (String rule : mergedKeys(expectedViolationsByRule, actualViolationsByRule)) {
+        int expectedViolations = count(expectedViolationsByRule, rule);
+        int actualViolations = count(actualViolationsByRule, rule);
 
         println("  " + rule + " expected: " + expectedViolations + ", actual: " + actualViolations + ": "
           + (expectedViolations == actualViolations ? "OK" : "*** FAILURE ***"));
@@ -230,30 +427,9 @@ public class ViolationCounterCheck<G extends Grammar> extends SquidAstVisitor<G>
       println("End of differences by rule.");
     }
 
-    private Set<String> getRules() {
-      Set<String> rules = new HashSet<String>();
-
-      for (String file : expected.violationsByFileAndRule.keySet()) {
-        rules.addAll(expected.violationsByFileAndRule.get(file).keySet());
-      }
-
-      for (String file : actual.violationsByFileAndRule.keySet()) {
-        rules.addAll(actual.violationsByFileAndRule.get(file).keySet());
-      }
-
-      return rules;
-    }
-
-    private static int getViolationsByRule(ViolationCounter counter, String rule) {
-      int violations = 0;
-
-      for (String file : counter.violationsByFileAndRule.keySet()) {
-        if (counter.violationsByFileAndRule.get(file).containsKey(rule)) {
-          violations += counter.violationsByFileAndRule.get(file).get(rule).size();
-        }
-      }
-
-      return violations;
+    private static int count(Map<String, Integer> violationsByRule, String rule) {
+      Integer count = violationsByRule.get(rule);
+      return count == null ? 0 : count;
     }
 
     public boolean hasDifferences() {
@@ -275,8 +451,13 @@ public class ViolationCounterCheck<G extends Grammar> extends SquidAstVisitor<G>
   @Override
   public void leaveFile(AstNode node) {
     Set<CheckMessage> violationsOnCurrentFile = new HashSet<CheckMessage>(getContext().peekSourceCode().getCheckMessages());
+    if (violationsOnCurrentFile.isEmpty()) {
+      return;
+    }
+    // canonicalization is a file system call, done once per file
+    String relativePath = getRelativePath(getContext().getFile());
     for (CheckMessage violation : violationsOnCurrentFile) {
-      violationCounter.increment(getRelativePath(getContext().getFile()), violation.getChecker().getClass().getSimpleName(),
+      violationCounter.increment(relativePath, violation.getChecker().getClass().getSimpleName(),
         violation.getLine() == null ? -1
           : violation.getLine());
     }
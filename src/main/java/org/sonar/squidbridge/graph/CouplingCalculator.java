@@ -0,0 +1,129 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.graph;
+
+import org.jgrapht.Graph;
+import org.sonar.squidbridge.api.SourceClass;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceCodeEdge;
+import org.sonar.squidbridge.api.SourcePackage;
+import org.sonar.squidbridge.measures.Metric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the afferent ({@link Metric#CA}) and efferent ({@link Metric#CE}) couplings of packages and classes from a dependency graph.
+ * <p/>
+ * The afferent coupling of a node is the number of distinct nodes of the same type depending on it, its efferent coupling is the number of
+ * distinct nodes of the same type it depends on. Self dependencies are ignored. {@link Metric#INSTABILITY} and {@link Metric#DISTANCE} are
+ * calculated metrics and derive from those values.
+ * <p/>
+ * Nodes are processed in parallel blocks. Each node only reads its own incoming and outgoing edges and only writes its own measures, so
+ * the work is linear in the number of edges and no merge step is needed.
+ */
+public class CouplingCalculator {
+
+  private static final int BLOCK_SIZE = 1024;
+
+  private final Graph<SourceCode, SourceCodeEdge> graph;
+
+  public CouplingCalculator(Graph<SourceCode, SourceCodeEdge> graph) {
+    this.graph = graph;
+  }
+
+  public void calculate() {
+    List<SourceCode> nodes = new ArrayList<SourceCode>();
+    for (SourceCode vertex : graph.vertexSet()) {
+      if (isCoupled(vertex)) {
+        nodes.add(vertex);
+      }
+    }
+
+    Map<SourceCode, Integer> ids = new HashMap<SourceCode, Integer>(nodes.size() * 4 / 3 + 1);
+    for (int i = 0; i < nodes.size(); i++) {
+      ids.put(nodes.get(i), i);
+    }
+
+    int blocks = (nodes.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    IntStream.range(0, blocks).parallel().forEach(block -> new BlockCalculator(ids).calculate(nodes, block * BLOCK_SIZE,
+      Math.min(nodes.size(), (block + 1) * BLOCK_SIZE)));
+  }
+
+  private static boolean isCoupled(SourceCode sourceCode) {
+    return sourceCode.isType(SourcePackage.class) || sourceCode.isType(SourceClass.class);
+  }
+
+  /**
+   * Holds the neighbour buffer of one block, so that counting distinct neighbours does not allocate per node.
+   */
+  private final class BlockCalculator {
+
+    private final Map<SourceCode, Integer> ids;
+    private int[] neighbours = new int[16];
+
+    private BlockCalculator(Map<SourceCode, Integer> ids) {
+      this.ids = ids;
+    }
+
+    private void calculate(List<SourceCode> nodes, int from, int to) {
+      for (int i = from; i < to; i++) {
+        SourceCode node = nodes.get(i);
+        node.setMeasure(Metric.CA, countDistinctNeighbours(node, graph.incomingEdgesOf(node), true));
+        node.setMeasure(Metric.CE, countDistinctNeighbours(node, graph.outgoingEdgesOf(node), false));
+      }
+    }
+
+    private int countDistinctNeighbours(SourceCode node, Iterable<SourceCodeEdge> edges, boolean incoming) {
+      int size = 0;
+      for (SourceCodeEdge edge : edges) {
+        SourceCode neighbour = incoming ? edge.getFrom() : edge.getTo();
+        if (neighbour.getClass() == node.getClass() && !neighbour.equals(node)) {
+          Integer id = ids.get(neighbour);
+          if (id != null) {
+            if (size == neighbours.length) {
+              neighbours = Arrays.copyOf(neighbours, size * 2);
+            }
+            neighbours[size] = id;
+            size++;
+          }
+        }
+      }
+      if (size < 2) {
+        return size;
+      }
+      // Edges with different usages between the same nodes must only be counted once
+      Arrays.sort(neighbours, 0, size);
+      int distinct = 1;
+      for (int i = 1; i < size; i++) {
+        if (neighbours[i] != neighbours[i - 1]) {
+          distinct++;
+        }
+      }
+      return distinct;
+    }
+
+  }
+
+}
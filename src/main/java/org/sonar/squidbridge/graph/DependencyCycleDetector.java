@@ -0,0 +1,311 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.graph;
+
+import org.jgrapht.Graph;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceCodeEdge;
+import org.sonar.squidbridge.api.SourceCodeEdgeUsage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Detects the dependency cycles between nodes of a given type (typically packages or files) of a dependency graph.
+ * <p/>
+ * Cycles are the strongly connected components computed by an iterative version of Tarjan's algorithm in O(V+E), so that the depth of the
+ * graph is not limited by the size of the call stack. The feedback edges are then approximated with the greedy heuristic of Eades, Lin
+ * and Smyth, weighted by {@link SourceCodeEdge#getWeight()}, in O(E log E).
+ */
+public class DependencyCycleDetector {
+
+  private final Graph<SourceCode, SourceCodeEdge> graph;
+
+  private SourceCode[] nodes;
+  // Outgoing edges of node i are edges[outOffsets[i]] to edges[outOffsets[i + 1] - 1], pointing to targets[...]
+  private int[] outOffsets;
+  private int[] targets;
+  private SourceCodeEdge[] edges;
+  private int[] component;
+
+  public DependencyCycleDetector(Graph<SourceCode, SourceCodeEdge> graph) {
+    this.graph = graph;
+  }
+
+  /**
+   * @param nodeType type of the nodes between which cycles are searched, other nodes are ignored
+   * @param usages   usages of the edges to follow, all the edges are followed when none is given
+   */
+  public DependencyCycles detect(Class<? extends SourceCode> nodeType, SourceCodeEdgeUsage... usages) {
+    Set<SourceCodeEdgeUsage> followedUsages = usages.length == 0 ? EnumSet.allOf(SourceCodeEdgeUsage.class) : EnumSet.copyOf(Arrays.asList(usages));
+    buildAdjacency(nodeType, followedUsages);
+    int components = computeStronglyConnectedComponents();
+    return new DependencyCycles(getCycles(components), getFeedbackEdges());
+  }
+
+  private void buildAdjacency(Class<? extends SourceCode> nodeType, Set<SourceCodeEdgeUsage> usages) {
+    List<SourceCode> selectedNodes = new ArrayList<SourceCode>();
+    for (SourceCode vertex : graph.vertexSet()) {
+      if (vertex.isType(nodeType)) {
+        selectedNodes.add(vertex);
+      }
+    }
+    nodes = selectedNodes.toArray(new SourceCode[selectedNodes.size()]);
+    Map<SourceCode, Integer> ids = new HashMap<SourceCode, Integer>(nodes.length * 4 / 3 + 1);
+    for (int i = 0; i < nodes.length; i++) {
+      ids.put(nodes[i], i);
+    }
+
+    outOffsets = new int[nodes.length + 1];
+    List<SourceCodeEdge> selectedEdges = new ArrayList<SourceCodeEdge>();
+    int[] selectedTargets = new int[16];
+    for (int i = 0; i < nodes.length; i++) {
+      outOffsets[i] = selectedEdges.size();
+      for (SourceCodeEdge edge : graph.outgoingEdgesOf(nodes[i])) {
+        Integer target = ids.get(edge.getTo());
+        if (target != null && target != i && usages.contains(edge.getUsage())) {
+          if (selectedEdges.size() == selectedTargets.length) {
+            selectedTargets = Arrays.copyOf(selectedTargets, selectedTargets.length * 2);
+          }
+          selectedTargets[selectedEdges.size()] = target;
+          selectedEdges.add(edge);
+        }
+      }
+    }
+    outOffsets[nodes.length] = selectedEdges.size();
+    targets = selectedTargets;
+    edges = selectedEdges.toArray(new SourceCodeEdge[selectedEdges.size()]);
+  }
+
+  /**
+   * @return the number of components, {@link #component} holding the component of each node
+   */
+  private int computeStronglyConnectedComponents() {
+    int size = nodes.length;
+    int[] index = new int[size];
+    int[] lowLink = new int[size];
+    boolean[] onStack = new boolean[size];
+    int[] stack = new int[size];
+    int[] callStack = new int[size];
+    int[] nextEdge = new int[size];
+    component = new int[size];
+    Arrays.fill(index, -1);
+
+    int counter = 0;
+    int stackSize = 0;
+    int components = 0;
+    for (int root = 0; root < size; root++) {
+      if (index[root] != -1) {
+        continue;
+      }
+      int callStackSize = 0;
+      int node = root;
+      index[node] = counter;
+      lowLink[node] = counter;
+      counter++;
+      stack[stackSize++] = node;
+      onStack[node] = true;
+      nextEdge[node] = outOffsets[node];
+      callStack[callStackSize++] = node;
+
+      while (callStackSize > 0) {
+        node = callStack[callStackSize - 1];
+        if (nextEdge[node] < outOffsets[node + 1]) {
+          int target = targets[nextEdge[node]];
+          nextEdge[node]++;
+          if (index[target] == -1) {
+            index[target] = counter;
+            lowLink[target] = counter;
+            counter++;
+            stack[stackSize++] = target;
+            onStack[target] = true;
+            nextEdge[target] = outOffsets[target];
+            callStack[callStackSize++] = target;
+          } else if (onStack[target]) {
+            lowLink[node] = Math.min(lowLink[node], index[target]);
+          }
+        } else {
+          callStackSize--;
+          if (callStackSize > 0) {
+            int caller = callStack[callStackSize - 1];
+            lowLink[caller] = Math.min(lowLink[caller], lowLink[node]);
+          }
+          if (lowLink[node] == index[node]) {
+            int member;
+            do {
+              member = stack[--stackSize];
+              onStack[member] = false;
+              component[member] = components;
+            } while (member != node);
+            components++;
+          }
+        }
+      }
+    }
+    return components;
+  }
+
+  private List<Set<SourceCode>> getCycles(int components) {
+    int[] componentSizes = new int[components];
+    for (int node = 0; node < nodes.length; node++) {
+      componentSizes[component[node]]++;
+    }
+    Map<Integer, Set<SourceCode>> cyclesByComponent = new HashMap<Integer, Set<SourceCode>>();
+    List<Set<SourceCode>> cycles = new ArrayList<Set<SourceCode>>();
+    for (int node = 0; node < nodes.length; node++) {
+      if (componentSizes[component[node]] > 1) {
+        Set<SourceCode> cycle = cyclesByComponent.get(component[node]);
+        if (cycle == null) {
+          cycle = new TreeSet<SourceCode>();
+          cyclesByComponent.put(component[node], cycle);
+          cycles.add(cycle);
+        }
+        cycle.add(nodes[node]);
+      }
+    }
+    return cycles;
+  }
+
+  /**
+   * Orders the nodes so that heavy edges go forward as much as possible: sinks are moved to the end, sources to the beginning and otherwise
+   * the node with the largest difference between its outgoing and incoming weights comes next. Edges going backward in this order are the
+   * feedback edges. Only edges inside a component are considered, edges between components never belong to a cycle.
+   */
+  private List<SourceCodeEdge> getFeedbackEdges() {
+    int size = nodes.length;
+    long[] outWeight = new long[size];
+    long[] inWeight = new long[size];
+    int[] inOffsets = new int[size + 1];
+    for (int node = 0; node < size; node++) {
+      for (int e = outOffsets[node]; e < outOffsets[node + 1]; e++) {
+        if (isInsideComponent(node, e)) {
+          outWeight[node] += weight(e);
+          inWeight[targets[e]] += weight(e);
+          inOffsets[targets[e] + 1]++;
+        }
+      }
+    }
+    for (int node = 0; node < size; node++) {
+      inOffsets[node + 1] += inOffsets[node];
+    }
+    int[] sources = new int[inOffsets[size]];
+    int[] inEdges = new int[inOffsets[size]];
+    int[] fill = Arrays.copyOf(inOffsets, size);
+    for (int node = 0; node < size; node++) {
+      for (int e = outOffsets[node]; e < outOffsets[node + 1]; e++) {
+        if (isInsideComponent(node, e)) {
+          int slot = fill[targets[e]]++;
+          sources[slot] = node;
+          inEdges[slot] = e;
+        }
+      }
+    }
+
+    int[] position = new int[size];
+    boolean[] removed = new boolean[size];
+    // A node is enqueued at most three times: initially, when it becomes a sink and when it becomes a source
+    int[] sinksAndSources = new int[3 * size];
+    int head = 0;
+    int tail = 0;
+    PriorityQueue<long[]> candidates = new PriorityQueue<long[]>(Math.max(1, size), (a, b) -> Long.compare(b[0], a[0]));
+    for (int node = 0; node < size; node++) {
+      if (outWeight[node] == 0 || inWeight[node] == 0) {
+        sinksAndSources[tail++] = node;
+      } else {
+        candidates.add(new long[] {outWeight[node] - inWeight[node], node});
+      }
+    }
+
+    int left = 0;
+    int right = size - 1;
+    while (left <= right) {
+      int node;
+      if (head < tail) {
+        node = sinksAndSources[head++];
+        if (removed[node]) {
+          continue;
+        }
+        if (outWeight[node] == 0) {
+          position[node] = right--;
+        } else {
+          position[node] = left++;
+        }
+      } else {
+        long[] candidate = candidates.poll();
+        node = (int) candidate[1];
+        if (removed[node] || candidate[0] != outWeight[node] - inWeight[node]) {
+          // stale entry: the node has been removed or its weights have changed since
+          continue;
+        }
+        position[node] = left++;
+      }
+      removed[node] = true;
+
+      for (int e = outOffsets[node]; e < outOffsets[node + 1]; e++) {
+        int target = targets[e];
+        if (isInsideComponent(node, e) && !removed[target]) {
+          inWeight[target] -= weight(e);
+          if (inWeight[target] == 0) {
+            sinksAndSources[tail++] = target;
+          } else {
+            candidates.add(new long[] {outWeight[target] - inWeight[target], target});
+          }
+        }
+      }
+      for (int i = inOffsets[node]; i < inOffsets[node + 1]; i++) {
+        int source = sources[i];
+        if (!removed[source]) {
+          outWeight[source] -= weight(inEdges[i]);
+          if (outWeight[source] == 0) {
+            sinksAndSources[tail++] = source;
+          } else {
+            candidates.add(new long[] {outWeight[source] - inWeight[source], source});
+          }
+        }
+      }
+    }
+
+    List<SourceCodeEdge> feedbackEdges = new ArrayList<SourceCodeEdge>();
+    for (int node = 0; node < size; node++) {
+      for (int e = outOffsets[node]; e < outOffsets[node + 1]; e++) {
+        if (isInsideComponent(node, e) && position[node] > position[targets[e]]) {
+          feedbackEdges.add(edges[e]);
+        }
+      }
+    }
+    return feedbackEdges;
+  }
+
+  private boolean isInsideComponent(int node, int edge) {
+    return component[node] == component[targets[edge]];
+  }
+
+  private int weight(int edge) {
+    return Math.max(1, edges[edge].getWeight());
+  }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.graph;
+
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceCodeEdge;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dependency cycles found by {@link DependencyCycleDetector}.
+ */
+public class DependencyCycles {
+
+  private final List<Set<SourceCode>> cycles;
+  private final List<SourceCodeEdge> feedbackEdges;
+
+  DependencyCycles(List<Set<SourceCode>> cycles, List<SourceCodeEdge> feedbackEdges) {
+    this.cycles = Collections.unmodifiableList(cycles);
+    this.feedbackEdges = Collections.unmodifiableList(feedbackEdges);
+  }
+
+  /**
+   * @return the strongly connected components made of more than one node, i.e. the tangles. Nodes of a component are sorted by key.
+   */
+  public List<Set<SourceCode>> getCycles() {
+    return cycles;
+  }
+
+  public boolean hasCycles() {
+    return !cycles.isEmpty();
+  }
+
+  /**
+   * @return edges which, once removed, break all the cycles. This is an approximation of the minimum feedback edge set which favours
+   *         removing light edges, see {@link SourceCodeEdge#getWeight()}.
+   */
+  public List<SourceCodeEdge> getFeedbackEdges() {
+    return feedbackEdges;
+  }
+
+}
@@ -23,8 +23,15 @@ import org.sonar.squidbridge.api.Query;
 import org.sonar.squidbridge.api.SourceCode;
 import org.sonar.squidbridge.api.SourceCodeIndexer;
 import org.sonar.squidbridge.api.SourceCodeSearchEngine;
+import org.sonar.squidbridge.instrumentation.Instrumentation;
+import org.sonar.squidbridge.instrumentation.MetricsRegistry;
+import org.sonar.squidbridge.instrumentation.Timer;
+import org.sonar.squidbridge.jfr.IndexSearchEvent;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -33,15 +40,40 @@ import java.util.TreeMap;
 public class SquidIndex implements SourceCodeIndexer, SourceCodeSearchEngine {
 
   private final Map<String, SourceCode> index = new TreeMap<String, SourceCode>();
+  private final Map<String, SourceCode> spilledKeys = new HashMap<String, SourceCode>();
+  private final Map<SourceCode, Set<Class<? extends SourceCode>>> spilledTypes = new HashMap<SourceCode, Set<Class<? extends SourceCode>>>();
+  private final Timer searchTimer;
+
+  public SquidIndex() {
+    this(Instrumentation.getRegistry());
+  }
+
+  /**
+   * @param metricsRegistry registry to report the searches into, instead of the one of {@link Instrumentation}
+   */
+  public SquidIndex(MetricsRegistry metricsRegistry) {
+    this.searchTimer = metricsRegistry.timer("squid.index.search");
+  }
 
   @Override
   public Collection<SourceCode> search(Query... query) {
+    IndexSearchEvent event = new IndexSearchEvent();
+    event.begin();
+    long start = System.nanoTime();
+    loadSpilled(query);
     Set<SourceCode> result = new HashSet<SourceCode>();
     for (SourceCode unit : index.values()) {
       if (isSquidUnitMatchQueries(unit, query)) {
         result.add(unit);
       }
     }
+    searchTimer.record(System.nanoTime() - start);
+    event.end();
+    if (event.shouldCommit()) {
+      event.setQuery(Arrays.toString(query));
+      event.setResults(result.size());
+      event.commit();
+    }
     return result;
   }
 
@@ -58,12 +90,91 @@ public class SquidIndex implements SourceCodeIndexer, SourceCodeSearchEngine {
 
   @Override
   public SourceCode search(String key) {
-    return index.get(key);
+    IndexSearchEvent event = new IndexSearchEvent();
+    event.begin();
+    long start = System.nanoTime();
+    SourceCode owner = spilledKeys.get(key);
+    if (owner != null) {
+      load(owner);
+    }
+    SourceCode result = index.get(key);
+    searchTimer.record(System.nanoTime() - start);
+    event.end();
+    if (event.shouldCommit()) {
+      event.setQuery(key);
+      event.setResults(result == null ? 0 : 1);
+      event.commit();
+    }
+    return result;
   }
 
   @Override
   public void index(SourceCode sourceCode) {
     sourceCode.setSourceCodeIndexer(this);
     index.put(sourceCode.getKey(), sourceCode);
+    if (!spilledKeys.isEmpty()) {
+      spilledKeys.remove(sourceCode.getKey());
+    }
+  }
+
+  /**
+   * Removes the descendants of the given source code from the index, before they get spilled to disk by a
+   * {@link org.sonar.squidbridge.api.SourceCodeSpillStore}. They are loaded back and indexed again when searched.
+   */
+  public void evictDescendants(SourceCode sourceCode) {
+    Set<Class<? extends SourceCode>> types = new HashSet<Class<? extends SourceCode>>();
+    evictDescendants(sourceCode, sourceCode, types);
+    spilledTypes.put(sourceCode, types);
+  }
+
+  private void evictDescendants(SourceCode owner, SourceCode sourceCode, Set<Class<? extends SourceCode>> types) {
+    if (sourceCode.hasChildren()) {
+      for (SourceCode child : sourceCode.getChildren()) {
+        index.remove(child.getKey());
+        spilledKeys.put(child.getKey(), owner);
+        types.add(child.getClass());
+        evictDescendants(owner, child, types);
+      }
+    }
+  }
+
+  private void loadSpilled(Query... queries) {
+    if (spilledTypes.isEmpty()) {
+      return;
+    }
+    for (Map.Entry<SourceCode, Set<Class<? extends SourceCode>>> entry : new ArrayList<Map.Entry<SourceCode, Set<Class<? extends SourceCode>>>>(spilledTypes.entrySet())) {
+      if (mayMatch(entry.getValue(), queries)) {
+        load(entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * Avoids loading spilled source code which cannot match a query by type.
+   */
+  private static boolean mayMatch(Set<Class<? extends SourceCode>> types, Query... queries) {
+    for (Query query : queries) {
+      if (query instanceof QueryByType && !matchesAnyType((QueryByType) query, types)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean matchesAnyType(QueryByType query, Set<Class<? extends SourceCode>> types) {
+    for (Class<? extends SourceCode> type : types) {
+      if (query.equals(new QueryByType(type))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void load(SourceCode owner) {
+    Set<Class<? extends SourceCode>> types = spilledTypes.remove(owner);
+    if (types != null) {
+      // accessing the children loads them back, and adding them to their parent indexes them again
+      owner.hasChildren();
+    }
   }
 }
@@ -0,0 +1,152 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.instrumentation;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps metrics in memory, to be read programmatically or exported with {@link JmxMetricsExporter}.
+ */
+public class InMemoryMetricsRegistry implements MetricsRegistry {
+
+  private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+  private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+  private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+  @Override
+  public Counter counter(String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      counter = new InMemoryCounter();
+      Counter previous = counters.putIfAbsent(name, counter);
+      if (previous != null) {
+        counter = previous;
+      }
+    }
+    return counter;
+  }
+
+  @Override
+  public Timer timer(String name) {
+    Timer timer = timers.get(name);
+    if (timer == null) {
+      timer = new InMemoryTimer();
+      Timer previous = timers.putIfAbsent(name, timer);
+      if (previous != null) {
+        timer = previous;
+      }
+    }
+    return timer;
+  }
+
+  @Override
+  public void gauge(String name, Gauge gauge) {
+    gauges.put(name, gauge);
+  }
+
+  public SortedMap<String, Counter> getCounters() {
+    return ImmutableSortedMap.copyOf(counters);
+  }
+
+  public SortedMap<String, Timer> getTimers() {
+    return ImmutableSortedMap.copyOf(timers);
+  }
+
+  public SortedMap<String, Gauge> getGauges() {
+    return ImmutableSortedMap.copyOf(gauges);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Counter> counter : getCounters().entrySet()) {
+      sb.append(counter.getKey()).append('=').append(counter.getValue().getCount()).append('\n');
+    }
+    for (Map.Entry<String, Timer> timer : getTimers().entrySet()) {
+      sb.append(timer.getKey()).append(".count=").append(timer.getValue().getCount()).append('\n');
+      sb.append(timer.getKey()).append(".totalNanos=").append(timer.getValue().getTotalNanos()).append('\n');
+    }
+    for (Map.Entry<String, Gauge> gauge : getGauges().entrySet()) {
+      sb.append(gauge.getKey()).append('=').append(gauge.getValue().getValue()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static final class InMemoryCounter implements Counter {
+
+    private final AtomicLong count = new AtomicLong();
+
+    @Override
+    public void increment() {
+      count.incrementAndGet();
+    }
+
+    @Override
+    public void add(long value) {
+      count.addAndGet(value);
+    }
+
+    @Override
+    public long getCount() {
+      return count.get();
+    }
+
+  }
+
+  private static final class InMemoryTimer implements Timer {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    @Override
+    public void record(long nanos) {
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      long max = maxNanos.get();
+      while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+        max = maxNanos.get();
+      }
+    }
+
+    @Override
+    public long getCount() {
+      return count.get();
+    }
+
+    @Override
+    public long getTotalNanos() {
+      return totalNanos.get();
+    }
+
+    @Override
+    public long getMaxNanos() {
+      return maxNanos.get();
+    }
+
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.instrumentation;
+
+/**
+ * Holds the registry the scanner components report into. Components look their metrics up when they are created,
+ * so the registry must be set before creating the scanner. By default, metrics are discarded.
+ */
+public final class Instrumentation {
+
+  private static final MetricsRegistry NO_OP = new NoOpMetricsRegistry();
+
+  private static volatile MetricsRegistry registry = NO_OP;
+
+  private Instrumentation() {
+  }
+
+  public static MetricsRegistry getRegistry() {
+    return registry;
+  }
+
+  public static void setRegistry(MetricsRegistry registry) {
+    Instrumentation.registry = registry;
+  }
+
+  /**
+   * Goes back to discarding metrics.
+   */
+  public static void reset() {
+    registry = NO_OP;
+  }
+
+  /**
+   * @return whether metrics are actually recorded, to skip the ones which are costly to compute
+   */
+  public static boolean isEnabled() {
+    return registry != NO_OP;
+  }
+
+  private static final class NoOpMetricsRegistry implements MetricsRegistry, Counter, Timer {
+
+    @Override
+    public Counter counter(String name) {
+      return this;
+    }
+
+    @Override
+    public Timer timer(String name) {
+      return this;
+    }
+
+    @Override
+    public void gauge(String name, Gauge gauge) {
+      // discarded
+    }
+
+    @Override
+    public void increment() {
+      // discarded
+    }
+
+    @Override
+    public void add(long value) {
+      // discarded
+    }
+
+    @Override
+    public void record(long nanos) {
+      // discarded
+    }
+
+    @Override
+    public long getCount() {
+      return 0;
+    }
+
+    @Override
+    public long getTotalNanos() {
+      return 0;
+    }
+
+    @Override
+    public long getMaxNanos() {
+      return 0;
+    }
+
+  }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.instrumentation;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the metrics of an {@link InMemoryMetricsRegistry} as the read-only attributes of a single MBean: counters under
+ * their name, timers as {@code <name>.count}, {@code <name>.totalMillis} and {@code <name>.maxMillis}, gauges under their name.
+ * Attributes are read from the registry on each access, so metrics created after the registration are exposed as well.
+ */
+public class JmxMetricsExporter implements Closeable {
+
+  public static final String DEFAULT_OBJECT_NAME = "org.sonar.squidbridge:type=Metrics";
+
+  private final InMemoryMetricsRegistry registry;
+  private final MBeanServer server;
+  private final ObjectName objectName;
+
+  private JmxMetricsExporter(InMemoryMetricsRegistry registry, MBeanServer server, ObjectName objectName) {
+    this.registry = registry;
+    this.server = server;
+    this.objectName = objectName;
+  }
+
+  /**
+   * Registers the metrics of the registry in the platform MBean server, under {@link #DEFAULT_OBJECT_NAME}.
+   */
+  public static JmxMetricsExporter register(InMemoryMetricsRegistry registry) {
+    try {
+      return register(registry, ManagementFactory.getPlatformMBeanServer(), new ObjectName(DEFAULT_OBJECT_NAME));
+    } catch (JMException e) {
+      throw new IllegalStateException("Unable to register metrics MBean " + DEFAULT_OBJECT_NAME, e);
+    }
+  }
+
+  public static JmxMetricsExporter register(InMemoryMetricsRegistry registry, MBeanServer server, ObjectName objectName) throws JMException {
+    JmxMetricsExporter exporter = new JmxMetricsExporter(registry, server, objectName);
+    server.registerMBean(exporter.new MetricsMBean(), objectName);
+    return exporter;
+  }
+
+  public ObjectName getObjectName() {
+    return objectName;
+  }
+
+  /**
+   * Unregisters the MBean.
+   */
+  @Override
+  public void close() {
+    try {
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException("Unable to unregister metrics MBean " + objectName, e);
+    }
+  }
+
+  private Map<String, Object> attributes() {
+    Map<String, Object> attributes = Maps.newTreeMap();
+    for (Map.Entry<String, Counter> counter : registry.getCounters().entrySet()) {
+      attributes.put(counter.getKey(), counter.getValue().getCount());
+    }
+    for (Map.Entry<String, Timer> timer : registry.getTimers().entrySet()) {
+      attributes.put(timer.getKey() + ".count", timer.getValue().getCount());
+      attributes.put(timer.getKey() + ".totalMillis", TimeUnit.NANOSECONDS.toMillis(timer.getValue().getTotalNanos()));
+      attributes.put(timer.getKey() + ".maxMillis", TimeUnit.NANOSECONDS.toMillis(timer.getValue().getMaxNanos()));
+    }
+    for (Map.Entry<String, Gauge> gauge : registry.getGauges().entrySet()) {
+      attributes.put(gauge.getKey(), gauge.getValue().getValue());
+    }
+    return attributes;
+  }
+
+  private class MetricsMBean implements DynamicMBean {
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      Object value = attributes().get(attribute);
+      if (value == null) {
+        throw new AttributeNotFoundException(attribute);
+      }
+      return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+      Map<String, Object> attributes = attributes();
+      AttributeList list = new AttributeList();
+      for (String name : names) {
+        if (attributes.containsKey(name)) {
+          list.add(new Attribute(name, attributes.get(name)));
+        }
+      }
+      return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+      // there is no writable attribute
+      throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+      throw new ReflectionException(new NoSuchMethodException(actionName), "No operation on metrics: " + actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      List<MBeanAttributeInfo> infos = Lists.newArrayList();
+      for (Map.Entry<String, Object> attribute : attributes().entrySet()) {
+        infos.add(new MBeanAttributeInfo(attribute.getKey(), attribute.getValue().getClass().getName(), attribute.getKey(), true, false, false));
+      }
+      return new MBeanInfo(JmxMetricsExporter.class.getName(), "Squid bridge metrics", infos.toArray(new MBeanAttributeInfo[infos.size()]),
+        null, null, null);
+    }
+
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.instrumentation;
+
+/**
+ * Creates the metrics reported by the scanner components, see the package documentation for their names.
+ * Implementations must be thread-safe and return the same counter or timer for the same name.
+ *
+ * @see Instrumentation#setRegistry(MetricsRegistry)
+ */
+public interface MetricsRegistry {
+
+  Counter counter(String name);
+
+  Timer timer(String name);
+
+  /**
+   * Registers a gauge, replacing any gauge previously registered under the same name.
+   */
+  void gauge(String name, Gauge gauge);
+
+}
@@ -0,0 +1,47 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+/**
+ * Dependency-free metrics SPI the scanner components report into, see {@link org.sonar.squidbridge.instrumentation.MetricsRegistry}.
+ * <p>
+ * Reported metrics:
+ * <ul>
+ * <li>{@code squid.scanner.files}, {@code squid.scanner.parseErrors}, {@code squid.scanner.astNodes}, {@code squid.scanner.tokens}:
+ * counters of {@link org.sonar.squidbridge.AstScanner}, nodes and tokens being only counted when a registry is set</li>
+ * <li>{@code squid.scanner.issues.<rule key>}: counter of the issues raised by each rule</li>
+ * <li>{@code squid.scanner.parse}, {@code squid.scanner.visit}: timers of the parse and visit of each file</li>
+ * <li>{@code squid.index.search}: timer of the searches in {@link org.sonar.squidbridge.indexer.SquidIndex}</li>
+ * <li>{@code squid.decorator.decorate}: timer of {@link org.sonar.squidbridge.api.SourceCodeTreeDecorator}</li>
+ * <li>{@code squid.recognizer.lines}, {@code squid.recognizer.code}: counters of the lines submitted to
+ * {@link org.sonar.squidbridge.recognizer.CodeRecognizer#isLineOfCode(String)} and of those recognized as code</li>
+ * <li>{@code squid.xpath.cache.hits}, {@code squid.xpath.cache.misses}, {@code squid.commentRegex.cache.hits},
+ * {@code squid.commentRegex.cache.misses}: counters of the lookups in the XPath results and in the comment regular
+ * expression verdicts shared by the checks of a scanner, reported after each file and added up over the scanners
+ * sharing a registry, along with the {@code squid.xpath.cache.hitRate} and {@code squid.commentRegex.cache.hitRate} gauges</li>
+ * <li>{@code squid.checks.namingCache.hits}, {@code squid.checks.namingCache.misses}, {@code squid.checks.namingCache.hitRate}:
+ * the same for the name verdict caches of the naming checks, over all the caches of a scanner</li>
+ * <li>{@code squid.checkMessage.formatCache.hitRate}: gauge of the hit rate of the message templates cache, which is shared
+ * by all the scanners of the JVM</li>
+ * </ul>
+ * A scanner given its own registry with {@link org.sonar.squidbridge.AstScanner.Builder#setMetricsRegistry(MetricsRegistry)}
+ * reports all of these into it, its visitors getting it from
+ * {@link org.sonar.squidbridge.SquidAstVisitorContext#getMetricsRegistry()}.
+ */
+@javax.annotation.ParametersAreNonnullByDefault
+package org.sonar.squidbridge.instrumentation;
@@ -0,0 +1,63 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+
+@Name("org.sonar.squidbridge.FileVisit")
+@Label("File Visit")
+@Category({"SonarQube", "Squid Bridge"})
+@Description("Visit of the syntax tree of a file by all the visitors of an AstScanner")
+public final class FileVisitEvent extends Event {
+
+  @Label("Path")
+  private String path;
+
+  @Label("Size")
+  @DataAmount
+  private long size;
+
+  @Label("Lines")
+  private int lines;
+
+  @Label("Visitors")
+  private int visitors;
+
+  public void setFile(File file) {
+    this.path = file.getPath();
+    this.size = file.length();
+  }
+
+  public void setLines(int lines) {
+    this.lines = lines;
+  }
+
+  public void setVisitors(int visitors) {
+    this.visitors = visitors;
+  }
+
+}
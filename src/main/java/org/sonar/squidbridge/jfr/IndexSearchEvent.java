@@ -0,0 +1,48 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.sonar.squidbridge.IndexSearch")
+@Label("Index Search")
+@Category({"SonarQube", "Squid Bridge"})
+@Description("Search in the index of the source code tree")
+public final class IndexSearchEvent extends Event {
+
+  @Label("Query")
+  private String query;
+
+  @Label("Results")
+  private int results;
+
+  public void setQuery(String query) {
+    this.query = query;
+  }
+
+  public void setResults(int results) {
+    this.results = results;
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+
+@Name("org.sonar.squidbridge.ParseFailure")
+@Label("File Parse Failure")
+@Category({"SonarQube", "Squid Bridge"})
+@Description("Failed parse of a file by an AstScanner, the duration being the one of the attempt")
+public final class ParseFailureEvent extends Event {
+
+  @Label("Path")
+  private String path;
+
+  @Label("Size")
+  @DataAmount
+  private long size;
+
+  @Label("Exception Class")
+  private String exceptionClass;
+
+  @Label("Message")
+  private String message;
+
+  public void setFile(File file) {
+    this.path = file.getPath();
+    this.size = file.length();
+  }
+
+  public void setException(Throwable exception) {
+    this.exceptionClass = exception.getClass().getName();
+    this.message = exception.getMessage();
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.File;
+
+/**
+ * Enabling this event makes the scanner time every call to its visitors, which has a cost of its own.
+ */
+@Name("org.sonar.squidbridge.Visitor")
+@Label("Visitor")
+@Category({"SonarQube", "Squid Bridge"})
+@Description("Time spent by one visitor of an AstScanner on a file, emitted at the end of the visit of the file")
+public final class VisitorEvent extends Event {
+
+  @Label("Path")
+  private String path;
+
+  @Label("Visitor Class")
+  private String visitorClass;
+
+  @Label("Visitor Time")
+  @Timespan(Timespan.NANOSECONDS)
+  private long visitorTime;
+
+  @Label("Calls")
+  private long calls;
+
+  public void setFile(File file) {
+    this.path = file.getPath();
+  }
+
+  public void setVisitorClass(Class<?> visitorClass) {
+    this.visitorClass = visitorClass.getName();
+  }
+
+  public void setVisitorTime(long nanos, long calls) {
+    this.visitorTime = nanos;
+    this.calls = calls;
+  }
+
+}
@@ -19,8 +19,10 @@
  */
 package org.sonar.squidbridge.measures;
 
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class Measures {
 
@@ -63,6 +65,13 @@ public class Measures {
     measures.remove(metric);
   }
 
+  /**
+   * @return the metrics having a value or data
+   */
+  public Set<MetricDef> getMetrics() {
+    return Collections.unmodifiableSet(measures.keySet());
+  }
+
   private static final class Measure {
 
     private double value;
@@ -22,12 +22,14 @@ package org.sonar.squidbridge.metrics;
 import org.sonar.squidbridge.api.SourceFile;
 
 import org.sonar.squidbridge.measures.MetricDef;
+import org.sonar.squidbridge.Comment;
+import org.sonar.squidbridge.CommentVisitor;
+import org.sonar.squidbridge.CommentVisitorBridge;
 import org.sonar.squidbridge.SquidAstVisitor;
 import com.sonar.sslr.api.AstAndTokenVisitor;
 import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.Grammar;
 import com.sonar.sslr.api.Token;
-import com.sonar.sslr.api.Trivia;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -35,11 +37,11 @@ import java.util.Set;
 /**
  * Visitor that computes the number of lines of comments and the number of empty lines of comments.
  */
-public final class CommentsVisitor<G extends Grammar> extends SquidAstVisitor<G> implements AstAndTokenVisitor {
+public final class CommentsVisitor<G extends Grammar> extends SquidAstVisitor<G> implements CommentVisitor, AstAndTokenVisitor {
 
+  private final CommentVisitorBridge commentVisitorBridge = new CommentVisitorBridge(this);
   private Set<Integer> noSonar;
   private Set<Integer> comments;
-  private boolean seenFirstToken;
 
   private final boolean enableNoSonar;
   private final MetricDef commentMetric;
@@ -66,32 +68,33 @@ public final class CommentsVisitor<G extends Grammar> extends SquidAstVisitor<G>
   public void visitFile(AstNode astNode) {
     noSonar = new HashSet<Integer>();
     comments = new HashSet<Integer>();
-    seenFirstToken = false;
   }
 
   @Override
-  public void visitToken(Token token) {
-    if (!ignoreHeaderComments || seenFirstToken) {
-      for (Trivia trivia : token.getTrivia()) {
-        if (trivia.isComment()) {
-          String[] commentLines = getContext().getCommentAnalyser().getContents(trivia.getToken().getOriginalValue())
-            .split("(\r)?\n|\r", -1);
-          int line = trivia.getToken().getLine();
-
-          for (String commentLine : commentLines) {
-            if (enableNoSonar && commentLine.contains("NOSONAR")) {
-              addNoSonar(line);
-            } else if (commentMetric != null && !getContext().getCommentAnalyser().isBlank(commentLine)) {
-              addCommentLine(line);
-            }
-
-            line++;
-          }
+  public void visitComment(Comment comment) {
+    if (!ignoreHeaderComments || !comment.isHeader()) {
+      int line = comment.getLine();
+
+      for (String commentLine : comment.getContentLines()) {
+        if (enableNoSonar && commentLine.contains("NOSONAR")) {
+          addNoSonar(line);
+        } else if (commentMetric != null && !getContext().getCommentAnalyser().isBlank(commentLine)) {
+          addCommentLine(line);
         }
+
+        line++;
       }
     }
+  }
 
-    seenFirstToken = true;
+  /**
+   * @deprecated since comments are passed to {@link #visitComment(Comment)}. Only passes the comments of the token
+   *             to it when not walked by {@link org.sonar.squidbridge.AstScanner}.
+   */
+  @Deprecated
+  @Override
+  public void visitToken(Token token) {
+    commentVisitorBridge.visitToken(token, getContext());
   }
 
   @Override
@@ -20,6 +20,9 @@
 package org.sonar.squidbridge.recognizer;
 
 import com.google.common.collect.Lists;
+import org.sonar.squidbridge.instrumentation.Counter;
+import org.sonar.squidbridge.instrumentation.Instrumentation;
+import org.sonar.squidbridge.instrumentation.MetricsRegistry;
 
 import java.util.List;
 
@@ -27,10 +30,22 @@ public class CodeRecognizer {
 
   private final LanguageFootprint language;
   private final double threshold;
+  private final Counter linesCounter;
+  private final Counter codeCounter;
 
   public CodeRecognizer(double threshold, LanguageFootprint language) {
+    this(threshold, language, Instrumentation.getRegistry());
+  }
+
+  /**
+   * @param metricsRegistry registry to report the recognized lines into, instead of the one of {@link Instrumentation},
+   *          e.g. {@link org.sonar.squidbridge.SquidAstVisitorContext#getMetricsRegistry()} from a check
+   */
+  public CodeRecognizer(double threshold, LanguageFootprint language, MetricsRegistry metricsRegistry) {
     this.language = language;
     this.threshold = threshold;
+    this.linesCounter = metricsRegistry.counter("squid.recognizer.lines");
+    this.codeCounter = metricsRegistry.counter("squid.recognizer.code");
   }
 
   public final double recognition(String line) {
@@ -52,7 +67,12 @@ public class CodeRecognizer {
   }
 
   public final boolean isLineOfCode(String line) {
-    return recognition(line) - threshold > 0;
+    boolean lineOfCode = recognition(line) - threshold > 0;
+    linesCounter.increment();
+    if (lineOfCode) {
+      codeCounter.increment();
+    }
+    return lineOfCode;
   }
 
 }
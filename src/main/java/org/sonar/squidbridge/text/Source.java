@@ -20,6 +20,7 @@
 package org.sonar.squidbridge.text;
 
 import com.google.common.annotations.Beta;
+import org.sonar.squidbridge.jfr.SourceEvent;
 import org.sonar.squidbridge.measures.Metric;
 import org.sonar.squidbridge.recognizer.CodeRecognizer;
 
@@ -39,7 +40,14 @@ public class Source {
     this.codeRecognizer = codeRecognizer;
     LinesFactory linesFactory = new LinesFactory(reader, additionalSingleLineCommentFlag);
     lines = linesFactory.getLines();
+    SourceEvent event = new SourceEvent();
+    event.begin();
     processLines();
+    event.end();
+    if (event.shouldCommit()) {
+      event.setLines(lines.size());
+      event.commit();
+    }
   }
 
   public Source(String[] stringLines, CodeRecognizer codeRecognizer) {
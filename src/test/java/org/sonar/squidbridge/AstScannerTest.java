@@ -0,0 +1,680 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.impl.Lexer;
+import com.sonar.sslr.impl.Parser;
+import com.sonar.sslr.test.minic.MiniCLexer;
+import com.sonar.sslr.test.minic.MiniCParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+import org.sonar.squidbridge.api.AnalysisException;
+import org.sonar.squidbridge.api.CheckMessage;
+import org.sonar.squidbridge.api.SourceCodeSpillStore;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.squidbridge.checks.SquidCheck;
+import org.sonar.squidbridge.indexer.QueryByType;
+import org.sonar.squidbridge.instrumentation.InMemoryMetricsRegistry;
+import org.sonar.squidbridge.instrumentation.Instrumentation;
+import org.sonar.squidbridge.test.miniC.MiniCAstScanner.MiniCMetrics;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AstScannerTest {
+
+  private static final File LINES = new File("src/test/resources/metrics/lines.mc");
+  private static final File COMMENTS = new File("src/test/resources/metrics/comments.mc");
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final SquidAstVisitorContextImpl<Grammar> context = new SquidAstVisitorContextImpl<Grammar>(new SourceProject("project"));
+
+  @Test
+  public void check_messages_are_published_to_sinks_and_retained() {
+    RecordingSink sink = new RecordingSink();
+    AstScanner<Grammar> scanner = builder().withCheckMessageSink(sink).build();
+
+    scanner.scanFiles(Arrays.asList(LINES, COMMENTS));
+
+    assertThat(sink.files).containsExactly(LINES.getAbsolutePath(), COMMENTS.getAbsolutePath());
+    assertThat(sink.messages).hasSize(4);
+    for (SourceFile sourceFile : sourceFiles(scanner)) {
+      assertThat(sourceFile.getCheckMessages()).hasSize(2);
+    }
+  }
+
+  @Test
+  public void check_messages_are_released_when_not_retained() {
+    RecordingSink sink = new RecordingSink();
+    AstScanner<Grammar> scanner = builder().withCheckMessageSink(sink).setRetainCheckMessages(false).build();
+
+    scanner.scanFiles(Arrays.asList(LINES, COMMENTS));
+
+    assertThat(sink.messages).hasSize(4);
+    for (SourceFile sourceFile : sourceFiles(scanner)) {
+      assertThat(sourceFile.hasCheckMessages()).isFalse();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void check_messages_must_be_retained_without_sink() {
+    builder().setRetainCheckMessages(false).build();
+  }
+
+  @Test
+  public void analysis_can_be_cancelled() {
+    AstScanner<Grammar> scanner = builder().build();
+
+    Thread.currentThread().interrupt();
+    try {
+      scanner.scanFiles(Arrays.asList(LINES, COMMENTS));
+      fail("expected analysis to be cancelled");
+    } catch (AnalysisException e) {
+      assertThat(e.getMessage()).isEqualTo("Analysis cancelled");
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+  @Test
+  public void files_lexed_ahead_are_analyzed_like_others() {
+    File parseError = new File("src/test/resources/checks/parse_error.mc");
+    RecordingLexers lexers = new RecordingLexers();
+    UriRecorder uris = new UriRecorder();
+    AstScanner<Grammar> scanner = builder()
+      .setReadAhead(lexers, 2)
+      .withSquidAstVisitor(uris)
+      .build();
+
+    scanner.scanFiles(Arrays.asList(LINES, parseError, COMMENTS));
+
+    assertThat(uris.uris).containsExactly(LINES.toURI(), COMMENTS.toURI());
+    assertThat(lexers.threads).isNotEmpty().doesNotContain(Thread.currentThread().getName());
+    assertThat(lexers.threads.size()).isLessThanOrEqualTo(2);
+    assertThat(sourceFiles(scanner)).hasSize(3);
+    for (SourceFile sourceFile : sourceFiles(scanner)) {
+      assertThat(sourceFile.getCheckMessages()).hasSize(2);
+    }
+  }
+
+  @Test
+  public void analysis_waiting_for_read_ahead_can_be_cancelled() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AstScanner<Grammar> scanner = builder()
+      .setReadAhead(new Supplier<Lexer>() {
+        @Override
+        public Lexer get() {
+          Uninterruptibles.awaitUninterruptibly(release);
+          return MiniCLexer.create();
+        }
+      }, 1)
+      .build();
+    final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+    Thread analysis = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          scanner.scanFiles(Arrays.asList(LINES, COMMENTS));
+        } catch (AnalysisException e) {
+          failures.add(e);
+        }
+      }
+    });
+
+    try {
+      analysis.start();
+      Uninterruptibles.sleepUninterruptibly(100, TimeUnit.MILLISECONDS);
+      analysis.interrupt();
+      analysis.join(5000);
+    } finally {
+      release.countDown();
+    }
+
+    assertThat(analysis.isAlive()).isFalse();
+    assertThat(failures).hasSize(1);
+    assertThat(failures.get(0).getMessage()).isEqualTo("Analysis cancelled");
+  }
+
+  @Test
+  public void files_are_analyzed_in_scheduled_order() {
+    RecordingSink sink = new RecordingSink();
+    RecordingScheduler scheduler = new RecordingScheduler();
+    AstScanner<Grammar> scanner = builder().withCheckMessageSink(sink).setFileScheduler(scheduler).build();
+
+    scanner.scanFiles(Arrays.asList(LINES, COMMENTS));
+
+    assertThat(sink.files).containsExactly(COMMENTS.getAbsolutePath(), LINES.getAbsolutePath());
+    assertThat(scheduler.analyzed).containsExactly(COMMENTS, LINES);
+    assertThat(scheduler.finished).isTrue();
+  }
+
+  @Test
+  public void parse_exceeding_timeout_goes_through_parse_error_path() {
+    SlowParsers parsers = new SlowParsers(COMMENTS);
+    ExceptionHandler handler = new ExceptionHandler();
+    AstScanner<Grammar> scanner = builder()
+      .setParserFactory(parsers)
+      .withSquidAstVisitor(handler)
+      .setParseTimeout(100, TimeUnit.MILLISECONDS)
+      .build();
+
+    try {
+      scanner.scanFiles(Arrays.asList(COMMENTS, LINES));
+    } finally {
+      parsers.release.countDown();
+    }
+
+    assertThat(scanner.getTimedOutFiles()).containsExactly(COMMENTS);
+    assertThat(handler.exceptions).hasSize(1);
+    assertThat(handler.exceptions.get(0)).isInstanceOf(ParseTimeoutException.class);
+    assertThat(((ParseTimeoutException) handler.exceptions.get(0)).getFile()).isEqualTo(COMMENTS);
+    assertThat(parsers.parsed).containsExactly(COMMENTS, LINES);
+    assertThat(sourceFiles(scanner)).hasSize(2);
+  }
+
+  @Test
+  public void abandoned_parser_is_not_reused() {
+    SlowParsers parsers = new SlowParsers(COMMENTS);
+    AstScanner<Grammar> scanner = builder()
+      .setParserFactory(parsers)
+      .setParseTimeout(100, TimeUnit.MILLISECONDS)
+      .build();
+
+    try {
+      scanner.scanFiles(Arrays.asList(LINES, COMMENTS, LINES, LINES));
+    } finally {
+      parsers.release.countDown();
+    }
+
+    assertThat(parsers.created).hasSize(2);
+    assertThat(parsers.created.get(0).parsed).containsExactly(LINES, COMMENTS);
+    assertThat(parsers.created.get(1).parsed).containsExactly(LINES, LINES);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void timeout_requires_parser_factory() {
+    builder().setParseTimeout(1, TimeUnit.SECONDS).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void timeout_cannot_be_rounded_to_zero() {
+    builder().setParseTimeout(10, TimeUnit.MICROSECONDS);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void read_ahead_requires_at_least_one_file() {
+    builder().setReadAhead(new RecordingLexers(), 0);
+  }
+
+  @Test
+  public void breaker_skips_files_known_to_exceed_timeout() {
+    File store = new File(temp.getRoot(), "slow-files");
+    SlowParsers slowParsers = new SlowParsers(COMMENTS);
+    try {
+      builder().setParserFactory(slowParsers).setParseTimeout(100, TimeUnit.MILLISECONDS).setParseTimeoutBreaker(new ParseTimeoutBreaker(store))
+        .build()
+        .scanFiles(Arrays.asList(COMMENTS, LINES));
+    } finally {
+      slowParsers.release.countDown();
+    }
+    assertThat(store).exists();
+
+    SlowParsers parsers = new SlowParsers(null);
+    ExceptionHandler handler = new ExceptionHandler();
+    AstScanner<Grammar> scanner = builder()
+      .setParserFactory(parsers)
+      .withSquidAstVisitor(handler)
+      .setParseTimeout(1, TimeUnit.MINUTES)
+      .setParseTimeoutBreaker(new ParseTimeoutBreaker(store))
+      .build();
+    scanner.scanFiles(Arrays.asList(COMMENTS, LINES));
+
+    assertThat(parsers.parsed).containsExactly(LINES);
+    assertThat(scanner.getTimedOutFiles()).containsExactly(COMMENTS);
+    assertThat(handler.exceptions.get(0)).isInstanceOf(ParseTimeoutException.class);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void breaker_requires_timeout() {
+    builder().setParseTimeoutBreaker(new ParseTimeoutBreaker(new File(temp.getRoot(), "slow-files"))).build();
+  }
+
+  @Test
+  public void retention_of_ast_is_reported_in_debug() {
+    Logger logger = (Logger) LoggerFactory.getLogger(AstRetentionDetector.class);
+    ListAppender<ILoggingEvent> appender = new ListAppender<ILoggingEvent>();
+    appender.start();
+    logger.addAppender(appender);
+    Level level = logger.getLevel();
+    logger.setLevel(Level.DEBUG);
+    try {
+      builder().withSquidAstVisitor(new RetainingVisitor()).setReleaseAstAfterEachFile(true).build()
+        .scanFiles(Arrays.asList(LINES, COMMENTS));
+    } finally {
+      logger.setLevel(level);
+      logger.detachAppender(appender);
+    }
+
+    assertThat(appender.list).hasSize(1);
+    assertThat(appender.list.get(0).getFormattedMessage())
+      .startsWith("Field '" + RetainingVisitor.class.getName() + ".nodes' still references the syntax tree after the analysis of ");
+  }
+
+  @Test
+  public void release_of_ast_does_not_change_results() {
+    RecordingSink sink = new RecordingSink();
+    builder().withCheckMessageSink(sink).setReleaseAstAfterEachFile(true).build().scanFiles(Arrays.asList(LINES, COMMENTS));
+
+    assertThat(sink.messages).hasSize(4);
+  }
+
+  @Test
+  public void files_are_spilled_once_analyzed() throws Exception {
+    SourceCodeSpillStore store = new SourceCodeSpillStore(temp.getRoot());
+    try {
+      AstScanner<Grammar> scanner = builder().setSpillStore(store).build();
+      scanner.scanFiles(Arrays.asList(LINES, COMMENTS));
+
+      for (SourceFile sourceFile : sourceFiles(scanner)) {
+        assertThat(sourceFile.isSpilled()).isTrue();
+        assertThat(sourceFile.getCheckMessages()).hasSize(2);
+        assertThat(sourceFile.isSpilled()).isFalse();
+      }
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void should_dispatch_each_comment_once_to_all_comment_visitors() {
+    final List<Integer> contentsRequests = new ArrayList<Integer>();
+    CommentRecorder first = new CommentRecorder();
+    CommentRecorder second = new CommentRecorder();
+    builder()
+      .setCommentAnalyser(new MiniCCommentAnalyser() {
+        @Override
+        public String getContents(String comment) {
+          contentsRequests.add(1);
+          return super.getContents(comment);
+        }
+      })
+      .withSquidAstVisitor(first)
+      .withSquidAstVisitor(second)
+      .build()
+      .scanFile(COMMENTS);
+
+    assertThat(first.lines).containsExactly(3, 8, 10);
+    assertThat(second.lines).isEqualTo(first.lines);
+    assertThat(second.contentLines).isEqualTo(first.contentLines).startsWith(" line 1", "   line 2");
+    assertThat(contentsRequests).hasSize(3);
+    assertThat(first.headers).isEqualTo(0);
+  }
+
+  @Test
+  public void should_report_metrics() {
+    InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+    Instrumentation.setRegistry(registry);
+    try {
+      AstScanner<Grammar> scanner = builder().build();
+      scanner.scanFiles(Arrays.asList(LINES, COMMENTS, new File("src/test/resources/checks/parse_error.mc")));
+      sourceFiles(scanner);
+    } finally {
+      Instrumentation.reset();
+    }
+
+    assertThat(registry.counter("squid.scanner.files").getCount()).isEqualTo(3);
+    assertThat(registry.counter("squid.scanner.parseErrors").getCount()).isEqualTo(1);
+    assertThat(registry.counter("squid.scanner.astNodes").getCount()).isGreaterThan(registry.counter("squid.scanner.tokens").getCount());
+    assertThat(registry.counter("squid.scanner.tokens").getCount()).isGreaterThan(0);
+    assertThat(registry.counter("squid.scanner.issues." + FileCheck.class.getCanonicalName()).getCount()).isEqualTo(6);
+    assertThat(registry.timer("squid.scanner.parse").getCount()).isEqualTo(3);
+    assertThat(registry.timer("squid.scanner.visit").getCount()).isEqualTo(3);
+    assertThat(registry.timer("squid.index.search").getCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_report_metrics_into_the_registry_of_the_scanner() {
+    InMemoryMetricsRegistry global = new InMemoryMetricsRegistry();
+    InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+    Instrumentation.setRegistry(global);
+    try {
+      AstScanner<Grammar> scanner = builder()
+        .setMetricsRegistry(registry)
+        .withMetrics(MiniCMetrics.values())
+        .withSquidAstVisitor(new CacheRecorder())
+        .build();
+      scanner.scanFiles(Arrays.asList(LINES, COMMENTS));
+      sourceFiles(scanner);
+    } finally {
+      Instrumentation.reset();
+    }
+
+    assertThat(registry.timer("squid.index.search").getCount()).isEqualTo(1);
+    assertThat(registry.timer("squid.decorator.decorate").getCount()).isEqualTo(1);
+    assertThat(registry.counter("xpath.selections").getCount()).isEqualTo(4);
+    assertThat(registry.counter("squid.xpath.cache.hits").getCount()).isEqualTo(2);
+    assertThat(registry.counter("squid.xpath.cache.misses").getCount()).isEqualTo(2);
+    assertThat(registry.getGauges().get("squid.xpath.cache.hitRate").getValue()).isEqualTo(0.5);
+    assertThat(registry.getGauges().get("squid.checks.namingCache.hitRate").getValue()).isEqualTo(0.75);
+    assertThat(registry.getGauges()).containsKeys("squid.commentRegex.cache.hitRate", "squid.checkMessage.formatCache.hitRate");
+    assertThat(global.getCounters()).isEmpty();
+    assertThat(global.getTimers()).isEmpty();
+    assertThat(global.getGauges()).isEmpty();
+  }
+
+  @Test
+  public void should_add_up_cache_metrics_of_scanners_sharing_a_registry() {
+    InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+    for (int i = 0; i < 2; i++) {
+      AstScanner.<Grammar>builder(new SquidAstVisitorContextImpl<Grammar>(new SourceProject("project")))
+        .setBaseParser(MiniCParser.create())
+        .setCommentAnalyser(new MiniCCommentAnalyser())
+        .setFilesMetric(MiniCMetrics.FILES)
+        .setMetricsRegistry(registry)
+        .withSquidAstVisitor(new CacheRecorder())
+        .build()
+        .scanFile(LINES);
+    }
+
+    assertThat(registry.counter("squid.xpath.cache.hits").getCount()).isEqualTo(2);
+    assertThat(registry.counter("squid.checks.namingCache.hits").getCount()).isEqualTo(2);
+    assertThat(registry.counter("squid.checks.namingCache.misses").getCount()).isEqualTo(2);
+    assertThat(registry.getGauges().get("squid.checks.namingCache.hitRate").getValue()).isEqualTo(0.5);
+  }
+
+  @Test
+  public void finished_scanner_should_not_be_retained_by_registry() {
+    InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+    SquidAstVisitorContextImpl<Grammar> scannerContext = new SquidAstVisitorContextImpl<Grammar>(new SourceProject("project"));
+    AstScanner<Grammar> scanner = AstScanner.<Grammar>builder(scannerContext)
+      .setBaseParser(MiniCParser.create())
+      .setCommentAnalyser(new MiniCCommentAnalyser())
+      .setFilesMetric(MiniCMetrics.FILES)
+      .setMetricsRegistry(registry)
+      .withSquidAstVisitor(new CacheRecorder())
+      .build();
+    scanner.scanFile(LINES);
+    WeakReference<AstScanner<Grammar>> scannerReference = new WeakReference<AstScanner<Grammar>>(scanner);
+    WeakReference<SourceProject> projectReference = new WeakReference<SourceProject>(scannerContext.getProject());
+    scanner = null;
+    scannerContext = null;
+
+    for (int i = 0; i < 50 && (scannerReference.get() != null || projectReference.get() != null); i++) {
+      System.gc();
+      Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+    }
+
+    assertThat(scannerReference.get()).isNull();
+    assertThat(projectReference.get()).isNull();
+    assertThat(registry.getGauges().get("squid.xpath.cache.hitRate").getValue()).isEqualTo(0.5);
+  }
+
+  private AstScanner.Builder<Grammar> builder() {
+    return AstScanner.<Grammar>builder(context)
+      .setBaseParser(MiniCParser.create())
+      .setCommentAnalyser(new MiniCCommentAnalyser())
+      .setFilesMetric(MiniCMetrics.FILES)
+      .withSquidAstVisitor(new FileCheck());
+  }
+
+  private static Collection<SourceFile> sourceFiles(AstScanner<Grammar> scanner) {
+    List<SourceFile> sourceFiles = new ArrayList<SourceFile>();
+    for (Object sourceFile : scanner.getIndex().search(new QueryByType(SourceFile.class))) {
+      sourceFiles.add((SourceFile) sourceFile);
+    }
+    return sourceFiles;
+  }
+
+  private static class FileCheck extends SquidCheck<Grammar> {
+
+    @Override
+    public void visitFile(@Nullable AstNode astNode) {
+      getContext().createFileViolation(this, "file issue");
+      getContext().createLineViolation(this, "line issue", 1);
+    }
+
+  }
+
+  /**
+   * Selects the same XPath query and matches the same name twice on each file, reporting into the registry of the context.
+   */
+  private static class CacheRecorder extends SquidAstVisitor<Grammar> {
+
+    private static final String XPATH = "//STATEMENT";
+
+    @Override
+    public void init() {
+      ((SquidAstVisitorContextImpl<Grammar>) getContext()).getXPathEngine().register(XPATH);
+    }
+
+    @Override
+    public void visitFile(@Nullable AstNode astNode) {
+      for (int i = 0; i < 2; i++) {
+        ((SquidAstVisitorContextImpl<Grammar>) getContext()).getXPathEngine().selectNodes(XPATH, astNode);
+        getContext().getMetricsRegistry().counter("xpath.selections").increment();
+        ((SquidAstVisitorContextImpl<Grammar>) getContext()).getNameVerdictCache("[a-z]+", 10).matches("name");
+      }
+    }
+
+  }
+
+  private static class CommentRecorder extends SquidAstVisitor<Grammar> implements CommentVisitor {
+
+    private final List<Integer> lines = new ArrayList<Integer>();
+    private final List<String> contentLines = new ArrayList<String>();
+    private int headers;
+
+    @Override
+    public void visitComment(Comment comment) {
+      lines.add(comment.getLine());
+      contentLines.addAll(comment.getContentLines());
+      if (comment.isHeader()) {
+        headers++;
+      }
+    }
+
+  }
+
+  private static class RetainingVisitor extends SquidAstVisitor<Grammar> {
+
+    private final List<AstNode> nodes = new ArrayList<AstNode>();
+    private AstNode released;
+
+    @Override
+    public void visitFile(@Nullable AstNode astNode) {
+      nodes.add(astNode);
+      released = astNode;
+    }
+
+    @Override
+    public void leaveFile(@Nullable AstNode astNode) {
+      released = null;
+    }
+
+  }
+
+  private static class RecordingSink implements CheckMessageSink {
+
+    private final List<String> files = new ArrayList<String>();
+    private final List<CheckMessage> messages = new ArrayList<CheckMessage>();
+
+    @Override
+    public void accept(SourceFile sourceFile, Collection<CheckMessage> messages) {
+      files.add(sourceFile.getKey());
+      this.messages.addAll(messages);
+    }
+
+  }
+
+  private static class RecordingLexers implements Supplier<Lexer> {
+
+    private final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+
+    @Override
+    public Lexer get() {
+      threads.add(Thread.currentThread().getName());
+      return MiniCLexer.create();
+    }
+
+  }
+
+  private static class UriRecorder extends SquidAstVisitor<Grammar> {
+
+    private final List<URI> uris = new ArrayList<URI>();
+
+    @Override
+    public void visitFile(@Nullable AstNode astNode) {
+      if (astNode != null) {
+        uris.add(astNode.getToken().getURI());
+      }
+    }
+
+  }
+
+  private static class SlowParsers implements Supplier<Parser<Grammar>> {
+
+    private final Grammar grammar = MiniCParser.create().getGrammar();
+    private final File slowFile;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<File> parsed = Collections.synchronizedList(new ArrayList<File>());
+    private final List<SlowParser> created = new ArrayList<SlowParser>();
+
+    SlowParsers(@Nullable File slowFile) {
+      this.slowFile = slowFile;
+    }
+
+    @Override
+    public Parser<Grammar> get() {
+      SlowParser parser = new SlowParser(this);
+      created.add(parser);
+      return parser;
+    }
+
+  }
+
+  private static class SlowParser extends Parser<Grammar> {
+
+    private final Parser<Grammar> parser = MiniCParser.create();
+    private final SlowParsers parsers;
+    private final List<File> parsed = Collections.synchronizedList(new ArrayList<File>());
+
+    SlowParser(SlowParsers parsers) {
+      super(parsers.grammar);
+      this.parsers = parsers;
+    }
+
+    @Override
+    public AstNode parse(File file) {
+      parsed.add(file);
+      parsers.parsed.add(file);
+      if (file.equals(parsers.slowFile)) {
+        // like SSLR parsers, does not react to interruption
+        Uninterruptibles.awaitUninterruptibly(parsers.release);
+      }
+      return parser.parse(file);
+    }
+
+  }
+
+  private static class ExceptionHandler extends SquidAstVisitor<Grammar> implements AstScannerExceptionHandler {
+
+    private final List<Exception> exceptions = new ArrayList<Exception>();
+
+    @Override
+    public void processException(Exception e) {
+      exceptions.add(e);
+    }
+
+    @Override
+    public void processRecognitionException(RecognitionException e) {
+      exceptions.add(e);
+    }
+
+  }
+
+  private static class RecordingScheduler implements FileScheduler {
+
+    private final List<File> analyzed = new ArrayList<File>();
+    private boolean finished;
+
+    @Override
+    public List<File> schedule(Collection<File> files) {
+      List<File> reversed = new ArrayList<File>(files);
+      Collections.reverse(reversed);
+      return reversed;
+    }
+
+    @Override
+    public void fileAnalyzed(File file, long elapsedNanos) {
+      assertThat(elapsedNanos).isPositive();
+      analyzed.add(file);
+    }
+
+    @Override
+    public void scanFinished() {
+      finished = true;
+    }
+
+  }
+
+  private static class MiniCCommentAnalyser extends CommentAnalyser {
+
+    @Override
+    public boolean isBlank(String line) {
+      return line.trim().isEmpty();
+    }
+
+    @Override
+    public String getContents(String comment) {
+      return comment.substring(2, comment.length() - 2);
+    }
+
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.regex.Pattern;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CommentRegexEngineTest {
+
+  private static final String[] REGULAR_EXPRESSIONS = {
+    ".*TODO.*",
+    "(?i).*TODO.*",
+    "(?i).*fixme\\b.*",
+    "//\\s*+@author.*",
+    "/\\*.*\\*/",
+    ".*colou?r.*",
+    ".*(foo|bar)baz.*",
+    ".*[Tt]emp.*",
+    "(?s).*hack.*",
+    ".*a+b.*",
+    ".*x{2}y.*",
+    ".*damn|.*crap.*",
+    "\\Q.*\\E"};
+
+  private static final String[] COMMENTS = {
+    "// TODO fix me",
+    "/* todo */",
+    "/* FIXME now */",
+    "/* fixmelater */",
+    "// @author someone",
+    "//@author",
+    "/* nothing to see */",
+    "// color",
+    "// colour",
+    "// colr",
+    "// barbaz",
+    "// baz",
+    "// Temporary",
+    "// HACK hack",
+    "// aab",
+    "// xxy",
+    "// xy",
+    "damn",
+    "// crap",
+    ".*"};
+
+  private final CommentRegexEngine engine = new CommentRegexEngine();
+
+  @Test
+  public void should_match_like_patterns() {
+    for (String regex : REGULAR_EXPRESSIONS) {
+      engine.register(regex);
+    }
+    for (String comment : COMMENTS) {
+      Token token = comment(comment);
+      for (String regex : REGULAR_EXPRESSIONS) {
+        boolean expected = Pattern.compile(regex, Pattern.DOTALL).matcher(comment).matches();
+        assertThat(engine.matches(regex, token)).as(regex + " on " + comment).isEqualTo(expected);
+      }
+    }
+    assertThat(engine.getFilteredMatches()).isGreaterThan(0);
+    assertThat(engine.getFullMatches() + engine.getFilteredMatches()).isEqualTo(REGULAR_EXPRESSIONS.length * COMMENTS.length);
+  }
+
+  @Test
+  public void should_match_each_comment_once_per_regular_expression() {
+    engine.register(".*TODO.*");
+    engine.register(".*TODO.*");
+    Token token = comment("// TODO");
+
+    assertThat(engine.matches(".*TODO.*", token)).isTrue();
+    assertThat(engine.matches(".*TODO.*", token)).isTrue();
+    assertThat(engine.getFullMatches()).isEqualTo(1);
+
+    assertThat(engine.matches(".*TODO.*", comment("// nothing"))).isFalse();
+    assertThat(engine.getFullMatches()).isEqualTo(1);
+    assertThat(engine.getFilteredMatches()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void should_fail_on_unregistered_regular_expression() {
+    engine.matches(".*", comment("//"));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void should_fail_on_invalid_regular_expression() {
+    engine.register("*");
+  }
+
+  @Test
+  public void should_extract_required_literal() {
+    assertThat(literal(".*TODO.*")).isEqualTo("TODO");
+    assertThat(literal("(?i).*TODO.*")).isEqualTo("todo");
+    assertThat(literal("//\\s*+@author.*")).isEqualTo("@author");
+    assertThat(literal(".*colou?r.*")).isEqualTo("colo");
+    assertThat(literal(".*(foo|bar)baz.*")).isEqualTo("baz");
+    assertThat(literal(".*x{2}y.*")).isEqualTo("y");
+    assertThat(literal("/\\*.*\\*/")).isEqualTo("/*");
+    assertThat(literal(".*damn|.*crap.*")).isNull();
+    assertThat(literal("(?s).*hack.*")).isNull();
+    assertThat(literal("\\Q.*\\E")).isNull();
+    assertThat(literal(".*")).isNull();
+  }
+
+  private static String literal(String regex) {
+    CommentRegexEngine.RequiredLiteral literal = CommentRegexEngine.RequiredLiteral.of(regex);
+    return literal == null ? null : literal.text;
+  }
+
+  private static Token comment(String value) {
+    return Token.builder()
+        .setType(GenericTokenType.COMMENT)
+        .setValueAndOriginalValue(value)
+        .setURI(URI.create("tests://unittest"))
+        .setLine(1)
+        .setColumn(0)
+        .build();
+  }
+
+}
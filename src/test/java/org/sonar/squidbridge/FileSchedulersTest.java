@@ -0,0 +1,178 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileSchedulersTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void input_order() throws IOException {
+    File small = file("small", 1);
+    File big = file("big", 100);
+
+    assertThat(FileSchedulers.inputOrder().schedule(Arrays.asList(small, big))).containsExactly(small, big);
+  }
+
+  @Test
+  public void largest_first() throws IOException {
+    File small = file("small", 1);
+    File medium = file("medium", 10);
+    File other = file("other", 10);
+    File big = file("big", 100);
+
+    List<File> files = FileSchedulers.largestFirst().schedule(Arrays.asList(small, medium, big, other));
+
+    assertThat(files).containsExactly(big, medium, other, small);
+  }
+
+  @Test
+  public void historical_cost() throws IOException {
+    File small = file("small", 1);
+    File big = file("big", 100);
+    File history = new File(temp.getRoot(), "history");
+
+    FileScheduler firstRun = FileSchedulers.historicalCost(history);
+    assertThat(firstRun.schedule(Arrays.asList(small, big))).containsExactly(big, small);
+    firstRun.fileAnalyzed(big, TimeUnit.MILLISECONDS.toNanos(1));
+    firstRun.fileAnalyzed(small, TimeUnit.SECONDS.toNanos(1));
+    firstRun.scanFinished();
+    assertThat(history).exists();
+
+    File unknown = file("unknown", 1000);
+    FileScheduler secondRun = FileSchedulers.historicalCost(history);
+    assertThat(secondRun.schedule(Arrays.asList(big, unknown, small))).containsExactly(unknown, small, big);
+  }
+
+  @Test
+  public void historical_cost_keeps_files_not_analyzed() throws IOException {
+    File small = file("small", 1);
+    File big = file("big", 100);
+    File history = new File(temp.getRoot(), "history");
+
+    FileScheduler firstRun = FileSchedulers.historicalCost(history);
+    firstRun.schedule(Arrays.asList(small, big));
+    firstRun.fileAnalyzed(big, TimeUnit.MILLISECONDS.toNanos(1));
+    firstRun.fileAnalyzed(small, TimeUnit.SECONDS.toNanos(1));
+    firstRun.scanFinished();
+
+    File other = file("other", 10);
+    FileScheduler secondRun = FileSchedulers.historicalCost(history);
+    secondRun.schedule(Arrays.asList(big, other));
+    secondRun.fileAnalyzed(big, TimeUnit.MILLISECONDS.toNanos(2));
+    secondRun.fileAnalyzed(other, TimeUnit.MILLISECONDS.toNanos(3));
+    secondRun.scanFinished();
+
+    assertThat(FileSchedulers.historicalCost(history).schedule(Arrays.asList(big, other, small))).containsExactly(small, other, big);
+  }
+
+  @Test
+  public void historical_cost_is_not_written_after_single_file_scans() throws IOException {
+    File small = file("small", 1);
+    File big = file("big", 100);
+    File history = new File(temp.getRoot(), "history");
+
+    FileScheduler scheduler = FileSchedulers.historicalCost(history);
+    scheduler.schedule(Arrays.asList(big));
+    scheduler.fileAnalyzed(big, TimeUnit.MILLISECONDS.toNanos(1));
+    scheduler.scanFinished();
+    scheduler.schedule(Arrays.asList(small));
+    scheduler.fileAnalyzed(small, TimeUnit.SECONDS.toNanos(1));
+    scheduler.scanFinished();
+    assertThat(history).doesNotExist();
+    assertThat(scheduler.schedule(Arrays.asList(big, small))).containsExactly(small, big);
+
+    scheduler.fileAnalyzed(small, TimeUnit.SECONDS.toNanos(1));
+    scheduler.fileAnalyzed(big, TimeUnit.MILLISECONDS.toNanos(1));
+    scheduler.scanFinished();
+    assertThat(history).exists();
+  }
+
+  @Test
+  public void historical_cost_drops_deleted_files() throws IOException {
+    File small = file("small", 1);
+    File big = file("big", 100);
+    File deleted = file("deleted", 1);
+    File history = new File(temp.getRoot(), "history");
+
+    FileScheduler firstRun = FileSchedulers.historicalCost(history);
+    firstRun.schedule(Arrays.asList(small, big, deleted));
+    firstRun.fileAnalyzed(small, TimeUnit.SECONDS.toNanos(1));
+    firstRun.fileAnalyzed(big, TimeUnit.MILLISECONDS.toNanos(1));
+    firstRun.fileAnalyzed(deleted, TimeUnit.MILLISECONDS.toNanos(1));
+    firstRun.scanFinished();
+    assertThat(deleted.delete()).isTrue();
+
+    FileScheduler secondRun = FileSchedulers.historicalCost(history);
+    secondRun.schedule(Arrays.asList(small, big));
+    secondRun.fileAnalyzed(small, TimeUnit.SECONDS.toNanos(1));
+    secondRun.fileAnalyzed(big, TimeUnit.MILLISECONDS.toNanos(1));
+    secondRun.scanFinished();
+
+    assertThat(Files.toString(history, Charsets.UTF_8)).contains(small.getAbsolutePath()).doesNotContain(deleted.getAbsolutePath());
+  }
+
+  @Test
+  public void historical_cost_is_refreshed_between_scans() throws IOException {
+    File small = file("small", 1);
+    File big = file("big", 100);
+    File history = new File(temp.getRoot(), "history");
+
+    FileScheduler scheduler = FileSchedulers.historicalCost(history);
+    assertThat(scheduler.schedule(Arrays.asList(small, big))).containsExactly(big, small);
+    scheduler.fileAnalyzed(big, TimeUnit.MILLISECONDS.toNanos(1));
+    scheduler.fileAnalyzed(small, TimeUnit.SECONDS.toNanos(1));
+    scheduler.scanFinished();
+
+    assertThat(scheduler.schedule(Arrays.asList(small, big))).containsExactly(small, big);
+  }
+
+  @Test
+  public void corrupted_history_is_ignored() throws IOException {
+    File small = file("small", 1);
+    File big = file("big", 100);
+    File history = new File(temp.getRoot(), "history");
+    Files.write("not a number\t" + small.getAbsolutePath(), history, Charsets.UTF_8);
+
+    assertThat(FileSchedulers.historicalCost(history).schedule(Arrays.asList(small, big))).containsExactly(big, small);
+  }
+
+  private File file(String name, int size) throws IOException {
+    File file = temp.newFile(name);
+    Files.write(new byte[size], file);
+    return file;
+  }
+
+}
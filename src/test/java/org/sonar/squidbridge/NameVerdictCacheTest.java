@@ -0,0 +1,63 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class NameVerdictCacheTest {
+
+  @Test
+  public void should_cache_verdicts() {
+    NameVerdictCache cache = new NameVerdictCache("[a-z]+", 10);
+
+    assertThat(cache.matches("foo")).isTrue();
+    assertThat(cache.matches("Foo")).isFalse();
+    assertThat(cache.matches("foo")).isTrue();
+    assertThat(cache.matches("Foo")).isFalse();
+
+    assertThat(cache.getMisses()).isEqualTo(2);
+    assertThat(cache.getHits()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_keep_caching_once_full() {
+    NameVerdictCache cache = new NameVerdictCache("[a-z]+", 2);
+    cache.matches("a");
+    cache.matches("b");
+    cache.matches("c");
+    cache.matches("c");
+
+    assertThat(cache.getMisses()).isEqualTo(3);
+    assertThat(cache.getHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_not_cache_verdicts() {
+    NameVerdictCache cache = new NameVerdictCache("[a-z]+", 0);
+    assertThat(cache.matches("foo")).isTrue();
+    assertThat(cache.matches("foo")).isTrue();
+
+    assertThat(cache.getMisses()).isEqualTo(2);
+    assertThat(cache.getHits()).isEqualTo(0);
+  }
+
+}
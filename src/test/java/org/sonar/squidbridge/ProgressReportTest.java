@@ -27,7 +27,9 @@ import org.mockito.ArgumentCaptor;
 import org.slf4j.Logger;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.atLeast;
@@ -91,6 +93,102 @@ public class ProgressReportTest {
     
   }
 
+  @Test(timeout = 5000)
+  public void should_publish_statistics() throws Exception {
+    Logger logger = mock(Logger.class);
+    ProgressReport report = new ProgressReport(ProgressReport.class.getName(), 100, logger, "analyzed");
+    final List<ProgressStatistics> published = new CopyOnWriteArrayList<ProgressStatistics>();
+    report.addListener(new ProgressListener() {
+      @Override
+      public void progress(ProgressStatistics statistics) {
+        published.add(statistics);
+      }
+    });
+
+    File fast = new File("fast.mc");
+    File slow = new File("slow.mc");
+    report.start(ImmutableList.of(fast, slow, new File("unanalyzed.mc")));
+    report.nextFile(10);
+    Thread.sleep(20);
+    report.nextFile(30);
+
+    ProgressStatistics statistics = report.getStatistics();
+    assertThat(statistics.getTotalFiles()).isEqualTo(3);
+    assertThat(statistics.getAnalyzedFiles()).isEqualTo(2);
+    assertThat(statistics.getAnalyzedLines()).isEqualTo(40);
+    assertThat(statistics.getSlowestFile()).isEqualTo(slow);
+    assertThat(statistics.getSlowestFileMillis()).isGreaterThanOrEqualTo(20);
+    assertThat(statistics.getP99Millis()).isGreaterThanOrEqualTo(statistics.getSlowestFileMillis());
+    assertThat(statistics.getP50Millis()).isLessThanOrEqualTo(statistics.getP95Millis());
+    assertThat(statistics.getFilesPerSecond()).isGreaterThan(0);
+    assertThat(statistics.getLinesPerSecond()).isGreaterThan(statistics.getFilesPerSecond());
+    assertThat(statistics.getEstimatedRemainingMillis()).isGreaterThan(0);
+
+    report.stop();
+    report.join();
+    ProgressStatistics last = published.get(published.size() - 1);
+    assertThat(last.getAnalyzedFiles()).isEqualTo(2);
+    assertThat(last.toString()).startsWith("2/3 files");
+  }
+
+  @Test(timeout = 5000)
+  public void should_report_files_completing_out_of_order() throws Exception {
+    Logger logger = mock(Logger.class);
+    ProgressReport report = new ProgressReport(ProgressReport.class.getName(), 60_000, logger, "analyzed");
+    File first = new File("first.mc");
+    File second = new File("second.mc");
+    File third = new File("third.mc");
+
+    report.start(3);
+    report.fileStarted(first);
+    Thread.sleep(2);
+    report.fileStarted(second);
+    report.fileStarted(third);
+    report.fileFinished(second, 1);
+    report.fileFinished(first, 1);
+    report.run();
+
+    verify(logger).info("2/3 files analyzed, current file: " + third.getAbsolutePath());
+    report.stop();
+    report.join();
+  }
+
+  @Test(timeout = 5000)
+  public void should_track_files_from_many_threads() throws Exception {
+    final ProgressReport report = new ProgressReport(ProgressReport.class.getName(), 10, mock(Logger.class), "analyzed");
+    final int threads = 8;
+    final int filesPerThread = 250;
+    report.start(threads * filesPerThread);
+
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      final int worker = t;
+      workers.add(new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < filesPerThread; i++) {
+            File file = new File("file-" + worker + "-" + i + ".mc");
+            report.fileStarted(file);
+            report.fileFinished(file, 2);
+          }
+        }
+      });
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    report.stop();
+    report.join();
+
+    ProgressStatistics statistics = report.getStatistics();
+    assertThat(statistics.getAnalyzedFiles()).isEqualTo(threads * filesPerThread);
+    assertThat(statistics.getAnalyzedLines()).isEqualTo(2L * threads * filesPerThread);
+    assertThat(statistics.getEstimatedRemainingMillis()).isEqualTo(0);
+  }
+
   private static void waitForMessage(Logger logger) throws InterruptedException {
     synchronized (logger) {
       logger.wait();
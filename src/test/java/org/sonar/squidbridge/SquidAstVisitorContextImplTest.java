@@ -0,0 +1,108 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.sonar.sslr.api.Grammar;
+import org.junit.Test;
+import org.sonar.squidbridge.api.CheckMessage;
+import org.sonar.squidbridge.api.SourceClass;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourceFunction;
+import org.sonar.squidbridge.api.SourceProject;
+import org.sonar.squidbridge.measures.Metric;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SquidAstVisitorContextImplTest {
+
+  private final SquidAstVisitorContextImpl<Grammar> context = new SquidAstVisitorContextImpl<Grammar>(new SourceProject("project"));
+
+  @Test
+  public void should_log_on_current_file_from_nested_source_code() {
+    context.setFile(new File("file.mc"), Metric.FILES);
+    SourceFile sourceFile = (SourceFile) context.peekSourceCode();
+    context.addSourceCode(new SourceClass("class"));
+    context.addSourceCode(new SourceFunction("function"));
+
+    context.createLineViolation(null, "line", 3);
+    context.log(new CheckMessage(null, "logged"));
+
+    assertThat(sourceFile.getCheckMessages()).hasSize(2);
+    for (CheckMessage message : sourceFile.getCheckMessages()) {
+      assertThat(message.getSourceCode()).isSameAs(sourceFile);
+    }
+  }
+
+  @Test
+  public void should_track_file_of_next_setFile() {
+    context.setFile(new File("first.mc"), Metric.FILES);
+    SourceFile first = (SourceFile) context.peekSourceCode();
+    context.setFile(new File("second.mc"), Metric.FILES);
+    SourceFile second = (SourceFile) context.peekSourceCode();
+
+    context.createFileViolation(null, "message");
+
+    assertThat(first.hasCheckMessages()).isFalse();
+    assertThat(second.getCheckMessages()).hasSize(1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void should_fail_to_log_outside_of_a_file() {
+    context.setFile(new File("file.mc"), Metric.FILES);
+    context.popTillSourceProject();
+
+    context.createFileViolation(null, "message");
+  }
+
+  @Test
+  public void should_aggregate_file_measures_again_once_changed() {
+    context.aggregateFileMeasure(Metric.COMPLEXITY);
+    context.aggregateFileMeasure(Metric.STATEMENTS);
+    context.setFile(new File("file.mc"), Metric.FILES);
+    context.peekSourceCode().setMeasure(Metric.COMPLEXITY, 1);
+    SourceClass sourceClass = new SourceClass("class");
+    context.addSourceCode(sourceClass);
+    sourceClass.setMeasure(Metric.STATEMENTS, 3);
+    SourceFunction function = new SourceFunction("function");
+    context.addSourceCode(function);
+    function.setMeasure(Metric.COMPLEXITY, 2);
+    function.setMeasure(Metric.STATEMENTS, 4);
+
+    assertThat(context.getAggregatedFileMeasure(Metric.COMPLEXITY)).isEqualTo(3);
+    assertThat(context.getAggregatedFileMeasure(Metric.STATEMENTS)).isEqualTo(7);
+    function.setMeasure(Metric.COMPLEXITY, 10);
+    assertThat(context.getAggregatedFileMeasure(Metric.COMPLEXITY)).isEqualTo(11);
+    context.addSourceCode(new SourceFunction("other"));
+    context.peekSourceCode().setMeasure(Metric.STATEMENTS, 1);
+    assertThat(context.getAggregatedFileMeasure(Metric.STATEMENTS)).isEqualTo(8);
+
+    context.setFile(new File("other.mc"), Metric.FILES);
+    assertThat(context.getAggregatedFileMeasure(Metric.COMPLEXITY)).isEqualTo(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_fail_to_aggregate_undeclared_metric() {
+    context.setFile(new File("file.mc"), Metric.FILES);
+    context.getAggregatedFileMeasure(Metric.COMPLEXITY);
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge;
+
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.test.minic.MiniCParser;
+import com.sonar.sslr.xpath.api.AstNodeXPathQuery;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class XPathEngineTest {
+
+  private static final String[] QUERIES = {
+    "//COMPILATION_UNIT",
+    "//VARIABLE_DEFINITION",
+    "//STATEMENT",
+    "//IDENTIFIER",
+    "//FUNCTION_DEFINITION//RETURN_STATEMENT",
+    "count(//VARIABLE_DEFINITION) > 0",
+    "/COMPILATION_UNIT/FUNCTION_DEFINITION"};
+
+  private final XPathEngine engine = new XPathEngine();
+  private final AstNode fileNode = MiniCParser.parseString("int answer = 42; void myFunction() { int question = 0; return answer; }");
+
+  @Test
+  public void should_return_same_results_as_xpath_queries() {
+    for (String xpath : QUERIES) {
+      engine.register(xpath);
+    }
+    for (String xpath : QUERIES) {
+      List<Object> expected = AstNodeXPathQuery.create(xpath).selectNodes(fileNode);
+      assertThat(engine.selectNodes(xpath, fileNode)).as(xpath).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void should_evaluate_each_query_once_per_file() {
+    engine.register("//STATEMENT");
+    engine.register("//STATEMENT");
+    engine.register("count(//STATEMENT) > 0");
+
+    List<Object> statements = engine.selectNodes("//STATEMENT", fileNode);
+    assertThat(statements).isNotEmpty();
+    assertThat(engine.selectNodes("//STATEMENT", fileNode)).isSameAs(statements);
+    assertThat(engine.selectNodes("count(//STATEMENT) > 0", fileNode)).containsOnly(true);
+
+    AstNode otherFileNode = MiniCParser.parseString("int a;");
+    assertThat(engine.selectNodes("//STATEMENT", otherFileNode)).isEmpty();
+
+    assertThat(engine.getElapsedNanosByQuery().keySet()).containsOnly("//STATEMENT", "count(//STATEMENT) > 0");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void should_fail_on_unregistered_query() {
+    engine.selectNodes("//STATEMENT", fileNode);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void should_fail_on_invalid_query() {
+    engine.register("//");
+  }
+
+}
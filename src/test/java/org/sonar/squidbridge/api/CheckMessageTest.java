@@ -21,7 +21,16 @@ package org.sonar.squidbridge.api;
 
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class CheckMessageTest {
@@ -38,4 +47,59 @@ public class CheckMessageTest {
                                                                            // class
     assertThat(message.formatDefaultMessage(), is("public void main(){."));
   }
+
+  @Test
+  public void testFormattedMessageIsComputedOnce() {
+    CheckMessage message = new CheckMessage(null, "The line length is greater than {0,number,integer} authorized.", 80);
+    String text = message.formatDefaultMessage();
+    assertThat(text, is("The line length is greater than 80 authorized."));
+    assertThat(message.formatDefaultMessage(), sameInstance(text));
+    assertThat(message.getText(null), sameInstance(text));
+  }
+
+  @Test
+  public void testSameTemplateWithDifferentArguments() {
+    String template = "Value is {0}.";
+    assertThat(new CheckMessage(null, template, "a").formatDefaultMessage(), is("Value is a."));
+    assertThat(new CheckMessage(null, template, "b").formatDefaultMessage(), is("Value is b."));
+  }
+
+  @Test
+  public void testTemplatesAreStillCachedOnceCacheIsFull() {
+    for (int i = 0; i < 1500; i++) {
+      new CheckMessage(null, "One-off template " + i + " {0}.", i).formatDefaultMessage();
+    }
+    String template = "Recurring template {0}.";
+    assertThat(new CheckMessage(null, template, 1).formatDefaultMessage(), is("Recurring template 1."));
+    assertThat(CheckMessage.isMessageFormatCached(template), is(true));
+  }
+
+  @Test
+  public void testCachedTemplatesAreUsedConcurrently() throws Exception {
+    final String template = "Value {0,number,integer} of {1}.";
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = Lists.newArrayList();
+      for (int thread = 0; thread < 4; thread++) {
+        final String name = "thread" + thread;
+        results.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            for (int i = 0; i < 1000; i++) {
+              if (!new CheckMessage(null, template, i, name).formatDefaultMessage().equals("Value " + i + " of " + name + ".")) {
+                return false;
+              }
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertThat(result.get(), is(true));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
 }
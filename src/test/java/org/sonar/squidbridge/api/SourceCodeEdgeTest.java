@@ -0,0 +1,91 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.api;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceCodeEdgeTest {
+
+  private final SourceCode packageA = new SourcePackage("a");
+  private final SourceCode packageB = new SourcePackage("b");
+  private final SourceCode classA1 = new SourceClass("a.A1");
+  private final SourceCode classA2 = new SourceClass("a.A2");
+  private final SourceCode classB1 = new SourceClass("b.B1");
+  private final SourceCode classB2 = new SourceClass("b.B2");
+
+  @Test
+  public void edge_without_root_edge() {
+    SourceCodeEdge edge = new SourceCodeEdge(packageA, packageB, SourceCodeEdgeUsage.USES);
+
+    assertThat(edge.getWeight()).isZero();
+    assertThat(edge.getNumberOfRootFromNodes()).isZero();
+    assertThat(edge.getRootEdges()).isEmpty();
+    assertThat(edge.hasAnEdgeFromRootNode(classA1)).isFalse();
+    assertThat(edge.hasAnEdgeToRootNode(classB1)).isFalse();
+  }
+
+  @Test
+  public void edge_with_one_root_edge() {
+    SourceCodeEdge root = new SourceCodeEdge(classA1, classB1, SourceCodeEdgeUsage.USES);
+    SourceCodeEdge edge = new SourceCodeEdge(packageA, packageB, SourceCodeEdgeUsage.USES, root);
+
+    assertThat(edge.getWeight()).isEqualTo(1);
+    assertThat(edge.getNumberOfRootFromNodes()).isEqualTo(1);
+    assertThat(edge.getRootEdges()).containsOnly(root);
+    assertThat(edge.hasAnEdgeFromRootNode(classA1)).isTrue();
+    assertThat(edge.hasAnEdgeToRootNode(classB1)).isTrue();
+    assertThat(edge.hasAnEdgeToRootNode(classB2)).isFalse();
+    assertThat(root.getParent()).isSameAs(edge);
+  }
+
+  @Test
+  public void duplicated_root_edges_are_ignored() {
+    SourceCodeEdge edge = new SourceCodeEdge(packageA, packageB, SourceCodeEdgeUsage.USES);
+    edge.addRootEdge(new SourceCodeEdge(classA1, classB1, SourceCodeEdgeUsage.USES));
+    edge.addRootEdge(new SourceCodeEdge(classA1, classB1, SourceCodeEdgeUsage.USES));
+    edge.addRootEdge(new SourceCodeEdge(classA1, classB2, SourceCodeEdgeUsage.USES));
+    edge.addRootEdge(new SourceCodeEdge(classA1, classB2, SourceCodeEdgeUsage.USES));
+    edge.addRootEdge(null);
+
+    assertThat(edge.getWeight()).isEqualTo(2);
+    assertThat(edge.getNumberOfRootFromNodes()).isEqualTo(1);
+  }
+
+  @Test
+  public void edge_with_many_root_edges() {
+    SourceCodeEdge edge = new SourceCodeEdge(packageA, packageB, SourceCodeEdgeUsage.USES);
+    edge.addRootEdge(new SourceCodeEdge(classA1, classB1, SourceCodeEdgeUsage.USES));
+    edge.addRootEdge(new SourceCodeEdge(classA2, classB1, SourceCodeEdgeUsage.USES));
+    assertThat(edge.getNumberOfRootFromNodes()).isEqualTo(2);
+
+    edge.addRootEdge(new SourceCodeEdge(classA1, classB2, SourceCodeEdgeUsage.USES));
+    edge.addRootEdge(new SourceCodeEdge(classA2, classB1, SourceCodeEdgeUsage.USES));
+
+    assertThat(edge.getWeight()).isEqualTo(3);
+    assertThat(edge.getRootEdges()).hasSize(3);
+    assertThat(edge.getNumberOfRootFromNodes()).isEqualTo(2);
+    assertThat(edge.hasAnEdgeFromRootNode(classA2)).isTrue();
+    assertThat(edge.hasAnEdgeToRootNode(classB2)).isTrue();
+    assertThat(edge.hasAnEdgeFromRootNode(classB1)).isFalse();
+  }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.api;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.squidbridge.indexer.SquidIndex;
+import org.sonar.squidbridge.measures.Metric;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceCodeSpillStoreTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final Object check = new Object();
+  private SourceCodeSpillStore store;
+  private SourceProject project;
+  private SourceFile file;
+  private SourceClass sourceClass;
+
+  @Before
+  public void setUp() throws IOException {
+    store = new SourceCodeSpillStore(temp.getRoot());
+    project = new SourceProject("project");
+    file = new SourceFile("file.mc", "file.mc");
+    project.addChild(file);
+    file.setMeasure(Metric.LINES, 20);
+    file.addNoSonarTagLine(3);
+    file.log(new CheckMessage(check, "file message"));
+
+    sourceClass = new SourceClass("Foo", "Foo");
+    sourceClass.setSuppressWarnings(true);
+    sourceClass.setStartAtLine(2);
+    sourceClass.setEndAtLine(18);
+    sourceClass.setMeasure(Metric.CLASSES, 1);
+    file.addChild(sourceClass);
+    SourceMethod method = new SourceMethod(sourceClass, "bar()", 4);
+    method.setMeasure(Metric.METHODS, 1);
+    method.setMeasure(Metric.COMPLEXITY, 3);
+    sourceClass.addChild(method);
+    CheckMessage message = new CheckMessage(check, "Value {0} of {1} is {2}", 42, "bar", true);
+    message.setLine(5);
+    message.setCost(1.5);
+    method.log(message);
+    SourceFunction function = new SourceFunction(file, "baz()", 10);
+    function.setMeasure(Metric.COMPLEXITY, 2);
+    file.addChild(function);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+  }
+
+  @Test
+  public void spilled_subtree_is_released_and_loaded_back_on_access() {
+    assertThat(store.canSpill(file)).isTrue();
+    store.spill(file, Metric.COMPLEXITY, Metric.METHODS, Metric.CLASSES);
+
+    assertThat(file.isSpilled()).isTrue();
+    assertThat(file.getInt(Metric.COMPLEXITY)).isEqualTo(5);
+    assertThat(file.getInt(Metric.METHODS)).isEqualTo(1);
+    assertThat(file.getInt(Metric.LINES)).isEqualTo(20);
+    assertThat(file.hasNoSonarTagAtLine(3)).isTrue();
+
+    assertThat(file.getChildren()).hasSize(2);
+    assertThat(file.isSpilled()).isFalse();
+    assertThat(file.getCheckMessages()).hasSize(1);
+    assertThat(file.getCheckMessages().iterator().next().getCheck()).isSameAs(check);
+
+    SourceClass loadedClass = (SourceClass) file.getFirstChild();
+    assertThat(loadedClass).isNotSameAs(sourceClass).isEqualTo(sourceClass);
+    assertThat(loadedClass.getName()).isEqualTo("Foo");
+    assertThat(loadedClass.isSuppressWarnings()).isTrue();
+    assertThat(loadedClass.getStartAtLine()).isEqualTo(2);
+    assertThat(loadedClass.getEndAtLine()).isEqualTo(18);
+    assertThat(loadedClass.getParent()).isSameAs(file);
+    assertThat(loadedClass.getInt(Metric.METHODS)).isEqualTo(1);
+
+    SourceMethod loadedMethod = (SourceMethod) loadedClass.getFirstChild();
+    assertThat(loadedMethod.getName()).isEqualTo("bar()");
+    assertThat(loadedMethod.getInt(Metric.COMPLEXITY)).isEqualTo(3);
+    CheckMessage message = loadedMethod.getCheckMessages().iterator().next();
+    assertThat(message.getCheck()).isSameAs(check);
+    assertThat(message.getSourceCode()).isSameAs(loadedMethod);
+    assertThat(message.getLine()).isEqualTo(5);
+    assertThat(message.getCost()).isEqualTo(1.5);
+    assertThat(message.formatDefaultMessage()).isEqualTo("Value 42 of bar is true");
+
+    assertThat(file.getLastChild()).isInstanceOf(SourceFunction.class);
+    assertThat(file.getLastChild().getName()).isEqualTo("baz()");
+  }
+
+  @Test
+  public void decorator_does_not_aggregate_spilled_file_twice() {
+    store.spill(file, Metric.COMPLEXITY);
+
+    new SourceCodeTreeDecorator(project).decorateWith(Metric.COMPLEXITY);
+
+    assertThat(file.isSpilled()).isTrue();
+    assertThat(project.getInt(Metric.COMPLEXITY)).isEqualTo(5);
+  }
+
+  @Test
+  public void decorator_does_not_aggregate_spilled_file_twice_once_loaded_back() {
+    SquidIndex index = new SquidIndex();
+    indexTree(index, project);
+    index.evictDescendants(file);
+    store.spill(file, Metric.COMPLEXITY, Metric.METHODS);
+    assertThat(file.getInt(Metric.COMPLEXITY)).isEqualTo(5);
+
+    assertThat(index.search("Foo#bar()")).isNotNull();
+    assertThat(file.isSpilled()).isFalse();
+    new SourceCodeTreeDecorator(project).decorateWith(Metric.COMPLEXITY, Metric.METHODS, Metric.CLASSES);
+
+    assertThat(file.getInt(Metric.COMPLEXITY)).isEqualTo(5);
+    assertThat(index.search("Foo").getInt(Metric.COMPLEXITY)).isEqualTo(3);
+    assertThat(file.getInt(Metric.METHODS)).isEqualTo(1);
+    assertThat(file.getInt(Metric.CLASSES)).isEqualTo(1);
+    assertThat(project.getInt(Metric.COMPLEXITY)).isEqualTo(5);
+    assertThat(project.getInt(Metric.CLASSES)).isEqualTo(1);
+  }
+
+  @Test
+  public void decorator_loads_spilled_file_for_other_metrics() {
+    store.spill(file, Metric.COMPLEXITY);
+
+    new SourceCodeTreeDecorator(project).decorateWith(Metric.METHODS);
+
+    assertThat(file.isSpilled()).isFalse();
+    assertThat(project.getInt(Metric.METHODS)).isEqualTo(1);
+  }
+
+  @Test
+  public void cannot_spill_unsupported_content() {
+    SourceClass withData = new SourceClass("WithData");
+    withData.addData(Metric.LCOM4_BLOCKS, new Object());
+    file.addChild(withData);
+    assertThat(store.canSpill(file)).isFalse();
+
+    SourceFile withObjectArgument = new SourceFile("other.mc");
+    withObjectArgument.addChild(new SourceClass("Other"));
+    withObjectArgument.log(new CheckMessage(check, "{0}", new Object()));
+    assertThat(store.canSpill(withObjectArgument)).isFalse();
+
+    SourceFile withUnknownType = new SourceFile("unknown.mc");
+    withUnknownType.addChild(new SourceCode("custom") {
+    });
+    assertThat(store.canSpill(withUnknownType)).isFalse();
+
+    assertThat(store.canSpill(new SourceFile("empty.mc"))).isFalse();
+  }
+
+  private static void indexTree(SquidIndex index, SourceCode sourceCode) {
+    index.index(sourceCode);
+    if (sourceCode.hasChildren()) {
+      for (SourceCode child : sourceCode.getChildren()) {
+        indexTree(index, child);
+      }
+    }
+  }
+
+}
@@ -20,6 +20,7 @@
 package org.sonar.squidbridge.api;
 
 import org.junit.Test;
+import org.sonar.squidbridge.measures.Metric;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -49,4 +50,26 @@ public class SourceFileTest {
     assertTrue(file.hasNoSonarTagAtLine(10));
     assertFalse(file.hasNoSonarTagAtLine(11));
   }
+
+  @Test
+  public void measure_changes_in_subtree_bump_version() {
+    SourceFile file = new SourceFile("com/sonarsource/Toto.java");
+    SourceClass sourceClass = new SourceClass("Toto");
+    SourceMethod method = new SourceMethod(sourceClass, "foo()", 2);
+    sourceClass.addChild(method);
+
+    int version = file.getSubtreeMeasuresVersion();
+    file.addChild(sourceClass);
+    assertTrue(file.getSubtreeMeasuresVersion() > version);
+
+    version = file.getSubtreeMeasuresVersion();
+    method.setMeasure(Metric.COMPLEXITY, 2);
+    assertTrue(file.getSubtreeMeasuresVersion() > version);
+
+    version = file.getSubtreeMeasuresVersion();
+    new SourceProject("project").addChild(file);
+    new SourceClass("Other").setMeasure(Metric.COMPLEXITY, 1);
+    assertEquals(version, file.getSubtreeMeasuresVersion());
+  }
+
 }
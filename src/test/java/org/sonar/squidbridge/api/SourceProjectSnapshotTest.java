@@ -0,0 +1,209 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.api;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.squidbridge.measures.Metric;
+import org.sonar.squidbridge.measures.MetricDef;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class SourceProjectSnapshotTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @org.sonar.check.Rule(key = "S1")
+  private static class AnnotatedCheck {
+  }
+
+  private static class OtherCheck {
+  }
+
+  public static class CustomSourceCode extends SourceCode {
+    public CustomSourceCode(String key, String name) {
+      super(key, name);
+    }
+  }
+
+  private static final AtomicBoolean INITIALIZED = new AtomicBoolean();
+
+  public static class InitializedClass {
+    static {
+      INITIALIZED.set(true);
+    }
+
+    public InitializedClass(String key, String name) {
+    }
+  }
+
+  @Test
+  public void round_trip() throws IOException {
+    AnnotatedCheck annotatedCheck = new AnnotatedCheck();
+    OtherCheck otherCheck = new OtherCheck();
+
+    SourceProject project = new SourceProject("project");
+    project.setMeasure(Metric.LINES, 30);
+    SourcePackage sourcePackage = new SourcePackage("pkg");
+    project.addChild(sourcePackage);
+    SourceFile file = new SourceFile("pkg/file.mc", "file.mc");
+    sourcePackage.addChild(file);
+    file.setMeasure(Metric.LINES, 30);
+    file.addNoSonarTagLine(4);
+    file.addNoSonarTagLine(7);
+    CheckMessage fileMessage = new CheckMessage(otherCheck, "file message");
+    fileMessage.setBypassExclusion(true);
+    file.log(fileMessage);
+    SourceClass sourceClass = new SourceClass("pkg/Foo", "Foo");
+    sourceClass.setSuppressWarnings(true);
+    sourceClass.setStartAtLine(2);
+    sourceClass.setEndAtLine(20);
+    file.addChild(sourceClass);
+    SourceMethod method = new SourceMethod(sourceClass, "bar()", 3);
+    method.setMeasure(Metric.COMPLEXITY, 4);
+    sourceClass.addChild(method);
+    CheckMessage message = new CheckMessage(annotatedCheck, "{0} {1} {2} {3}", 42, 2L, 'c', Arrays.asList("x"));
+    message.setLine(5);
+    message.setCost(2.5);
+    method.log(message);
+    file.addChild(new SourceFunction(file, "baz()", 22));
+    file.addChild(new CustomSourceCode("pkg/file.mc#~custom", "Custom"));
+
+    File snapshot = temp.newFile("snapshot.bin");
+    SourceProjectSnapshot.write(project, snapshot, Metric.values());
+    SourceProject read = SourceProjectSnapshot.read(snapshot, Arrays.<MetricDef>asList(Metric.values()), ImmutableList.of(annotatedCheck, otherCheck));
+
+    assertThat(read.getKey()).isEqualTo("project");
+    assertThat(read.getInt(Metric.LINES)).isEqualTo(30);
+    SourcePackage readPackage = (SourcePackage) read.getFirstChild();
+    assertThat(readPackage.getKey()).isEqualTo("pkg");
+    SourceFile readFile = (SourceFile) readPackage.getFirstChild();
+    assertThat(readFile.getName()).isEqualTo("file.mc");
+    assertThat(readFile.getNoSonarTagLines()).containsOnly(4, 7);
+    assertThat(readFile.getChildren()).hasSize(3);
+    CheckMessage readFileMessage = readFile.getCheckMessages().iterator().next();
+    assertThat(readFileMessage.getCheck()).isSameAs(otherCheck);
+    assertThat(readFileMessage.isBypassExclusion()).isTrue();
+    assertThat(readFileMessage.getLine()).isNull();
+    assertThat(readFileMessage.getCost()).isNull();
+
+    SourceClass readClass = (SourceClass) readFile.getChildren().iterator().next();
+    assertThat(readClass.getKey()).isEqualTo("pkg/Foo");
+    assertThat(readClass.isSuppressWarnings()).isTrue();
+    assertThat(readClass.getStartAtLine()).isEqualTo(2);
+    assertThat(readClass.getEndAtLine()).isEqualTo(20);
+    SourceMethod readMethod = (SourceMethod) readClass.getFirstChild();
+    assertThat(readMethod.getName()).isEqualTo("bar()");
+    assertThat(readMethod.getInt(Metric.COMPLEXITY)).isEqualTo(4);
+    CheckMessage readMessage = readMethod.getCheckMessages().iterator().next();
+    assertThat(readMessage.getCheck()).isSameAs(annotatedCheck);
+    assertThat(readMessage.getLine()).isEqualTo(5);
+    assertThat(readMessage.getCost()).isEqualTo(2.5);
+    assertThat(readMessage.formatDefaultMessage()).isEqualTo("42 2 c [x]");
+
+    assertThat(read.hasChild(new SourceFunction("pkg/file.mc#baz()"))).isTrue();
+    SourceCode custom = readFile.getLastChild();
+    assertThat(custom).isInstanceOf(CustomSourceCode.class);
+    assertThat(custom.getName()).isEqualTo("Custom");
+  }
+
+  @Test
+  public void unknown_metrics_and_checks_are_ignored() throws IOException {
+    SourceProject project = new SourceProject("project");
+    project.setMeasure(Metric.LINES, 30);
+    project.setMeasure(Metric.COMPLEXITY, 3);
+    project.log(new CheckMessage(new OtherCheck(), "message"));
+
+    File snapshot = temp.newFile("snapshot.bin");
+    SourceProjectSnapshot.write(project, snapshot, Metric.values());
+    SourceProject read = SourceProjectSnapshot.read(snapshot, Collections.<MetricDef>singletonList(Metric.LINES), Collections.emptyList());
+
+    assertThat(read.getInt(Metric.LINES)).isEqualTo(30);
+    assertThat(read.getInt(Metric.COMPLEXITY)).isEqualTo(0);
+    assertThat(read.getCheckMessages().iterator().next().getCheck()).isNull();
+  }
+
+  @Test
+  public void checks_without_canonical_name() throws IOException {
+    Object firstCheck = new Object() {
+    };
+    Object secondCheck = new Object() {
+    };
+    SourceProject project = new SourceProject("project");
+    project.log(new CheckMessage(firstCheck, "message"));
+    SourceFile file = new SourceFile("file.mc", "file.mc");
+    project.addChild(file);
+    file.log(new CheckMessage(secondCheck, "message"));
+
+    File snapshot = temp.newFile("snapshot.bin");
+    SourceProjectSnapshot.write(project, snapshot);
+    SourceProject read = SourceProjectSnapshot.read(snapshot, Collections.<MetricDef>emptyList(), ImmutableList.of(firstCheck, secondCheck));
+
+    assertThat(read.getCheckMessages().iterator().next().getCheck()).isSameAs(firstCheck);
+    assertThat(read.getFirstChild().getCheckMessages().iterator().next().getCheck()).isSameAs(secondCheck);
+  }
+
+  @Test
+  public void types_which_are_not_source_code_are_not_initialized() throws IOException {
+    SourceProject project = new SourceProject("project");
+    project.addChild(new CustomSourceCode("custom", "Custom"));
+    File snapshot = temp.newFile("snapshot.bin");
+    SourceProjectSnapshot.write(project, snapshot);
+    String content = new String(Files.toByteArray(snapshot), StandardCharsets.ISO_8859_1);
+    Files.write(content.replace("CustomSourceCode", "InitializedClass").getBytes(StandardCharsets.ISO_8859_1), snapshot);
+
+    try {
+      SourceProjectSnapshot.read(snapshot, Collections.<MetricDef>emptyList(), Collections.emptyList());
+      fail("expected IOException");
+    } catch (IOException e) {
+      assertThat(e).hasMessageContaining(InitializedClass.class.getName());
+    }
+    assertThat(INITIALIZED.get()).isFalse();
+  }
+
+  @Test(expected = IOException.class)
+  public void not_a_snapshot() throws IOException {
+    File file = temp.newFile("snapshot.bin");
+    Files.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, file);
+    SourceProjectSnapshot.read(file, Collections.<MetricDef>emptyList(), Collections.emptyList());
+  }
+
+  @Test(expected = IOException.class)
+  public void truncated_snapshot() throws IOException {
+    File snapshot = temp.newFile("snapshot.bin");
+    SourceProjectSnapshot.write(new SourceProject("project"), snapshot);
+    byte[] bytes = Files.toByteArray(snapshot);
+    Files.write(Arrays.copyOf(bytes, bytes.length - 4), snapshot);
+    SourceProjectSnapshot.read(snapshot, Collections.<MetricDef>emptyList(), Collections.emptyList());
+  }
+
+}
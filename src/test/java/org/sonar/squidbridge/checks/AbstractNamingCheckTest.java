@@ -28,6 +28,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.sonar.api.utils.SonarException;
 
+import static org.fest.assertions.Assertions.assertThat;
 import static org.sonar.squidbridge.metrics.ResourceParser.scanFile;
 
 public class AbstractNamingCheckTest {
@@ -41,6 +42,12 @@ public class AbstractNamingCheckTest {
   private static class Check extends AbstractNamingCheck<Grammar> {
 
     private String regularExpression;
+    private int cacheSize = DEFAULT_NAME_CACHE_SIZE;
+
+    @Override
+    protected int getNameCacheSize() {
+      return cacheSize;
+    }
 
     @Override
     public AstNodeType[] getRules() {
@@ -82,6 +89,48 @@ public class AbstractNamingCheckTest {
       .next().atLine(12).withMessage("\"myFunction\" is a bad name.");
   }
 
+  @Test
+  public void should_share_name_verdicts_between_checks_of_a_scanner() {
+    check.regularExpression = "[a-z]++";
+    Check other = new Check();
+    other.regularExpression = "[a-z]++";
+    assertThat(scanFile("/checks/naming.mc", check, other).getCheckMessages()).hasSize(4);
+
+    long misses = check.getNameCacheMisses();
+    assertThat(misses).isGreaterThan(0);
+    assertThat(other.getNameCacheMisses()).isEqualTo(misses);
+    assertThat(other.getNameCacheHits()).isGreaterThanOrEqualTo(misses);
+  }
+
+  @Test
+  public void should_not_share_name_verdicts_between_scanners() {
+    check.regularExpression = "[a-z]*+";
+    scanFile("/checks/naming.mc", check);
+
+    Check other = new Check();
+    other.regularExpression = "[a-z]*+";
+    scanFile("/checks/naming.mc", other);
+
+    assertThat(other.getNameCacheMisses()).isEqualTo(check.getNameCacheMisses());
+    assertThat(other.getNameCacheHits()).isEqualTo(check.getNameCacheHits());
+  }
+
+  @Test
+  public void should_not_cache_name_verdicts() {
+    check.regularExpression = "[a-z]+?";
+    check.cacheSize = 0;
+    checkMessagesVerifier.verify(scanFile("/checks/naming.mc", check).getCheckMessages())
+      .next().atLine(5)
+      .next().atLine(12);
+
+    Check other = new Check();
+    other.regularExpression = "[a-z]+?";
+    other.cacheSize = 0;
+    scanFile("/checks/naming.mc", other);
+    assertThat(other.getNameCacheHits()).isEqualTo(0);
+    assertThat(other.getNameCacheMisses()).isGreaterThan(0);
+  }
+
   @Test
   public void wrong_regular_expression() {
     check.regularExpression = "*";
@@ -19,13 +19,24 @@
  */
 package org.sonar.squidbridge.checks;
 
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.sonar.squidbridge.metrics.ResourceParser.scanFile;
 
-import org.sonar.squidbridge.checks.AbstractNoSonarCheck;
-import org.sonar.squidbridge.checks.CheckMessagesVerifierRule;
 import com.sonar.sslr.api.Grammar;
+import com.sonar.sslr.impl.ast.AstWalker;
+import com.sonar.sslr.test.minic.MiniCParser;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.squidbridge.CommentAnalyser;
+import org.sonar.squidbridge.SquidAstVisitorContext;
+import org.sonar.squidbridge.api.CheckMessage;
+
+import java.util.List;
 
 public class AbstractNoSonarCheckTest {
 
@@ -43,4 +54,31 @@ public class AbstractNoSonarCheckTest {
       .next().atLine(10);
   }
 
+  @Test
+  public void should_visit_comments_of_tokens_when_walked_without_scanner() {
+    Check check = new Check();
+    SquidAstVisitorContext<Grammar> context = mock(SquidAstVisitorContext.class);
+    when(context.getCommentAnalyser()).thenReturn(new CommentAnalyser() {
+      @Override
+      public boolean isBlank(String commentLine) {
+        return commentLine.trim().isEmpty();
+      }
+
+      @Override
+      public String getContents(String comment) {
+        return comment.substring(2, comment.length() - 2);
+      }
+    });
+    check.setContext(context);
+
+    new AstWalker(check).walkAndVisit(MiniCParser.parseFile("/checks/no_sonar.mc"));
+
+    ArgumentCaptor<CheckMessage> messages = ArgumentCaptor.forClass(CheckMessage.class);
+    verify(context, times(3)).log(messages.capture());
+    List<CheckMessage> logged = messages.getAllValues();
+    assertThat(logged.get(0).getLine()).isEqualTo(5);
+    assertThat(logged.get(1).getLine()).isEqualTo(6);
+    assertThat(logged.get(2).getLine()).isEqualTo(10);
+  }
+
 }
@@ -23,12 +23,20 @@ import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.AstNodeType;
 import com.sonar.sslr.api.Grammar;
 import com.sonar.sslr.test.minic.MiniCGrammar;
+import com.sonar.sslr.test.minic.MiniCParser;
 import org.junit.Test;
+import org.mockito.InOrder;
+import org.sonar.squidbridge.SquidAstVisitorContext;
 
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.sonar.squidbridge.metrics.ResourceParser.scanFile;
 
 public class AbstractOneStatementPerLineCheckTest {
 
+  private static final String MESSAGE = "At most one statement is allowed per line, but {0} statements were found on this line.";
+
   @org.junit.Rule
   public CheckMessagesVerifierRule checkMessagesVerifier = new CheckMessagesVerifierRule();
 
@@ -52,4 +60,29 @@ public class AbstractOneStatementPerLineCheckTest {
       .next().atLine(7).withMessage("At most one statement is allowed per line, but 2 statements were found on this line.");
   }
 
+  @Test
+  public void should_report_violations_in_line_order() {
+    Check check = new Check();
+    SquidAstVisitorContext<Grammar> context = mock(SquidAstVisitorContext.class);
+    check.setContext(context);
+    check.init();
+
+    for (String file : new String[] {"/checks/one_statement_per_line_many.mc", "/checks/one_statement_per_line.mc"}) {
+      AstNode fileNode = MiniCParser.parseFile(file);
+      check.visitFile(fileNode);
+      for (AstNode statement : fileNode.getDescendants(MiniCGrammar.STATEMENT)) {
+        check.visitNode(statement);
+      }
+      check.leaveFile(fileNode);
+    }
+
+    InOrder inOrder = inOrder(context);
+    inOrder.verify(context).createLineViolation(check, MESSAGE, 3, 4);
+    inOrder.verify(context).createLineViolation(check, MESSAGE, 5, 2);
+    inOrder.verify(context).createLineViolation(check, MESSAGE, 7, 4);
+    inOrder.verify(context).createLineViolation(check, MESSAGE, 12, 2);
+    inOrder.verify(context).createLineViolation(check, MESSAGE, 7, 2);
+    verifyNoMoreInteractions(context);
+  }
+
 }
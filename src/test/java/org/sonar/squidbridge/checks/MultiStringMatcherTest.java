@@ -0,0 +1,86 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.checks;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MultiStringMatcherTest {
+
+  @Test
+  public void should_find_overlapping_strings() {
+    MultiStringMatcher matcher = MultiStringMatcher.create(ImmutableList.of("he", "she", "his", "hers"));
+
+    assertThat(matcher.firstMatchingIndex("ushers")).isEqualTo(0);
+    assertThat(matcher.firstMatchingIndex("ushe")).isEqualTo(0);
+    assertThat(matcher.firstMatchingIndex("xhixhis")).isEqualTo(2);
+    assertThat(matcher.firstMatchingIndex("h")).isEqualTo(-1);
+    assertThat(matcher.firstMatchingIndex("")).isEqualTo(-1);
+  }
+
+  @Test
+  public void should_return_lowest_index_rather_than_first_occurrence() {
+    MultiStringMatcher matcher = MultiStringMatcher.create(ImmutableList.of("//", "/*"));
+
+    assertThat(matcher.firstMatchingIndex("/* and then //")).isEqualTo(0);
+    assertThat(matcher.firstMatchingIndex("/* only")).isEqualTo(1);
+  }
+
+  @Test
+  public void should_match_empty_string_everywhere() {
+    MultiStringMatcher matcher = MultiStringMatcher.create(ImmutableList.of("abc", ""));
+
+    assertThat(matcher.firstMatchingIndex("xyz")).isEqualTo(1);
+    assertThat(matcher.firstMatchingIndex("xabc")).isEqualTo(0);
+  }
+
+  @Test
+  public void should_behave_like_contains() {
+    Random random = new Random(42);
+    for (int round = 0; round < 200; round++) {
+      List<String> strings = Arrays.asList(randomString(random, 1 + random.nextInt(4)), randomString(random, 1 + random.nextInt(4)),
+        randomString(random, 1 + random.nextInt(4)));
+      String text = randomString(random, random.nextInt(30));
+
+      int expected = -1;
+      for (int i = 0; i < strings.size() && expected < 0; i++) {
+        if (text.contains(strings.get(i))) {
+          expected = i;
+        }
+      }
+      assertThat(MultiStringMatcher.create(strings).firstMatchingIndex(text)).as(strings + " in " + text).isEqualTo(expected);
+    }
+  }
+
+  private static String randomString(Random random, int length) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append((char) ('a' + random.nextInt(3)));
+    }
+    return sb.toString();
+  }
+
+}
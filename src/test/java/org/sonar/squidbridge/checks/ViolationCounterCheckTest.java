@@ -27,7 +27,21 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import com.google.common.collect.TreeMultiset;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.sonar.squidbridge.metrics.ResourceParser.scanFile;
 
@@ -73,4 +87,116 @@ public class ViolationCounterCheckTest {
     assertThat(analyzer.hasDifferences()).isFalse();
   }
 
+
+  @Test
+  public void should_save_sorted_text_format() throws Exception {
+    ViolationCounterCheck.ViolationCounter counter = new ViolationCounterCheck.ViolationCounter();
+    counter.increment("b.mc", "RuleB", 7);
+    counter.increment("b.mc", "RuleA", 3);
+    counter.increment("b.mc", "RuleA", 1);
+    counter.increment("a.mc", "RuleA", -1);
+    File output = temporaryFolder.newFile();
+
+    counter.saveToFile(output.getAbsolutePath());
+
+    assertThat(FileUtils.readLines(output, "UTF-8")).containsExactly(
+      "# violations v1",
+      "a.mc\tRuleA\t-1",
+      "b.mc\tRuleA\t1,3",
+      "b.mc\tRuleB\t7");
+    assertThat(differences(counter, ViolationCounterCheck.ViolationCounter.loadFromFile(output))).isFalse();
+  }
+
+  @Test
+  public void should_load_serialized_format() throws Exception {
+    Map<String, Map<String, TreeMultiset<Integer>>> violations = new HashMap<String, Map<String, TreeMultiset<Integer>>>();
+    violations.put("a.mc", new HashMap<String, TreeMultiset<Integer>>());
+    violations.get("a.mc").put("RuleA", TreeMultiset.create(Arrays.asList(3, 1, 3)));
+    File output = temporaryFolder.newFile();
+    ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(output));
+    oos.writeObject(violations);
+    oos.close();
+
+    ViolationCounterCheck.ViolationCounter expected = new ViolationCounterCheck.ViolationCounter();
+    expected.increment("a.mc", "RuleA", 3);
+    expected.increment("a.mc", "RuleA", 3);
+    expected.increment("a.mc", "RuleA", 1);
+    assertThat(differences(expected, ViolationCounterCheck.ViolationCounter.loadFromFile(output))).isFalse();
+  }
+
+  @Test
+  public void should_report_differences_with_multiplicity() {
+    ViolationCounterCheck.ViolationCounter expected = new ViolationCounterCheck.ViolationCounter();
+    expected.increment("a.mc", "RuleA", 3);
+    expected.increment("a.mc", "RuleA", 1);
+    expected.increment("a.mc", "RuleA", 1);
+    expected.increment("b.mc", "RuleB", 2);
+    ViolationCounterCheck.ViolationCounter actual = new ViolationCounterCheck.ViolationCounter();
+    actual.increment("a.mc", "RuleA", 4);
+    actual.increment("a.mc", "RuleA", 1);
+    actual.increment("a.mc", "RuleA", 3);
+    actual.increment("c.mc", "RuleB", 2);
+
+    PrintStream out = System.out;
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(report));
+    ViolationCounterCheck.ViolationDifferenceAnalyzer analyzer = new ViolationCounterCheck.ViolationDifferenceAnalyzer(expected, actual);
+    try {
+      analyzer.printReport();
+    } finally {
+      System.setOut(out);
+    }
+
+    assertThat(analyzer.hasDifferences()).isTrue();
+    assertThat(report.toString()).contains(
+      "  File a.mc:\n    RuleA, (difference only) expected (1), actual (4).\n"
+        + "  File b.mc:\n    RuleB, (difference only) expected (2), actual ().\n"
+        + "  File c.mc:\n    RuleB, (difference only) expected (), actual (2).\n");
+    assertThat(report.toString()).contains(
+      "  RuleA expected: 3, actual: 3: OK\n"
+        + "  RuleB expected: 1, actual: 1: OK\n");
+  }
+
+  @Test
+  public void should_count_concurrently_and_merge() throws Exception {
+    final ViolationCounterCheck.ViolationCounter shared = new ViolationCounterCheck.ViolationCounter();
+    final ViolationCounterCheck.ViolationCounter merged = new ViolationCounterCheck.ViolationCounter();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int thread = 0; thread < 4; thread++) {
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          ViolationCounterCheck.ViolationCounter local = new ViolationCounterCheck.ViolationCounter();
+          for (int i = 0; i < 1000; i++) {
+            shared.increment("file" + (i % 10) + ".mc", "Rule" + (i % 3), i);
+            local.increment("file" + (i % 10) + ".mc", "Rule" + (i % 3), i);
+          }
+          synchronized (merged) {
+            merged.merge(local);
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    ViolationCounterCheck.ViolationCounter expected = new ViolationCounterCheck.ViolationCounter();
+    for (int thread = 0; thread < 4; thread++) {
+      for (int i = 0; i < 1000; i++) {
+        expected.increment("file" + (i % 10) + ".mc", "Rule" + (i % 3), i);
+      }
+    }
+    assertThat(differences(expected, shared)).isFalse();
+    assertThat(differences(expected, merged)).isFalse();
+  }
+
+  private static boolean differences(ViolationCounterCheck.ViolationCounter expected, ViolationCounterCheck.ViolationCounter actual) {
+    ViolationCounterCheck.ViolationDifferenceAnalyzer analyzer = new ViolationCounterCheck.ViolationDifferenceAnalyzer(expected, actual);
+    analyzer.printReport();
+    return analyzer.hasDifferences();
+  }
+
 }
@@ -0,0 +1,102 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.graph;
+
+import org.jgrapht.graph.DirectedMultigraph;
+import org.junit.Test;
+import org.sonar.squidbridge.api.SourceClass;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceCodeEdge;
+import org.sonar.squidbridge.api.SourceCodeEdgeUsage;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourcePackage;
+import org.sonar.squidbridge.measures.Metric;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CouplingCalculatorTest {
+
+  private final DirectedMultigraph<SourceCode, SourceCodeEdge> graph = new DirectedMultigraph<SourceCode, SourceCodeEdge>(SourceCodeEdge.class);
+
+  @Test
+  public void package_and_class_coupling() {
+    SourcePackage a = new SourcePackage("a");
+    SourcePackage b = new SourcePackage("b");
+    SourcePackage c = new SourcePackage("c");
+    SourceClass a1 = new SourceClass("a.A1");
+    SourceClass b1 = new SourceClass("b.B1");
+    SourceClass b2 = new SourceClass("b.B2");
+    SourceFile file = new SourceFile("a/A1.java");
+
+    addEdge(a, b, SourceCodeEdgeUsage.USES);
+    addEdge(a, c, SourceCodeEdgeUsage.USES);
+    addEdge(b, c, SourceCodeEdgeUsage.EXTENDS);
+    addEdge(b, c, SourceCodeEdgeUsage.USES);
+    addEdge(a1, b1, SourceCodeEdgeUsage.CALLS_METHOD);
+    addEdge(a1, b2, SourceCodeEdgeUsage.USES);
+    addEdge(b1, b2, SourceCodeEdgeUsage.EXTENDS);
+    // ignored: dependencies between nodes of different types
+    addEdge(a1, b, SourceCodeEdgeUsage.USES);
+    addEdge(file, a, SourceCodeEdgeUsage.USES);
+
+    new CouplingCalculator(graph).calculate();
+
+    assertCoupling(a, 0, 2);
+    assertCoupling(b, 1, 1);
+    assertCoupling(c, 2, 0);
+    assertCoupling(a1, 0, 2);
+    assertCoupling(b1, 1, 1);
+    assertCoupling(b2, 2, 0);
+    assertThat(file.getInt(Metric.CE)).isZero();
+    assertThat(b.getDouble(Metric.INSTABILITY)).isEqualTo(0.5);
+  }
+
+  @Test
+  public void large_graph() {
+    int size = 5000;
+    SourceClass[] classes = new SourceClass[size];
+    for (int i = 0; i < size; i++) {
+      classes[i] = new SourceClass("C" + i);
+      graph.addVertex(classes[i]);
+    }
+    for (int i = 0; i < size; i++) {
+      graph.addEdge(classes[i], classes[(i + 1) % size], new SourceCodeEdge(classes[i], classes[(i + 1) % size], SourceCodeEdgeUsage.USES));
+      graph.addEdge(classes[i], classes[(i + 2) % size], new SourceCodeEdge(classes[i], classes[(i + 2) % size], SourceCodeEdgeUsage.USES));
+    }
+
+    new CouplingCalculator(graph).calculate();
+
+    for (SourceClass sourceClass : classes) {
+      assertCoupling(sourceClass, 2, 2);
+    }
+  }
+
+  private void addEdge(SourceCode from, SourceCode to, SourceCodeEdgeUsage usage) {
+    graph.addVertex(from);
+    graph.addVertex(to);
+    graph.addEdge(from, to, new SourceCodeEdge(from, to, usage));
+  }
+
+  private static void assertCoupling(SourceCode sourceCode, int ca, int ce) {
+    assertThat(sourceCode.getInt(Metric.CA)).as("CA of " + sourceCode).isEqualTo(ca);
+    assertThat(sourceCode.getInt(Metric.CE)).as("CE of " + sourceCode).isEqualTo(ce);
+  }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.graph;
+
+import org.jgrapht.graph.DirectedMultigraph;
+import org.junit.Test;
+import org.sonar.squidbridge.api.SourceClass;
+import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceCodeEdge;
+import org.sonar.squidbridge.api.SourceCodeEdgeUsage;
+import org.sonar.squidbridge.api.SourceFile;
+import org.sonar.squidbridge.api.SourcePackage;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DependencyCycleDetectorTest {
+
+  private final DirectedMultigraph<SourceCode, SourceCodeEdge> graph = new DirectedMultigraph<SourceCode, SourceCodeEdge>(SourceCodeEdge.class);
+
+  private final SourcePackage a = new SourcePackage("a");
+  private final SourcePackage b = new SourcePackage("b");
+  private final SourcePackage c = new SourcePackage("c");
+  private final SourcePackage d = new SourcePackage("d");
+  private final SourcePackage e = new SourcePackage("e");
+
+  @Test
+  public void no_cycle() {
+    addEdge(a, b, SourceCodeEdgeUsage.USES);
+    addEdge(b, c, SourceCodeEdgeUsage.USES);
+    addEdge(a, c, SourceCodeEdgeUsage.USES);
+
+    DependencyCycles cycles = detect(SourcePackage.class);
+
+    assertThat(cycles.hasCycles()).isFalse();
+    assertThat(cycles.getFeedbackEdges()).isEmpty();
+  }
+
+  @Test
+  public void cycles() {
+    addEdge(a, b, SourceCodeEdgeUsage.USES);
+    addEdge(b, a, SourceCodeEdgeUsage.USES);
+    addEdge(b, c, SourceCodeEdgeUsage.USES);
+    addEdge(c, d, SourceCodeEdgeUsage.USES);
+    addEdge(d, e, SourceCodeEdgeUsage.USES);
+    addEdge(e, c, SourceCodeEdgeUsage.USES);
+    // nodes of other types are ignored
+    SourceFile file = new SourceFile("c/File");
+    addEdge(e, file, SourceCodeEdgeUsage.USES);
+    addEdge(file, a, SourceCodeEdgeUsage.USES);
+
+    DependencyCycles cycles = detect(SourcePackage.class);
+
+    assertThat(cycles.getCycles()).hasSize(2);
+    assertThat(cycles.getCycles()).anySatisfy(cycle -> assertThat(cycle).containsExactly(a, b));
+    assertThat(cycles.getCycles()).anySatisfy(cycle -> assertThat(cycle).containsExactly(c, d, e));
+    assertThat(cycles.getFeedbackEdges()).hasSize(2);
+    assertBreaksAllCycles(cycles, SourcePackage.class);
+  }
+
+  @Test
+  public void feedback_edges_favour_light_edges() {
+    SourceCodeEdge heavy = addEdge(a, b, SourceCodeEdgeUsage.USES);
+    heavy.addRootEdge(new SourceCodeEdge(new SourceClass("a.A1"), new SourceClass("b.B1"), SourceCodeEdgeUsage.USES));
+    heavy.addRootEdge(new SourceCodeEdge(new SourceClass("a.A2"), new SourceClass("b.B1"), SourceCodeEdgeUsage.USES));
+    heavy.addRootEdge(new SourceCodeEdge(new SourceClass("a.A3"), new SourceClass("b.B1"), SourceCodeEdgeUsage.USES));
+    SourceCodeEdge light = addEdge(b, a, SourceCodeEdgeUsage.USES);
+    light.addRootEdge(new SourceCodeEdge(new SourceClass("b.B2"), new SourceClass("a.A1"), SourceCodeEdgeUsage.USES));
+
+    assertThat(detect(SourcePackage.class).getFeedbackEdges()).containsExactly(light);
+  }
+
+  @Test
+  public void only_given_usages_are_followed() {
+    addEdge(a, b, SourceCodeEdgeUsage.EXTENDS);
+    addEdge(b, a, SourceCodeEdgeUsage.USES);
+
+    assertThat(detect(SourcePackage.class).hasCycles()).isTrue();
+    assertThat(detect(SourcePackage.class, SourceCodeEdgeUsage.EXTENDS, SourceCodeEdgeUsage.IMPLEMENTS).hasCycles()).isFalse();
+  }
+
+  @Test
+  public void deep_graph_does_not_overflow_the_stack() {
+    int size = 100000;
+    SourceFile[] files = new SourceFile[size];
+    for (int i = 0; i < size; i++) {
+      files[i] = new SourceFile("file" + i);
+    }
+    for (int i = 0; i < size; i++) {
+      addEdge(files[i], files[(i + 1) % size], SourceCodeEdgeUsage.USES);
+    }
+
+    DependencyCycles cycles = detect(SourceFile.class);
+
+    assertThat(cycles.getCycles()).hasSize(1);
+    assertThat(cycles.getCycles().get(0)).hasSize(size);
+    assertThat(cycles.getFeedbackEdges()).hasSize(1);
+  }
+
+  @Test
+  public void random_graph() {
+    int size = 2000;
+    SourceFile[] files = new SourceFile[size];
+    for (int i = 0; i < size; i++) {
+      files[i] = new SourceFile("file" + i);
+    }
+    Random random = new Random(42);
+    for (int i = 0; i < 3 * size; i++) {
+      int from = random.nextInt(size);
+      int to = random.nextInt(size);
+      if (from != to && !graph.containsEdge(files[from], files[to])) {
+        addEdge(files[from], files[to], SourceCodeEdgeUsage.USES);
+      }
+    }
+
+    DependencyCycles cycles = detect(SourceFile.class);
+
+    assertThat(cycles.hasCycles()).isTrue();
+    assertBreaksAllCycles(cycles, SourceFile.class);
+  }
+
+  private void assertBreaksAllCycles(DependencyCycles cycles, Class<? extends SourceCode> nodeType) {
+    graph.removeAllEdges(cycles.getFeedbackEdges());
+    assertThat(detect(nodeType).hasCycles()).isFalse();
+  }
+
+  private DependencyCycles detect(Class<? extends SourceCode> nodeType, SourceCodeEdgeUsage... usages) {
+    return new DependencyCycleDetector(graph).detect(nodeType, usages);
+  }
+
+  private SourceCodeEdge addEdge(SourceCode from, SourceCode to, SourceCodeEdgeUsage usage) {
+    graph.addVertex(from);
+    graph.addVertex(to);
+    SourceCodeEdge edge = new SourceCodeEdge(from, to, usage);
+    graph.addEdge(from, to, edge);
+    return edge;
+  }
+
+}
@@ -20,9 +20,12 @@
 package org.sonar.squidbridge.indexer;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.squidbridge.api.SourceClass;
 import org.sonar.squidbridge.api.SourceCode;
+import org.sonar.squidbridge.api.SourceCodeSpillStore;
 import org.sonar.squidbridge.api.SourceFile;
 import org.sonar.squidbridge.api.SourcePackage;
 import org.sonar.squidbridge.api.SourceProject;
@@ -32,11 +35,16 @@ import org.sonar.squidbridge.measures.Metric;
 import java.util.Collection;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class SquidIndexTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   private SquidIndex indexer;
   private SourceProject project;
   private SourcePackage packSquid;
@@ -108,4 +116,40 @@ public class SquidIndexTest {
     assertEquals(0, indexer.search(new QueryByMeasure(Metric.COMPLEXITY, Operator.EQUALS, 6)).size());
     assertEquals(1, indexer.search(new QueryByMeasure(Metric.COMPLEXITY, Operator.EQUALS, 2)).size());
   }
+
+  @Test
+  public void searchSpilledResources() throws Exception {
+    SourceCodeSpillStore store = new SourceCodeSpillStore(temp.getRoot());
+    try {
+      indexer.evictDescendants(fileSquid);
+      store.spill(fileSquid);
+
+      assertEquals(2, indexer.search(new QueryByType(SourceFile.class)).size());
+      assertTrue(fileSquid.isSpilled());
+
+      SourceCode squidClass = indexer.search("org.sonar.squid.Squid");
+      assertEquals(classSquid, squidClass);
+      assertNotSame(classSquid, squidClass);
+      assertFalse(fileSquid.isSpilled());
+      assertEquals(1, indexer.search(new QueryByType(SourceClass.class)).size());
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void searchByTypeLoadsSpilledResources() throws Exception {
+    SourceCodeSpillStore store = new SourceCodeSpillStore(temp.getRoot());
+    try {
+      indexer.evictDescendants(fileSquid);
+      store.spill(fileSquid);
+
+      Collection<SourceCode> resources = indexer.search(new QueryByType(SourceClass.class));
+      assertEquals(1, resources.size());
+      assertFalse(fileSquid.isSpilled());
+      assertTrue(resources.contains(classSquid));
+    } finally {
+      store.close();
+    }
+  }
 }
@@ -0,0 +1,67 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.instrumentation;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class InMemoryMetricsRegistryTest {
+
+  private final InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+
+  @Test
+  public void should_record_metrics() {
+    registry.counter("files").increment();
+    registry.counter("files").add(2);
+    registry.timer("parse").record(10);
+    registry.timer("parse").record(30);
+    registry.gauge("rate", new Gauge() {
+      @Override
+      public double getValue() {
+        return 0.5;
+      }
+    });
+
+    assertThat(registry.counter("files").getCount()).isEqualTo(3);
+    assertThat(registry.getTimers().get("parse").getCount()).isEqualTo(2);
+    assertThat(registry.getTimers().get("parse").getTotalNanos()).isEqualTo(40);
+    assertThat(registry.getTimers().get("parse").getMaxNanos()).isEqualTo(30);
+    assertThat(registry.getGauges().get("rate").getValue()).isEqualTo(0.5);
+    assertThat(registry.toString()).contains("files=3").contains("parse.count=2").contains("rate=0.5");
+  }
+
+  @Test
+  public void should_discard_metrics_by_default() {
+    assertThat(Instrumentation.isEnabled()).isFalse();
+    Counter counter = Instrumentation.getRegistry().counter("files");
+    counter.increment();
+    assertThat(counter.getCount()).isEqualTo(0);
+
+    Instrumentation.setRegistry(registry);
+    try {
+      assertThat(Instrumentation.isEnabled()).isTrue();
+      assertThat(Instrumentation.getRegistry()).isSameAs(registry);
+    } finally {
+      Instrumentation.reset();
+    }
+  }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.instrumentation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class JmxMetricsExporterTest {
+
+  private final InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+  private MBeanServer server;
+  private ObjectName name;
+  private JmxMetricsExporter exporter;
+
+  @Before
+  public void register() throws Exception {
+    server = MBeanServerFactory.newMBeanServer();
+    name = new ObjectName(JmxMetricsExporter.DEFAULT_OBJECT_NAME);
+    exporter = JmxMetricsExporter.register(registry, server, name);
+  }
+
+  @After
+  public void close() {
+    exporter.close();
+  }
+
+  @Test
+  public void should_export_metrics() throws Exception {
+    registry.counter("files").add(4);
+    registry.timer("parse").record(2000000);
+    registry.timer("parse").record(5000000);
+    registry.gauge("rate", new Gauge() {
+      @Override
+      public double getValue() {
+        return 0.25;
+      }
+    });
+
+    assertThat(exporter.getObjectName()).isEqualTo(name);
+    assertThat(server.getAttribute(name, "files")).isEqualTo(4L);
+    assertThat(server.getAttribute(name, "parse.count")).isEqualTo(2L);
+    assertThat(server.getAttribute(name, "parse.totalMillis")).isEqualTo(7L);
+    assertThat(server.getAttribute(name, "parse.maxMillis")).isEqualTo(5L);
+    assertThat(server.getAttribute(name, "rate")).isEqualTo(0.25);
+    assertThat(server.getMBeanInfo(name).getAttributes()).hasSize(5);
+
+    AttributeList attributes = server.getAttributes(name, new String[] {"files", "unknown", "rate"});
+    assertThat(attributes.asList()).hasSize(2);
+    assertThat(((Attribute) attributes.get(0)).getValue()).isEqualTo(4L);
+  }
+
+  @Test
+  public void should_export_metrics_created_after_registration() throws Exception {
+    assertThat(server.getMBeanInfo(name).getAttributes()).isEmpty();
+
+    registry.counter("files").increment();
+
+    assertThat(server.getAttribute(name, "files")).isEqualTo(1L);
+    assertThat(server.getMBeanInfo(name).getAttributes()).hasSize(1);
+  }
+
+  @Test
+  public void should_not_find_unknown_attribute() throws Exception {
+    try {
+      server.getAttribute(name, "unknown");
+      fail();
+    } catch (AttributeNotFoundException e) {
+      assertThat(e.getMessage()).isEqualTo("unknown");
+    }
+  }
+
+  @Test
+  public void should_not_set_attributes() throws Exception {
+    registry.counter("files").increment();
+
+    try {
+      server.setAttribute(name, new Attribute("files", 2L));
+      fail();
+    } catch (AttributeNotFoundException e) {
+      assertThat(e.getMessage()).contains("read-only");
+    }
+    assertThat(server.setAttributes(name, new AttributeList())).isEmpty();
+    assertThat(server.getAttribute(name, "files")).isEqualTo(1L);
+  }
+
+  @Test
+  public void should_not_invoke_operations() throws Exception {
+    try {
+      server.invoke(name, "reset", new Object[0], new String[0]);
+      fail();
+    } catch (ReflectionException e) {
+      assertThat(e.getCause()).isInstanceOf(NoSuchMethodException.class);
+    } catch (MBeanException e) {
+      fail("Operation failure reported as a failure of the MBean");
+    }
+  }
+
+  @Test
+  public void should_unregister() {
+    assertThat(server.isRegistered(name)).isTrue();
+
+    exporter.close();
+    assertThat(server.isRegistered(name)).isFalse();
+    exporter.close();
+  }
+
+}
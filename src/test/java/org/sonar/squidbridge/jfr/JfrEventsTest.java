@@ -0,0 +1,134 @@
+/*
+ * SSLR Squid Bridge
+ * Copyright (C) 2010 SonarSource
+ * sonarqube@googlegroups.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.squidbridge.jfr;
+
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.Grammar;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.squidbridge.Comment;
+import org.sonar.squidbridge.CommentVisitor;
+import org.sonar.squidbridge.SquidAstVisitor;
+import org.sonar.squidbridge.recognizer.CodeRecognizer;
+import org.sonar.squidbridge.text.JavaFootprint;
+import org.sonar.squidbridge.text.Source;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.sonar.squidbridge.metrics.ResourceParser.scanFile;
+
+public class JfrEventsTest {
+
+  private static final String[] EVENTS = {"Parse", "ParseFailure", "FileVisit", "Visitor", "Decorate", "IndexSearch", "Source"};
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_emit_events_when_enabled() throws Exception {
+    Recording recording = new Recording();
+    for (String event : EVENTS) {
+      recording.enable("org.sonar.squidbridge." + event).withoutThreshold();
+    }
+    recording.start();
+    scanFile("/metrics/lines.mc");
+    scanFile("/checks/parse_error.mc");
+    new Source(new String[] {"int a;", "// comment"}, new CodeRecognizer(0.91, new JavaFootprint()));
+    recording.stop();
+    File dump = temp.newFile("recording.jfr");
+    recording.dump(dump.toPath());
+    recording.close();
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+    List<String> names = Lists.newArrayList();
+    for (RecordedEvent event : events) {
+      names.add(event.getEventType().getName());
+    }
+    for (String event : EVENTS) {
+      assertThat(names).as(event).contains("org.sonar.squidbridge." + event);
+    }
+
+    RecordedEvent parse = find(events, "org.sonar.squidbridge.Parse");
+    assertThat(parse.getString("path")).endsWith("lines.mc");
+    assertThat(parse.getLong("size")).isGreaterThan(0);
+    assertThat(parse.getInt("lines")).isGreaterThan(0);
+    assertThat(find(events, "org.sonar.squidbridge.ParseFailure").getString("path")).endsWith("parse_error.mc");
+    assertThat(find(events, "org.sonar.squidbridge.Visitor").getString("visitorClass")).isNotNull();
+    assertThat(find(events, "org.sonar.squidbridge.Source").getInt("lines")).isEqualTo(2);
+  }
+
+  @Test
+  public void should_charge_comment_visits_to_comment_visitors() throws Exception {
+    Recording recording = new Recording();
+    recording.enable("org.sonar.squidbridge.Visitor").withoutThreshold();
+    recording.start();
+    scanFile("/metrics/lines.mc", new SlowCommentVisitor());
+    recording.stop();
+    File dump = temp.newFile("recording.jfr");
+    recording.dump(dump.toPath());
+    recording.close();
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+    RecordedEvent commentVisitor = findVisitor(events, SlowCommentVisitor.class.getName());
+    assertThat(commentVisitor.getLong("visitorTime")).isGreaterThanOrEqualTo(SlowCommentVisitor.NANOS);
+    assertThat(commentVisitor.getLong("calls")).isGreaterThan(2);
+    assertThat(findVisitor(events, "org.sonar.squidbridge.CommentDispatcher").getLong("visitorTime")).isLessThan(SlowCommentVisitor.NANOS);
+  }
+
+  private static RecordedEvent findVisitor(List<RecordedEvent> events, String visitorClass) {
+    for (RecordedEvent event : events) {
+      if (event.getEventType().getName().equals("org.sonar.squidbridge.Visitor") && visitorClass.equals(event.getString("visitorClass"))) {
+        return event;
+      }
+    }
+    throw new AssertionError("No event for " + visitorClass);
+  }
+
+  private static RecordedEvent find(List<RecordedEvent> events, String name) {
+    for (RecordedEvent event : events) {
+      if (event.getEventType().getName().equals(name)) {
+        return event;
+      }
+    }
+    throw new AssertionError("No event " + name);
+  }
+
+  private static class SlowCommentVisitor extends SquidAstVisitor<Grammar> implements CommentVisitor {
+
+    static final long NANOS = 50000000L;
+
+    @Override
+    public void visitComment(Comment comment) {
+      try {
+        Thread.sleep(NANOS / 1000000L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+  }
+
+}